@@ -2,41 +2,41 @@ package com.example.plant_aid;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.Nullable;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import com.bumptech.glide.Glide;
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+import com.example.plant_aid.cameraHelper.RenditionStore;
+import com.example.plant_aid.myGardenHelper.GardenRepository;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Activity for displaying the analysis results of a selected image within the application.
  * This activity extends {@link AppCompatActivity} and is responsible for presenting the user
- * with detailed results of an image analysis. The analysis result is retrieved from a file
- * specified by the file path passed through the intent that started this activity.
+ * with detailed results of an image analysis. The whole analysis result of the image whose path is passed
+ * through the intent that started this activity is loaded from the {@link GardenRepository} on a background
+ * thread.
  *
- * <p>The activity also displays a small thumbnail of the analyzed image alongside the textual
- * analysis results, providing a visual reference for the user.</p>
+ * <p>The activity also displays a preview of the analyzed image alongside the textual
+ * analysis results, providing a visual reference for the user. The preview is the downscaled rendition kept in the
+ * {@link RenditionStore}, loaded by Glide off the main thread; the original is never decoded here.</p>
  *
  */
 public class AnalysisResultActivity extends AppCompatActivity {
 
-    private SharedPreferences sharedPreferences;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
 
     /**
      * Called when the activity is starting. This method sets up the activity's layout,
-     * initializes shared preferences, sets up bottom navigation, and retrieves and displays
-     * the analysis result and image. It extracts the file path and image path from the intent
-     * that started the activity, reads the analysis result from the file, and updates the UI
-     * components to show the result and image.
+     * sets up bottom navigation, and retrieves and displays
+     * the analysis result and image. It extracts the image path from the intent that started the
+     * activity, loads the analysis result of the image, and updates the UI components to show the
+     * result and image.
      *
      * @param savedInstanceState If the activity is being re-initialized after previously being shut down
      *                           then this Bundle contains the data it most recently supplied in
@@ -47,49 +47,31 @@ public class AnalysisResultActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_analysis_result);
 
-        // Initialize shared Preferences
-        sharedPreferences = getSharedPreferences("MyGardenPrefs", Context.MODE_PRIVATE);
-
         NavigationHelper.setupBottomNavigation(this, R.id.home_nav_bar);
 
-        // Get analysis result and image path from intent extras
+        // Get the image path from intent extras
         String imagePath = getIntent().getStringExtra("imagePath");
-        String analysisResultFilePath = getIntent().getStringExtra("analysisResult");
 
-        // Display analysis result
-        String analysisResult = readAnalysisResultFromFile(analysisResultFilePath);
+        // Display analysis result once it has been loaded
         TextView resultTextView = findViewById(R.id.resultTextView);
-        resultTextView.setText(analysisResult);
+        GardenRepository gardenRepository = new GardenRepository(this);
+        ioExecutor.execute(() -> {
+            AnalysisResult analysisResult = gardenRepository.loadResult(imagePath);
+            String text = analysisResult != null ? analysisResult.toDisplayText() : "";
+            runOnUiThread(() -> resultTextView.setText(text));
+        });
 
-        // Display small copy of the associated image
+        // Display the preview rendition of the associated image, already downscaled and turned upright
         ImageView imageView = findViewById(R.id.imageView);
-        Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-        imageView.setImageBitmap(bitmap);
+        Glide.with(this)
+                .load(new RenditionStore.Key(imagePath, RenditionStore.SizeClass.PREVIEW))
+                .centerCrop()
+                .into(imageView);
     }
 
-    /**
-     * Reads the analysis result from a file specified by the file path. This method opens the file,
-     * reads its contents, and returns the result as a string. It is used to retrieve the textual analysis
-     * result that is displayed to the user.
-     *
-     * @param filePath The path of the file containing the analysis result.
-     * @return A string representing the content of the analysis result file, or an empty string if an error occurs.
-     */
-    private String readAnalysisResultFromFile(String filePath) {
-        StringBuilder result = new StringBuilder();
-        try {
-            FileInputStream fis = new FileInputStream(filePath);
-            InputStreamReader inputStreamReader = new InputStreamReader(fis);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
-            }
-            fis.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return result.toString();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ioExecutor.shutdown();
     }
 }
-
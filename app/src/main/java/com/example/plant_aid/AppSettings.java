@@ -0,0 +1,260 @@
+package com.example.plant_aid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.plant_aid.analysisHelper.AnalysisPolicy;
+
+/**
+ * Central access point for the user- and developer-configurable settings of the application.
+ *
+ * <p>The settings are stored in their own {@link SharedPreferences} file, separate from the
+ * garden data, which earlier versions kept in the "MyGardenPrefs" file. Every setting has a default value, so the
+ * application works without any of them ever being written.</p>
+ */
+public class AppSettings {
+
+    private static final String PREFS_NAME = "PlantAidSettings";
+
+    private static final String KEY_IN_MEMORY_CAPTURE = "inMemoryCapture";
+    private static final String KEY_KEEP_ORIGINALS = "keepOriginals";
+    private static final String KEY_ANALYSIS_URL = "analysisUrl";
+    private static final String KEY_BATCH_UPLOADS = "batchUploads";
+    private static final String KEY_BATCH_WINDOW_MILLIS = "batchWindowMillis";
+    private static final String KEY_BATCH_MAX_SIZE = "batchMaxSize";
+    private static final String KEY_UPLOAD_TARGET_SECONDS = "uploadTargetSeconds";
+    private static final String KEY_MAX_UPLOAD_BYTES = "maxUploadBytes";
+    private static final String KEY_WEBP_UPLOADS = "webpUploads";
+    private static final String KEY_RESULT_CACHE = "resultCache";
+    private static final String KEY_RESULT_CACHE_SIZE = "resultCacheSize";
+    private static final String KEY_RESULT_CACHE_MAX_DISTANCE = "resultCacheMaxDistance";
+    private static final String KEY_CAMERA_KEEP_WARM_MILLIS = "cameraKeepWarmMillis";
+    private static final String KEY_QUALITY_GATE = "qualityGate";
+    private static final String KEY_QUALITY_MIN_SHARPNESS = "qualityMinSharpness";
+    private static final String KEY_BURST_FRAME_COUNT = "burstFrameCount";
+    private static final String KEY_ANALYSIS_MODE = "analysisMode";
+
+    private final SharedPreferences sharedPreferences;
+
+    /**
+     * Creates a settings accessor.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     */
+    public AppSettings(Context context) {
+        this.sharedPreferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Whether captures are taken into memory and handed straight to preprocessing, instead of first being
+     * written to external storage and read back.
+     *
+     * @return {@code true} for in-memory capture, which is the default.
+     */
+    public boolean isInMemoryCapture() {
+        return sharedPreferences.getBoolean(KEY_IN_MEMORY_CAPTURE, true);
+    }
+
+    public void setInMemoryCapture(boolean inMemoryCapture) {
+        sharedPreferences.edit().putBoolean(KEY_IN_MEMORY_CAPTURE, inMemoryCapture).apply();
+    }
+
+    /**
+     * Whether the full-resolution original of each capture is persisted to external storage.
+     * Only consulted in in-memory capture mode; file-based capture always keeps the original.
+     *
+     * @return {@code true} if originals are kept, which is the default.
+     */
+    public boolean isKeepOriginals() {
+        return sharedPreferences.getBoolean(KEY_KEEP_ORIGINALS, true);
+    }
+
+    public void setKeepOriginals(boolean keepOriginals) {
+        sharedPreferences.edit().putBoolean(KEY_KEEP_ORIGINALS, keepOriginals).apply();
+    }
+
+    /**
+     * The URL of the backend endpoint images are posted to for analysis.
+     *
+     * @return The configured URL, or {@code BuildConfig.ANALYSIS_URL} if none has been set.
+     */
+    public String getAnalysisUrl() {
+        return sharedPreferences.getString(KEY_ANALYSIS_URL, BuildConfig.ANALYSIS_URL);
+    }
+
+    public void setAnalysisUrl(String analysisUrl) {
+        sharedPreferences.edit().putString(KEY_ANALYSIS_URL, analysisUrl).apply();
+    }
+
+    /**
+     * Whether captures taken in quick succession are coalesced into one multipart request with several
+     * {@code image} parts. Requires a backend that answers such requests with one result per image.
+     *
+     * @return {@code true} if uploads are batched, {@code false} by default.
+     */
+    public boolean isBatchUploads() {
+        return sharedPreferences.getBoolean(KEY_BATCH_UPLOADS, false);
+    }
+
+    public void setBatchUploads(boolean batchUploads) {
+        sharedPreferences.edit().putBoolean(KEY_BATCH_UPLOADS, batchUploads).apply();
+    }
+
+    /**
+     * @return The longest time, in milliseconds, an image waits for further images to join its batch. Defaults to 3 seconds.
+     */
+    public long getBatchWindowMillis() {
+        return sharedPreferences.getLong(KEY_BATCH_WINDOW_MILLIS, 3000L);
+    }
+
+    /**
+     * @return The number of images at which a batch is sent without waiting for the window to close. Defaults to 8.
+     */
+    public int getBatchMaxSize() {
+        return sharedPreferences.getInt(KEY_BATCH_MAX_SIZE, 8);
+    }
+
+    /**
+     * @return The time, in seconds, an upload should take at the measured bandwidth. Defaults to 2 seconds.
+     */
+    public float getUploadTargetSeconds() {
+        return sharedPreferences.getFloat(KEY_UPLOAD_TARGET_SECONDS, 2f);
+    }
+
+    /**
+     * @return The largest payload, in bytes, the upload rendition may be encoded to. Defaults to 300 KB.
+     */
+    public int getMaxUploadBytes() {
+        return sharedPreferences.getInt(KEY_MAX_UPLOAD_BYTES, 300 * 1024);
+    }
+
+    /**
+     * Whether the upload rendition may be encoded as WebP when that reaches a higher quality within the byte
+     * budget than JPEG. Requires Android 11 and a backend that accepts WebP.
+     *
+     * @return {@code true} if WebP may be used, {@code false} by default.
+     */
+    public boolean isWebpUploads() {
+        return sharedPreferences.getBoolean(KEY_WEBP_UPLOADS, false);
+    }
+
+    public void setWebpUploads(boolean webpUploads) {
+        sharedPreferences.edit().putBoolean(KEY_WEBP_UPLOADS, webpUploads).apply();
+    }
+
+    /**
+     * Whether the analysis result cache is consulted before an upload, so that a repeated shot of the same
+     * subject reuses the result of the earlier one instead of being sent to the backend again. Unless perceptual
+     * matching is turned on with {@link #setResultCacheMaxDistance(int)}, only byte-identical renditions are
+     * reused. Reused results are marked as such in the garden.
+     *
+     * @return {@code true} if the cache is used, which is the default.
+     */
+    public boolean isResultCache() {
+        return sharedPreferences.getBoolean(KEY_RESULT_CACHE, true);
+    }
+
+    public void setResultCache(boolean resultCache) {
+        sharedPreferences.edit().putBoolean(KEY_RESULT_CACHE, resultCache).apply();
+    }
+
+    /**
+     * @return The number of analysis results kept in the cache. Read once per process. Defaults to 32.
+     */
+    public int getResultCacheSize() {
+        return sharedPreferences.getInt(KEY_RESULT_CACHE_SIZE, 32);
+    }
+
+    /**
+     * The largest number of differing bits, out of 64, at which the perceptual hashes of two renditions are
+     * taken to show the same subject. A negative value disables perceptual matching, so only byte-identical
+     * renditions are answered from the cache.
+     *
+     * <p>Perceptual matching is opt-in: a different leaf shot from the same framing can come within a few bits,
+     * and would then be given the diagnosis of the other plant.</p>
+     *
+     * @return The Hamming distance threshold. Defaults to -1, so perceptual matching is off.
+     */
+    public int getResultCacheMaxDistance() {
+        return sharedPreferences.getInt(KEY_RESULT_CACHE_MAX_DISTANCE, -1);
+    }
+
+    public void setResultCacheMaxDistance(int maxDistance) {
+        sharedPreferences.edit().putInt(KEY_RESULT_CACHE_MAX_DISTANCE, maxDistance).apply();
+    }
+
+    /**
+     * How long the camera stays open after the camera screen is left for another screen of the application, so that
+     * coming back to it shows the preview without reopening the camera. The camera is always closed right away when
+     * the application goes to the background.
+     *
+     * @return The grace period in milliseconds, 0 to close the camera immediately. Defaults to 10 seconds.
+     */
+    public long getCameraKeepWarmMillis() {
+        return sharedPreferences.getLong(KEY_CAMERA_KEEP_WARM_MILLIS, 10_000L);
+    }
+
+    public void setCameraKeepWarmMillis(long keepWarmMillis) {
+        sharedPreferences.edit().putLong(KEY_CAMERA_KEEP_WARM_MILLIS, keepWarmMillis).apply();
+    }
+
+    /**
+     * Whether captures that are too blurry, too dark or too bright are turned down on the device instead of being
+     * uploaded for analysis.
+     *
+     * @return {@code true} if the quality gate is applied, which is the default.
+     */
+    public boolean isQualityGate() {
+        return sharedPreferences.getBoolean(KEY_QUALITY_GATE, true);
+    }
+
+    public void setQualityGate(boolean qualityGate) {
+        sharedPreferences.edit().putBoolean(KEY_QUALITY_GATE, qualityGate).apply();
+    }
+
+    /**
+     * The lowest variance of the Laplacian at which the quality gate still takes a capture to be sharp. Lower it if
+     * sharp shots of smooth leaves are turned down, raise it if blurred shots get through.
+     *
+     * @return The sharpness threshold. Defaults to 40.
+     */
+    public float getQualityMinSharpness() {
+        return sharedPreferences.getFloat(KEY_QUALITY_MIN_SHARPNESS, 40f);
+    }
+
+    public void setQualityMinSharpness(float minSharpness) {
+        sharedPreferences.edit().putFloat(KEY_QUALITY_MIN_SHARPNESS, minSharpness).apply();
+    }
+
+    /**
+     * @return The number of frames a burst, started by a long press on the shutter, consists of. Only the sharpest
+     * one is uploaded. Defaults to 3.
+     */
+    public int getBurstFrameCount() {
+        return Math.max(1, sharedPreferences.getInt(KEY_BURST_FRAME_COUNT, 3));
+    }
+
+    public void setBurstFrameCount(int burstFrameCount) {
+        sharedPreferences.edit().putInt(KEY_BURST_FRAME_COUNT, burstFrameCount).apply();
+    }
+
+    /**
+     * Which analyzers analyse a capture: the backend, the on-device model, or the on-device model first with the
+     * backend refining its estimate. See {@link AnalysisPolicy}.
+     *
+     * @return The analysis mode. Defaults to {@link AnalysisPolicy.Mode#REMOTE}, which falls back to the on-device
+     * model while offline.
+     */
+    public AnalysisPolicy.Mode getAnalysisMode() {
+        String mode = sharedPreferences.getString(KEY_ANALYSIS_MODE, AnalysisPolicy.Mode.REMOTE.name());
+        try {
+            return AnalysisPolicy.Mode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            return AnalysisPolicy.Mode.REMOTE;
+        }
+    }
+
+    public void setAnalysisMode(AnalysisPolicy.Mode mode) {
+        sharedPreferences.edit().putString(KEY_ANALYSIS_MODE, mode.name()).apply();
+    }
+}
@@ -2,18 +2,12 @@ package com.example.plant_aid;
 
 
 import android.Manifest;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.SurfaceTexture;
 import android.os.Bundle;
 import android.util.Log;
-import android.util.Rational;
-import android.util.Size;
+import android.view.OrientationEventListener;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.ViewGroup;
@@ -25,45 +19,48 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.camera.core.AspectRatio;
-import androidx.camera.core.Camera;
-import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
-import androidx.camera.core.Preview;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.SurfaceRequest;
-import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.example.plant_aid.analysisHelper.AnalysisCoordinator;
+import com.example.plant_aid.analysisHelper.AnalysisPolicy;
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+import com.example.plant_aid.analysisHelper.AnalysisResultParser;
+import com.example.plant_aid.analysisHelper.LocalAnalyzer;
+import com.example.plant_aid.analysisHelper.RemoteAnalyzer;
+import com.example.plant_aid.cameraHelper.BurstSelector;
+import com.example.plant_aid.cameraHelper.CameraSessionManager;
+import com.example.plant_aid.cameraHelper.CaptureMetrics;
+import com.example.plant_aid.cameraHelper.CapturePipeline;
+import com.example.plant_aid.cameraHelper.CaptureResolutionPolicy;
+import com.example.plant_aid.cameraHelper.ImagePreprocessor;
+import com.example.plant_aid.cameraHelper.ProcessedImage;
+import com.example.plant_aid.cameraHelper.QualityGate;
+import com.example.plant_aid.cameraHelper.RenditionStore;
+import com.example.plant_aid.cameraHelper.UploadEncoder;
+import com.example.plant_aid.myGardenHelper.GardenRepository;
+import com.example.plant_aid.networkHelper.AnalysisClient;
+import com.example.plant_aid.networkHelper.AnalysisResultCache;
+import com.example.plant_aid.networkHelper.AnalysisUploader;
+import com.example.plant_aid.networkHelper.UploadPayload;
 
-import com.google.common.util.concurrent.ListenableFuture;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Activity which contains the Camera functionality, as well as the methods required for communicating with the backend server.
@@ -74,15 +71,18 @@ import okhttp3.Response;
  *  associated with camera APIs.
  *  Features and Responsibilities:
  *   - Request and check camera permissions.
- *   - Initialize and bind camera use cases such as preview and image capture.
+ *   - Open the camera session shared across visits of the screen and attach the preview to it.
  *   - Capture images with the camera and handle image saving.
- *   - Rotate and preprocess images before further processing or uploading.
- *   - Upload Images to the Backend and receive responses
+ *   - Capture bursts on a long press of the shutter and keep only the sharpest frame.
+ *   - Orient and preprocess images in a single fused stage before uploading.
+ *   - Upload Images to the Backend, through a persistent outbox that retries failed uploads, and receive responses
+ *   - Analyse images on the device when offline or while the backend's answer is outstanding
  *   - Call and open the AnalysisResult screen
  *
- *   The activity relies on a {@link TextureView} for displaying the camera preview. It utilizes an {@link ExecutorService}
- *   for running camera operations on a background thread to ensure smooth UI operation. SharedPreferences are used for persistent
- *   storage of image paths and related data to facilitate easy access across the app sessions.
+ *   The activity relies on a {@link TextureView} for displaying the camera preview. It utilizes a {@link CapturePipeline}
+ *   for running everything after the shutter in bounded background stages to ensure smooth UI operation. Captured images and
+ *   their analysis results are stored in the garden through the {@link GardenRepository}, which keeps them in its database
+ *   and journal across app sessions.
  *
  */
 public class CameraActivity extends AppCompatActivity {
@@ -93,29 +93,59 @@ public class CameraActivity extends AppCompatActivity {
 
     private static final String TAG = "CameraActivity";
 
+    /** Shown once a capture has cleared the quality gate and is on its way to the analysis. */
+    private static final String CAPTURE_ACCEPTED_MESSAGE = "Image captured, the analysis has started.";
+
     public TextureView textureView;
-    private ExecutorService cameraExecutor;
 
+    private ImageButton captureButton;
+
+    // Runs everything after the shutter in bounded capture, processing and network stages
+    private CapturePipeline capturePipeline;
+
+    // Persists originals of in-memory captures off the critical path
+    private ExecutorService ioExecutor;
+
+    private AppSettings appSettings;
+
+    // Owns the camera and its use cases, which outlive this activity
+    private CameraSessionManager cameraSessionManager;
+
+    // Null until the camera session is ready
     private ImageCapture imageCapture;
 
+    // A preview surface requested before the TextureView had one to give
+    private SurfaceRequest pendingSurfaceRequest;
+
     private ArrayList<String> imagePaths;
 
-    private SharedPreferences sharedPreferences;
+    private GardenRepository gardenRepository;
 
-    // boolean flag to check if ImageCapture has been initialized (for testing)
-    private boolean isImageCaptureInitialized = false;
+    private AnalysisUploader analysisUploader;
+
+    // Runs the on-device and the server analysis as the settings ask for
+    private AnalysisCoordinator analysisCoordinator;
+
+    // Answers repeated shots of the same subject without a round trip to the backend
+    private AnalysisResultCache analysisResultCache;
+
+    // Keeps the thumbnail and preview of each capture, which the garden screens display instead of the original
+    private RenditionStore renditionStore;
+
+    // Keeps the target rotation of the capture in line with how the device is held
+    private OrientationEventListener orientationEventListener;
 
 
     /**
      * Initializes the CameraActivity with necessary UI and functionalities.
      *
      * This method is called when the activity is starting. It sets the content view to the activity's layout,
-     * initializes the {@link SharedPreferences} for storing application preferences, and sets up the UI components,
+     * initializes the {@link GardenRepository} for storing the garden and the {@link AnalysisUploader}, and sets up the UI components,
      * including the texture view for camera preview and the capture button with its click listener. It also initializes
      * the executor service for handling camera operations in the background.
      *
-     * Additionally, this method checks if all necessary camera permissions have been granted. If so, it starts the camera;
-     * otherwise, it requests the required permissions. The setup includes adjusting the texture view's height based on the
+     * Additionally, this method checks if all necessary camera permissions have been granted and requests them otherwise.
+     * The camera itself is opened in {@link #onStart()}. The setup includes adjusting the texture view's height based on the
      * screen's width to maintain an aspect ratio of 4:3, which is commonly used for photos.
      *
      * @param savedInstanceState If the activity is being re-initialized after previously being shut down,
@@ -126,8 +156,13 @@ public class CameraActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_camera);
 
-        // Initialize SharedPreferences
-        sharedPreferences = getSharedPreferences("MyGardenPrefs", Context.MODE_PRIVATE);
+        // Initialize the garden and the uploader which stores analysis results in it
+        gardenRepository = new GardenRepository(this);
+        analysisUploader = new AnalysisUploader(this);
+        analysisCoordinator = new AnalysisCoordinator(new LocalAnalyzer(), new RemoteAnalyzer(analysisUploader),
+                gardenRepository::updateMyGarden, () -> RemoteAnalyzer.isNetworkAvailable(this));
+        analysisResultCache = AnalysisResultCache.getInstance(this);
+        renditionStore = new RenditionStore(this);
 
         NavigationHelper.setupBottomNavigation(this, R.id.camera_nav_bar);
         Log.d("CameraActivity", "onCreate called");
@@ -139,23 +174,45 @@ public class CameraActivity extends AppCompatActivity {
         ViewGroup.LayoutParams layoutParams = textureView.getLayoutParams();
         layoutParams.height = textureViewHeight;
         textureView.setLayoutParams(layoutParams);
+        textureView.setSurfaceTextureListener(new PreviewSurfaceListener());
 
 
+        appSettings = new AppSettings(this);
 
-        // Initialize the executor for camera operations
-        cameraExecutor = Executors.newSingleThreadExecutor();
+        // Initialize the capture pipeline and the executor for writing originals
+        capturePipeline = new CapturePipeline(saturated -> runOnUiThread(() -> setShutterEnabled(!saturated)));
+        ioExecutor = Executors.newSingleThreadExecutor();
+
+        // Open a connection to the analysis backend while the user is still framing the shot
+        AnalysisClient.getInstance(this).prewarm();
+        cameraSessionManager = CameraSessionManager.getInstance(this);
+
+        // Track the physical orientation so that CameraX records the correct EXIF orientation
+        orientationEventListener = new OrientationEventListener(this) {
+            @Override
+            public void onOrientationChanged(int orientation) {
+                if (orientation == ORIENTATION_UNKNOWN || imageCapture == null) {
+                    return;
+                }
+                imageCapture.setTargetRotation(surfaceRotationFor(orientation));
+            }
+        };
 
         // Set up the capture button and its click listener
-        ImageButton captureButton = findViewById(R.id.captureButton);
+        captureButton = findViewById(R.id.captureButton);
         captureButton.setOnClickListener(v -> {
             captureButton.startAnimation(AnimationUtils.loadAnimation(this, R.anim.scale_small_big));
             findViewById(R.id.whiteOval).startAnimation(AnimationUtils.loadAnimation(this, R.anim.scale_white_oval));
             captureImage();});
+        captureButton.setOnLongClickListener(v -> {
+            captureButton.startAnimation(AnimationUtils.loadAnimation(this, R.anim.scale_small_big));
+            findViewById(R.id.whiteOval).startAnimation(AnimationUtils.loadAnimation(this, R.anim.scale_white_oval));
+            captureBurst();
+            return true;
+        });
 
-        // Check camera permissions and start the camera if granted, otherwise request permissions
-        if (allPermissionsGranted()) {
-            startCamera();
-        } else {
+        // Request the camera permission if needed, the camera is started in onStart once it is granted
+        if (!allPermissionsGranted()) {
             Log.d("CameraActivity", "Requesting permissions");
             ActivityCompat.requestPermissions(this, REQUIRED_PERMISSIONS, REQUEST_CODE_PERMISSIONS);
             Log.d("CameraActivity", "Requested permissions");
@@ -172,18 +229,42 @@ public class CameraActivity extends AppCompatActivity {
      * For a successful capture, it performs additional image processing, such as rotation, and sends the image to a backend server or another processing method.
      * In case of an error during capture, the method logs the exception and notifies the user via a toast message.
      *
-     * The successful capture path includes rotating the image by 90 degrees and then processing the image
-     * through the {@code processAndSendImage} method, which must be implemented to handle the image further. Finally,
+     * The successful capture path hands the saved image to the {@code processAndSendImage} method, which orients it
+     * according to the EXIF orientation recorded by CameraX and resizes it in one pass. The original file is left
+     * untouched. Finally,
      * a toast message confirms the successful capture and processing of the image.
      *
-     * Note: This method assumes {@link ImageCapture} {@code imageCapture} and an executor service {@code cameraExecutor}
+     * Note: This method assumes {@link ImageCapture} {@code imageCapture} and the {@link CapturePipeline} {@code capturePipeline}
      * have been initialized and are ready for use. It also uses {@code runOnUiThread} to display toast messages, ensuring
      * UI operations are performed on the main thread.
      *
+     * The capture is only taken if the pipeline admits it. While the pipeline is full, the shutter is disabled, and a tap
+     * that still gets through is dropped with a toast instead of queueing more work.
+     *
+     * Unless in-memory capture has been switched off in {@link AppSettings}, the capture is taken into memory instead,
+     * see {@link #captureImageInMemory(CapturePipeline.Ticket, CaptureMetrics)}.
      */
     private void captureImage() {
+        if (imageCapture == null) {
+            showSnackbar("Camera is not ready yet.");
+            return;
+        }
+        CapturePipeline.Ticket ticket = capturePipeline.tryAdmit();
+        if (ticket == null) {
+            showSnackbar("Still processing the previous photos, please wait.");
+            return;
+        }
+
+        // Start measuring the capture-to-upload-ready latency
+        CaptureMetrics metrics = new CaptureMetrics();
+
+        if (appSettings.isInMemoryCapture()) {
+            captureImageInMemory(ticket, metrics);
+            return;
+        }
+
         // Create a timestamped file to save the captured image
-        File photoFile = new File(getOutputDirectory(), new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.US).format(System.currentTimeMillis()) + ".jpg");
+        File photoFile = createOriginalFile();
 
         // Configure the output options for ImageCapture
         ImageCapture.OutputFileOptions outputFileOptions =
@@ -191,25 +272,22 @@ public class CameraActivity extends AppCompatActivity {
 
 
         // Capture the image and handle success/failure
-        imageCapture.takePicture(outputFileOptions, cameraExecutor, new ImageCapture.OnImageSavedCallback() {
+        imageCapture.takePicture(outputFileOptions, capturePipeline.getCaptureExecutor(), new ImageCapture.OnImageSavedCallback() {
             @Override
             public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
                 // Get the saved image file
                 File savedImageFile = new File(Objects.requireNonNull(Objects.requireNonNull(outputFileResults.getSavedUri()).getPath()));
 
-                // rotate the image
-                rotateImage(savedImageFile.getAbsolutePath(), 90);
-
-                // Process and send the image
-                processAndSendImage(savedImageFile.getAbsolutePath());
-
-                runOnUiThread(() -> Toast.makeText(CameraActivity.this, "Image captured successfully and sent to backend!", Toast.LENGTH_SHORT).show());
+                // Process and send the image. The saved original stays exactly as the camera produced it,
+                // its EXIF orientation is only applied to the upload rendition.
+                ticket.process(() -> processAndSendImage(ticket, savedImageFile.getAbsolutePath(), metrics));
             }
 
             @Override
             public void onError(@NonNull ImageCaptureException exception) {
                 // Image capture failed, handle the error
                 exception.printStackTrace();
+                ticket.close();
 
 
                 runOnUiThread(() -> Toast.makeText(CameraActivity.this, "Image capture failed!", Toast.LENGTH_SHORT).show());
@@ -219,252 +297,451 @@ public class CameraActivity extends AppCompatActivity {
     }
 
     /**
-     * Processes the specified image and sends it to a backend server for further analysis.
-     *
-     * This method comprises two primary steps: preprocessing the given image file located at {@code imagePath}
-     * and then sending the preprocessed image to a designated backend server. The preprocessing includes
-     * operations such as resizing, cropping, or format conversion to prepare the image for analysis.
-     * After preprocessing, the processed image is sent to the backend server using the {@code sendImageToServer} method.
+     * Captures an image into memory and hands the JPEG buffer straight to preprocessing and upload.
      *
-     * @param imagePath The absolute path to the image file that needs to be processed and sent.
+     * The camera delivers the encoded JPEG in an {@link ImageProxy}. Its bytes are copied out once and the proxy is
+     * closed immediately so the camera can reuse the buffer. Preprocessing runs on the processing stage of the
+     * {@link CapturePipeline} directly from memory, so no flash I/O is on the critical path. If originals are kept (see
+     * {@link AppSettings#isKeepOriginals()}), the untouched JPEG is written to the output directory on
+     * {@code ioExecutor}, but only once the frame has cleared the quality gate.
      *
-     * @see #preprocessImage(String)
-     * @see #sendImageToServer(File)
+     * @param ticket The admission of this capture to the pipeline.
+     * @param metrics The latency and memory probe started when the shutter was pressed.
      */
-    private void processAndSendImage(String imagePath) {
-        File processedImageFile = preprocessImage(imagePath);
-        sendImageToServer(processedImageFile);
+    private void captureImageInMemory(CapturePipeline.Ticket ticket, CaptureMetrics metrics) {
+        imageCapture.takePicture(capturePipeline.getCaptureExecutor(), new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                int rotationDegrees = image.getImageInfo().getRotationDegrees();
+                byte[] jpeg = copyJpegAndClose(image);
+
+                // Name the original after the moment of capture; it is written only if the frame is accepted
+                File originalFile = appSettings.isKeepOriginals() ? createOriginalFile() : null;
+                ticket.process(() -> processAndSendImage(ticket, jpeg, rotationDegrees, originalFile, metrics));
+            }
+
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                exception.printStackTrace();
+                ticket.close();
+                runOnUiThread(() -> Toast.makeText(CameraActivity.this, "Image capture failed!", Toast.LENGTH_SHORT).show());
+            }
+        });
     }
 
     /**
-     * Sends the given image file to a backend server for analysis.
+     * Captures a burst of frames into memory and sends only the sharpest one for analysis.
      *
-     * This method constructs a multipart HTTP request to upload the image file to a predefined server URL.
-     * Upon successful transmission, the server's response is expected to contain the analysis result,
-     * which is then processed accordingly. Error handling is incorporated to manage failures in sending the image
-     * or issues with receiving the analysis result from the server.
+     * The frames, {@link AppSettings#getBurstFrameCount()} of them, are requested from the camera back to back. Each
+     * frame is scored by {@link ImagePreprocessor#scoreSharpness(byte[])} on the processing stage of the
+     * {@link CapturePipeline} as soon as it arrives, so scoring overlaps with the capture of the following frames.
+     * A {@link BurstSelector} keeps only the best frame so far; the others are dropped from memory once scored and are
+     * never written to storage. The winner then takes the path of an in-memory capture, see
+     * {@link #processAndSendImage(CapturePipeline.Ticket, byte[], int, File, CaptureMetrics)}, including the original
+     * if originals are kept. Bursts are always captured into memory, whatever {@link AppSettings#isInMemoryCapture()} says.
      *
-     * @param imageFile The image file to be sent to the backend server for analysis.
-     *
-     * @see okhttp3.RequestBody
-     * @see okhttp3.Request
-     * @see okhttp3.OkHttpClient
+     * The whole burst holds a single ticket of the pipeline, as it results in a single upload.
      */
-    private void sendImageToServer(File imageFile) {
-        // Create a request body with the image file
-        String filename = imageFile.getName();
-
-        RequestBody requestBody = new MultipartBody.Builder()
-                .setType(MultipartBody.FORM)
-                .addFormDataPart("image", filename, RequestBody.create(MediaType.parse("image/jpeg"), imageFile))
-                .build();
+    private void captureBurst() {
+        if (imageCapture == null) {
+            showSnackbar("Camera is not ready yet.");
+            return;
+        }
+        CapturePipeline.Ticket ticket = capturePipeline.tryAdmit();
+        if (ticket == null) {
+            showSnackbar("Still processing the previous photos, please wait.");
+            return;
+        }
+        CaptureMetrics metrics = new CaptureMetrics();
+        int frameCount = appSettings.getBurstFrameCount();
+
+        BurstSelector<BurstFrame> selector = new BurstSelector<>(frameCount, ticket::fork,
+                frame -> ImagePreprocessor.scoreSharpness(frame.jpeg),
+                new BurstSelector.Listener<BurstFrame>() {
+                    @Override
+                    public void onSelected(BurstFrame best, double score) {
+                        Log.d(TAG, String.format(Locale.US, "Burst of %d frames, best sharpness %.1f", frameCount, score));
+                        metrics.log("burst-selected");
+
+                        File originalFile = appSettings.isKeepOriginals() ? createOriginalFile() : null;
+                        ticket.process(() -> processAndSendImage(ticket, best.jpeg, best.rotationDegrees, originalFile, metrics));
+                    }
 
-        // Create the request with our backend URL
-        Request request = new Request.Builder()
-                .url("http://192.168.0.197:3000/analysePlantImage") // IP address of the backend server
-                .post(requestBody)
-                .build();
+                    @Override
+                    public void onNoFrame() {
+                        ticket.close();
+                        runOnUiThread(() -> Toast.makeText(CameraActivity.this, "Image capture failed!", Toast.LENGTH_SHORT).show());
+                    }
+                });
 
-        // Execute the request
-         OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS) // Set connection timeout
-                .readTimeout(30, TimeUnit.SECONDS) // Set read timeout
-                .build();
+        ImageCapture capture = imageCapture;
+        for (int i = 0; i < frameCount; i++) {
+            capture.takePicture(capturePipeline.getCaptureExecutor(), new ImageCapture.OnImageCapturedCallback() {
+                @Override
+                public void onCaptureSuccess(@NonNull ImageProxy image) {
+                    int rotationDegrees = image.getImageInfo().getRotationDegrees();
+                    selector.add(new BurstFrame(copyJpegAndClose(image), rotationDegrees));
+                }
 
-        Log.d(TAG, "Sending image to server: " + request.url());
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                e.printStackTrace();
-                showSnackbar("Failed to send image for analysis.");
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    Log.w(TAG, "Burst frame failed", exception);
+                    selector.skip();
+                }
+            });
+        }
+    }
 
-                // For testing
-                // getting date
-                Date date = new Date();
-                date.getTime();
-                String result = "This is a test result";
+    /**
+     * One frame of a burst, held in memory until it has been scored.
+     */
+    private static final class BurstFrame {
+        final byte[] jpeg;
+        final int rotationDegrees;
 
+        BurstFrame(byte[] jpeg, int rotationDegrees) {
+            this.jpeg = jpeg;
+            this.rotationDegrees = rotationDegrees;
+        }
+    }
 
-                //update MyGarden Activity with the new image
-                String imagePath = imageFile.getAbsolutePath();
-                updateMyGarden(imagePath, date.toString() + " " + result);
+    /**
+     * Copies the encoded JPEG out of an in-memory capture and closes it, so that the camera can reuse the buffer.
+     *
+     * @param image The capture delivered by the camera.
+     * @return The JPEG bytes.
+     */
+    private static byte[] copyJpegAndClose(ImageProxy image) {
+        try {
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            byte[] jpeg = new byte[buffer.remaining()];
+            buffer.get(jpeg);
+            return jpeg;
+        } finally {
+            image.close();
+        }
+    }
 
-                openAnalysisResult(imagePath);
+    /**
+     * Writes the JPEG delivered by the camera to {@code originalFile} without re-encoding it.
+     *
+     * The bytes are written as they are. Only if the EXIF orientation of the written file does not match the
+     * rotation reported by CameraX is the orientation tag corrected, which rewrites metadata but never pixels.
+     *
+     * @param jpeg The encoded JPEG as delivered by the camera.
+     * @param rotationDegrees The clockwise rotation reported by CameraX for this frame.
+     * @param originalFile The file to write the original to.
+     */
+    private void saveOriginal(byte[] jpeg, int rotationDegrees, File originalFile) {
+        try (FileOutputStream fos = new FileOutputStream(originalFile)) {
+            fos.write(jpeg);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
 
+        int exifOrientation = ImagePreprocessor.exifOrientationOf(rotationDegrees);
+        if (ImagePreprocessor.readExifOrientation(originalFile.getAbsolutePath()) != exifOrientation) {
+            try {
+                ExifInterface exif = new ExifInterface(originalFile.getAbsolutePath());
+                exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(exifOrientation));
+                exif.saveAttributes();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not record orientation of " + originalFile.getName(), e);
             }
+        }
+    }
 
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                if (response.isSuccessful()) {
-                    try {
-                        // Extract the analysis result from the response JSON
-                        String result = Objects.requireNonNull(response.body()).string();
-
-                        Log.d(TAG, "Analysis Result: " + result);
-
-                        //update MyGarden Activity with the new image
-                        String imagePath = imageFile.getAbsolutePath();
-                        updateMyGarden(imagePath, result);
-                        // Display the result and image in a new activity or dialog
-                        openAnalysisResult(imagePath);
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        showSnackbar("Error parsing analysis result.");
+    /**
+     * Deletes the original of a capture that will not become a garden entry, so that it does not stay behind in the
+     * output directory unseen.
+     *
+     * @param originalFile The original written by the camera.
+     */
+    private static void discardOriginal(File originalFile) {
+        if (!originalFile.delete() && originalFile.exists()) {
+            Log.w(TAG, "Could not delete the discarded capture " + originalFile.getName());
+        }
+    }
 
-                    }
-                } else {
-                    showSnackbar("Error: " + response.code());
+    /**
+     * Creates the timestamp-named file an original capture is saved to.
+     *
+     * @return A file in the output directory, not yet created on disk.
+     */
+    private File createOriginalFile() {
+        return new File(getOutputDirectory(), new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-SSS", Locale.US).format(System.currentTimeMillis()) + ".jpg");
+    }
 
-                    // For testing
-                    String result = "Response was not successful.";
-                    displayAnalysisResult(result, imageFile);
-                }
+    /**
+     * Processes the specified image and sends it to a backend server for further analysis.
+     *
+     * This method comprises two primary steps: preprocessing the given image file located at {@code imagePath}
+     * and then sending the preprocessed image to a designated backend server. The preprocessing decodes the image
+     * once, rotates and resizes it in a single transform and encodes the upload rendition once, within a byte budget
+     * that follows the measured upload bandwidth, see {@link ImagePreprocessor} and {@link UploadEncoder}. After preprocessing, the processed image is analysed by the
+     * {@code analyzeImage} method, on the device, on the backend server or both, unless the analysis result cache already holds the result of an identical or
+     * near-identical image, see {@link #reuseCachedResult(String, ProcessedImage)}.
+     *
+     * Before the rendition is encoded, the oriented frame is measured by the {@link QualityGate}. A frame that is too
+     * blurry, too dark or too bright is neither encoded nor uploaded; the user is asked to retake it instead. Only a
+     * frame that clears the gate is confirmed to the user as captured. The camera has already written the original of
+     * a rejected frame, or of one that could not be processed, to {@code imagePath}; as no garden entry will ever
+     * point to it, it is deleted.
+     *
+     * The upload rendition is kept in memory and streamed into the request; the original at {@code imagePath} is the
+     * image of the garden entry. The thumbnail and preview the garden screens display are made from the same decode and
+     * saved to the {@link RenditionStore} on the network stage.
+     *
+     * Runs on the processing stage of the {@link CapturePipeline}; the upload itself is handed on to its network stage.
+     *
+     * @param ticket The admission of this capture to the pipeline.
+     * @param imagePath The absolute path to the image file that needs to be processed and sent.
+     * @param metrics The latency and memory probe started when the shutter was pressed.
+     *
+     * @see ImagePreprocessor#preprocess(String, UploadEncoder, QualityGate.Thresholds, boolean, CaptureMetrics)
+     * @see #analyzeImage(String, ProcessedImage, UploadPayload)
+     */
+    private void processAndSendImage(CapturePipeline.Ticket ticket, String imagePath, CaptureMetrics metrics) {
+        ProcessedImage processedImage = ImagePreprocessor.preprocess(imagePath,
+                UploadEncoder.forCurrentConditions(appSettings), qualityThresholds(), true, metrics);
+        if (processedImage == null) {
+            discardOriginal(new File(imagePath));
+            showSnackbar("Image could not be processed.");
+            return;
+        }
+        if (processedImage.isRejected()) {
+            discardOriginal(new File(imagePath));
+            showSnackbar(retakeMessageFor(processedImage.quality));
+            return;
+        }
+        metrics.log("upload-ready");
+        // Only now that the frame has cleared the quality gate is the capture confirmed
+        showSnackbar(CAPTURE_ACCEPTED_MESSAGE);
+        ticket.upload(() -> {
+            renditionStore.save(imagePath, processedImage.renditions);
+            if (!reuseCachedResult(imagePath, processedImage)) {
+                analyzeImage(imagePath, processedImage, uploadPayloadOf(processedImage));
             }
         });
-
     }
 
     /**
-     * Updates the "MyGardenActivity" by saving the analysis result of an image and its path.
-     *
-     * This method performs two main tasks: first, it creates and writes the analysis result to a text file named
-     * with a prefix 'analysis_' followed by the original image's filename. This file is saved in the app's private
-     * file directory. Second, it saves both the path of the analyzed image and the path of the newly created analysis
-     * text file to SharedPreferences for later retrieval.
+     * Processes an in-memory JPEG and sends it to a backend server for further analysis.
      *
-     * The method handles any IOException that occurs during the file writing process and logs it. The saving of paths
-     * to SharedPreferences is facilitated by calling `saveImagePathToPrefs` and `saveAnalysisResultToPrefs` methods,
-     * which must be implemented elsewhere in the class or application to handle the specifics of SharedPreferences storage.
+     * Works like {@link #processAndSendImage(CapturePipeline.Ticket, String, CaptureMetrics)}, but decodes directly from the camera's
+     * buffer so the original never has to be read back from storage.
      *
-     * @param imagePath The absolute path of the image that was analyzed. This path is used to derive the filename for
-     *                  the analysis result file and to store in SharedPreferences for future reference.
-     * @param analysisResult The string containing the result of the image analysis. This result is written to a text
-     *                       file and the file's path is saved along with the image path in SharedPreferences.
+     * If the original is kept, it is written to {@code originalFile} on {@code ioExecutor} once the frame has cleared
+     * the quality gate, so a rejected frame never reaches storage. If the original is not kept, the upload rendition
+     * is the only image of the capture, so it is written to the output directory as the image of the garden entry. Either way, the renditions for display are saved once the
+     * path of that image is known.
      *
-     * @see #saveImagePathToPrefs(String)
-     * @see #saveAnalysisResultToPrefs(String, String)
+     * @param ticket The admission of this capture to the pipeline.
+     * @param jpeg The encoded JPEG as delivered by the camera.
+     * @param rotationDegrees The clockwise rotation reported by CameraX for this frame.
+     * @param originalFile The file to write the original to, or {@code null} if originals are not kept.
+     * @param metrics The latency and memory probe started when the shutter was pressed.
      */
- private void updateMyGarden(String imagePath, String analysisResult){
-        String filename = "analysis_" + getFileNameFromPath(imagePath) + ".txt";
-        File analysisFile = new File(getFilesDir(), filename);
-        try{
-            FileWriter writer = new FileWriter(analysisFile);
-            writer.write(analysisResult);
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void processAndSendImage(CapturePipeline.Ticket ticket, byte[] jpeg, int rotationDegrees, File originalFile, CaptureMetrics metrics) {
+        ProcessedImage processedImage = ImagePreprocessor.preprocess(jpeg, rotationDegrees,
+                UploadEncoder.forCurrentConditions(appSettings), qualityThresholds(), true, metrics);
+        if (processedImage == null) {
+            showSnackbar("Image could not be processed.");
+            return;
+        }
+        if (processedImage.isRejected()) {
+            showSnackbar(retakeMessageFor(processedImage.quality));
+            return;
+        }
+        metrics.log("upload-ready");
+        // Only now that the frame has cleared the quality gate is the capture confirmed and its original persisted
+        showSnackbar(CAPTURE_ACCEPTED_MESSAGE);
+        if (originalFile != null) {
+            ioExecutor.execute(() -> saveOriginal(jpeg, rotationDegrees, originalFile));
         }
-        saveImagePathToPrefs(imagePath);
-        saveAnalysisResultToPrefs(imagePath, analysisFile.getAbsolutePath());
- }
 
+        ticket.upload(() -> {
+            String imagePath;
+            UploadPayload payload = uploadPayloadOf(processedImage);
+            if (originalFile != null) {
+                imagePath = originalFile.getAbsolutePath();
+            } else {
+                try {
+                    imagePath = payload.persistTo(getOutputDirectory()).getAbsolutePath();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    showSnackbar("Image could not be saved.");
+                    return;
+                }
+            }
+            renditionStore.save(imagePath, processedImage.renditions);
 
+            if (!reuseCachedResult(imagePath, processedImage)) {
+                analyzeImage(imagePath, processedImage, payload);
+            }
+        });
+    }
 
     /**
-     * Extracts and returns the filename from the provided file path.
-     *
-     * This method constructs a {@link File} object using the given image path and then returns the name
-     * of the file. It is used to isolate the file name from a full path.
-     *
-     * @param imagePath The full path to the file.
-     * @return The name of the file extracted from the given path.
+     * @return The limits of the {@link QualityGate} from {@link AppSettings}, or {@code null} if the gate is switched off.
      */
-    private String getFileNameFromPath(String imagePath) {
-        File file = new File(imagePath);
-        return file.getName();
+    private QualityGate.Thresholds qualityThresholds() {
+        if (!appSettings.isQualityGate()) {
+            return null;
+        }
+        return QualityGate.Thresholds.DEFAULT.withMinSharpness(appSettings.getQualityMinSharpness());
     }
 
     /**
-     * Saves the image path to SharedPreferences.
-     *
-     * This method retrieves a set of image paths from SharedPreferences, adds the new image path to this set,
-     * and then saves the updated set back to SharedPreferences. This is used to keep track of all images
-     * processed by the app.
+     * Tells the user why a capture was turned down by the {@link QualityGate}.
      *
-     * @param imagePath The absolute path of the image to be saved.
+     * @param quality The assessment of the rejected capture.
+     * @return The message to show.
      */
-    //update MyGarden Activity with the new image
-    private void saveImagePathToPrefs(String imagePath) {
-        Set<String> imagePathSet = sharedPreferences.getStringSet("imagePaths", new HashSet<>());
-        imagePathSet.add(imagePath);
-        sharedPreferences.edit().putStringSet("imagePaths", imagePathSet).apply();
+    private static String retakeMessageFor(QualityGate.Assessment quality) {
+        switch (quality.verdict) {
+            case UNDEREXPOSED:
+                return "The photo is too dark, please retake it in better light.";
+            case OVEREXPOSED:
+                return "The photo is too bright, please avoid direct light and retake it.";
+            default:
+                return "The photo is blurry, please hold still and retake it.";
+        }
     }
 
     /**
-     * Saves the file path of an analysis result associated with an image to SharedPreferences.
+     * Enables or disables the shutter, dimming it while disabled. Called while the capture pipeline is full.
      *
-     * This method maps the image path to its corresponding analysis result file path in SharedPreferences.
-     * It allows for easy retrieval of the result file path when needed, based on the image path.
+     * @param enabled Whether new captures can be taken.
+     */
+    private void setShutterEnabled(boolean enabled) {
+        captureButton.setEnabled(enabled);
+        captureButton.setAlpha(enabled ? 1f : 0.5f);
+    }
+
+    /**
+     * Wraps the in-memory upload rendition for sending, named with a timestamp so that the images of a batch can be
+     * told apart.
      *
-     * @param imagePath The absolute path of the image that was analyzed.
-     * @param analysisResultFilePath The file path where the analysis result is stored.
+     * @param processedImage The upload rendition.
+     * @return The payload streaming the rendition from memory.
      */
-    private void saveAnalysisResultToPrefs(String imagePath, String analysisResultFilePath) {
-        sharedPreferences.edit().putString(imagePath, analysisResultFilePath).apply();
+    private UploadPayload uploadPayloadOf(ProcessedImage processedImage) {
+        UploadEncoder.EncodedImage encoded = processedImage.encoded;
+        return UploadPayload.ofBytes("processed_" + generateFileName() + encoded.fileExtension,
+                encoded.mimeType, encoded.buffer, encoded.length);
     }
 
     /**
-     * Displays the analysis result of an image in {@link AnalysisResultActivity}.
+     * Answers the processed image from the {@link AnalysisResultCache} if it holds the result of a byte-identical image,
+     * or, if perceptual matching is turned on, of one whose perceptual hash lies within
+     * {@link AppSettings#getResultCacheMaxDistance()}.
      *
-     * This method creates an intent to start {@code AnalysisResultActivity}, passing it the analysis
-     * result string and the image's file path. This allows the activity to display the image along with
-     * its analysis result.
+     * On a hit, the cached result is stored in the garden for the new image with the status
+     * {@link AnalysisResult.Status#REUSED}, so the list and the result screen tell it apart from an analysis of this
+     * image, and the analysis result screen is opened right away, without any network request.
      *
-     * @param result The analysis result to be displayed.
-     * @param imageFile The file of the image that was analyzed.
+     * @param imagePath The absolute path of the image shown in the garden.
+     * @param processedImage The upload rendition and its fingerprints.
+     * @return {@code true} if the result was reused, {@code false} if the image still has to be uploaded.
      */
-    public void displayAnalysisResult(String result, File imageFile) {
-        Intent intent = new Intent(this, AnalysisResultActivity.class);
-        intent.putExtra("result", result);
-        intent.putExtra("imagePath", imageFile.getAbsolutePath());
-        startActivity(intent);
+    private boolean reuseCachedResult(String imagePath, ProcessedImage processedImage) {
+        if (!appSettings.isResultCache()) {
+            return false;
+        }
+        String cachedResult = analysisResultCache.lookup(processedImage.contentDigest, processedImage.perceptualHash,
+                appSettings.getResultCacheMaxDistance());
+        analysisResultCache.logStats();
+        if (cachedResult == null) {
+            return false;
+        }
+
+        AnalysisResult reused = AnalysisResultParser.parse(cachedResult, System.currentTimeMillis(), 0)
+                .withStatus(AnalysisResult.Status.REUSED);
+        gardenRepository.updateMyGarden(imagePath, reused);
+        openAnalysisResultWhenSaved(imagePath);
+        return true;
     }
 
     /**
-     * Opens {@link AnalysisResultActivity} to display the selected image and its analysis result.
+     * Analyses the upload rendition of the given image with the analyzers that the {@link AnalysisPolicy} of
+     * {@link AppSettings#getAnalysisMode()} plans, see {@link AnalysisCoordinator}.
      *
-     * This method retrieves the analysis result file path for the given image path from SharedPreferences,
-     * reads the analysis result from the file, and starts {@code AnalysisResultActivity} with the image
-     * path and the read analysis result.
+     * The remote analysis is handed to the {@link AnalysisUploader}, which records the image as a job in the persistent
+     * upload outbox, then posts it to the configured server URL, see {@link AppSettings#getAnalysisUrl()}. If the
+     * upload fails, the job stays in the outbox and is retried in the background with exponential backoff, surviving
+     * even the death of the process; the user is informed with a toast. The local analysis runs the
+     * {@link com.example.plant_aid.analysisHelper.LeafHealthModel} on the device and works offline; its result is stored
+     * in the garden right away and, if the remote analysis runs as well, replaced by the server's result later.
      *
-     * @param selectedImagePath The path of the image whose analysis result is to be displayed.
+     * The analysis result screen is opened for the first result of the capture. Only results of the server are added
+     * to the {@link AnalysisResultCache}. The latency of both paths is logged after every result.
+     *
+     * @param imagePath The absolute path of the image shown in the garden.
+     * @param processedImage The processed image to be analysed.
+     * @param payload The upload rendition, streamed from memory.
+     *
+     * @see AnalysisCoordinator#analyze(AnalysisPolicy, String, UploadPayload, AnalysisCoordinator.Listener)
      */
-    private void openAnalysisResult(String selectedImagePath) {
-        String analysisResultFilePath = sharedPreferences.getString(selectedImagePath, "");
-        String analysisResult = readAnalysisResultFromFile(analysisResultFilePath);
+    private void analyzeImage(String imagePath, ProcessedImage processedImage, UploadPayload payload) {
+        AnalysisPolicy policy = new AnalysisPolicy(appSettings.getAnalysisMode());
+        analysisCoordinator.analyze(policy, imagePath, payload, new AnalysisCoordinator.Listener() {
+            @Override
+            public void onResult(String imagePath, String result, AnalysisCoordinator.Source source, boolean refinement) {
+                Log.d(TAG, "Analysis latency " + analysisCoordinator.getLatencySummary());
+                if (source == AnalysisCoordinator.Source.REMOTE) {
+                    analysisResultCache.put(processedImage.contentDigest, processedImage.perceptualHash, result);
+                }
 
-        // Start AnalysisResultActivity with the selected image path and analysis result
-        Intent intent = new Intent(this, AnalysisResultActivity.class);
-        intent.putExtra("imagePath", selectedImagePath);
-        intent.putExtra("analysisResult", analysisResultFilePath);
-        startActivity(intent);
+                if (refinement) {
+                    showSnackbar("The detailed analysis has arrived and is now shown in your garden.");
+                } else {
+                    // Display the result and image in a new activity
+                    openAnalysisResultWhenSaved(imagePath);
+                }
+            }
+
+            @Override
+            public void onDeferred(String imagePath, String reason) {
+                showSnackbar(reason);
+            }
+        });
     }
 
     /**
-     * Reads and returns the content of an analysis result file as a string.
+     * Opens the analysis result screen once the original of an in-memory capture has been written.
      *
-     * This method opens and reads the file at the given file path, appending each line of the file to
-     * a {@link StringBuilder} to construct the complete analysis result string.
+     * Originals are written on the single-threaded {@code ioExecutor}, so queueing the call behind them guarantees that
+     * the image exists by the time the result screen decodes it.
      *
-     * @param filePath The path to the file containing the analysis result.
-     * @return The complete analysis result as a string.
+     * @param imagePath The path of the image whose analysis result is to be displayed.
      */
-    private String readAnalysisResultFromFile(String filePath) {
-        StringBuilder result = new StringBuilder();
+    private void openAnalysisResultWhenSaved(String imagePath) {
         try {
-            FileInputStream fis = new FileInputStream(filePath);
-            InputStreamReader inputStreamReader = new InputStreamReader(fis);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
-            }
-            fis.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            ioExecutor.execute(() -> openAnalysisResult(imagePath));
+        } catch (RejectedExecutionException e) {
+            // The screen is gone and every original has been written, the result is waiting in the garden
+            Log.d(TAG, "Not opening the result of " + imagePath + ", the camera screen has been closed");
         }
-        return result.toString();
+    }
+
+    /**
+     * Opens {@link AnalysisResultActivity} to display the selected image and its analysis result.
+     *
+     * The result screen loads the stored result of the image from the {@link GardenRepository} itself, so only the
+     * image path is passed along.
+     *
+     * @param selectedImagePath The path of the image whose analysis result is to be displayed.
+     */
+    private void openAnalysisResult(String selectedImagePath) {
+        if (isFinishing() || isDestroyed()) {
+            // The user has moved on to another screen, the result is in the garden
+            return;
+        }
+        Intent intent = new Intent(this, AnalysisResultActivity.class);
+        intent.putExtra("imagePath", selectedImagePath);
+        startActivity(intent);
     }
 
     /**
@@ -490,76 +767,12 @@ public class CameraActivity extends AppCompatActivity {
      */
     private String generateFileName() {
         // Generate a timestamped file name
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+        // Milliseconds keep names unique for captures in quick succession, which batched uploads rely on
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault());
         return "IMG_" + sdf.format(new Date());
     }
 
 
-    /**
-     * Processes the image located at the given path to fit within specified maximum dimensions.
-     *
-     * This method loads the image from the specified path, resizes it to maintain the aspect ratio while ensuring
-     * the width and height do not exceed maximum set values, and saves the resized image to a new file. The new
-     * dimensions are chosen to reduce the file size and dimension for uploading, while
-     * maintaining the visual quality of the image. The processed image is saved with a "processed_" prefix in its
-     * filename to differentiate it from the original.
-     *
-     * @param imagePath The path of the image file to be processed.
-     * @return A File object pointing to the newly created file with the processed image.
-     */
-    private File preprocessImage(String imagePath) {
-        // Load the captured image
-        Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-
-        // Define the maximum width and height
-        int maxWidth = 800;
-        int maxHeight = 600;
-
-        // Get the original dimensions of the image
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        // Calculate the aspect ratio
-        float aspectRatio = (float) width / height;
-
-        // Calculate new width and height to fit within the maximum dimensions while maintaining aspect ratio
-        int newWidth = width;
-        int newHeight = height;
-        if (width > maxWidth || height > maxHeight) {
-            if (aspectRatio > 1) {
-                newWidth = maxWidth;
-                newHeight = (int) (maxWidth / aspectRatio);
-            } else {
-                newHeight = maxHeight;
-                newWidth = (int) (maxHeight * aspectRatio);
-            }
-        }
-
-        // Resize the bitmap
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
-
-        // Create a new file to save the processed image
-        String processedImagePath = getOutputDirectory() + File.separator + "processed_" + generateFileName() + ".jpg";
-        File processedImageFile = new File(processedImagePath);
-
-        try {
-            // Save the processed image to the new file
-            FileOutputStream fos = new FileOutputStream(processedImageFile);
-            resizedBitmap.compress(Bitmap.CompressFormat.JPEG, 90, fos);
-            fos.flush();
-            fos.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            // Recycle the original and resized bitmaps to release memory
-            bitmap.recycle();
-            resizedBitmap.recycle();
-        }
-
-        return processedImageFile;
-    }
-
-
     /**
      *  Method to get the output directory for saving captured images
      *
@@ -573,91 +786,97 @@ public class CameraActivity extends AppCompatActivity {
 
 
     /**
-     * Initializes the camera and sets up the preview and image capture functionalities.
-     *
-     * This method asynchronously retrieves an instance of {@link ProcessCameraProvider} and, upon successful
-     * initialization, proceeds to bind the camera preview and image capture functionalities to the application's User Interface.
-     * It utilizes a {@link ListenableFuture} to handle the asynchronous operation and sets up a listener to execute
-     * the binding once the camera provider is available. The main executor is used to ensure the callback executes
-     * on the main thread.
+     * Opens the camera session and attaches this screen's preview to it.
+     *
+     * The camera, its provider and its use cases are owned by the process-wide {@link CameraSessionManager}, so a
+     * return to this screen shortly after leaving it reuses the open camera and only swaps the preview surface. The
+     * resolutions are chosen by a {@link CaptureResolutionPolicy}: the preview covers the viewfinder, which is derived
+     * from the screen width rather than the {@link TextureView}, as the view may not have been laid out yet. The
+     * capture size follows whether originals are kept, see {@link #captureResolutionMode()}. Once the session is ready,
+     * its {@link ImageCapture} is used for the shutter.
      */
     private void startCamera() {
-        // Use a ListenableFuture to handle the asynchronous camera provider initialization
-        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
-
-        // Add a listener to the cameraProviderFuture to handle the completion of the camera provider initialization
-        cameraProviderFuture.addListener(() -> {
-            try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
-                bindPreviewAndImageCapture(cameraProvider);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, ContextCompat.getMainExecutor(this));
+        CaptureResolutionPolicy resolutionPolicy = CaptureResolutionPolicy.forUploadRendition(captureResolutionMode(),
+                getResources().getDisplayMetrics().widthPixels);
+        cameraSessionManager.open(resolutionPolicy, this::onSurfaceRequested, capture -> {
+            // The target rotation only decides the EXIF orientation of the saved JPEG
+            capture.setTargetRotation(getWindowManager().getDefaultDisplay().getRotation());
+            imageCapture = capture;
+        });
     }
 
 
     /**
-     * Binds the camera preview and image capture use cases to the camera provider.
-     *
-     * This method sets up the preview and image capture functionalities using the provided {@link ProcessCameraProvider}.
-     * It defines the preview size based on the dimensions of a {@link TextureView} used for displaying the camera feed,
-     * and configures the {@link ImageCapture} use case with necessary options. The camera is then bound to these use cases
-     * with a specified {@link CameraSelector}, ensuring the selected camera (e.g., back-facing camera) is used for the preview
-     * and capture.
+     * Provides the preview surface for the camera session, right away if the {@link TextureView} already has its
+     * {@link SurfaceTexture}, otherwise as soon as it does, see {@link PreviewSurfaceListener}.
      *
-     * @param cameraProvider The camera provider to which the use cases will be bound. This provider is responsible for
-     *                       managing the lifecycle of the camera use cases in accordance with the activity lifecycle.
+     * @param request The camera's request for a surface.
      */
-    private void bindPreviewAndImageCapture(ProcessCameraProvider cameraProvider) {
-
-        int viewWidth = textureView.getWidth();
-        int viewHeight = textureView.getHeight();
-
-        Rational aspectRatio = new Rational(viewWidth, viewHeight);
-
-        Size targetResolution = new Size(textureView.getWidth(), textureView.getHeight());
-        
-
-        Preview preview = new Preview.Builder().setTargetResolution(targetResolution).build();
+    private void onSurfaceRequested(@NonNull SurfaceRequest request) {
+        if (pendingSurfaceRequest != null) {
+            pendingSurfaceRequest.willNotProvideSurface();
+        }
+        if (textureView.isAvailable()) {
+            pendingSurfaceRequest = null;
+            provideSurface(request, textureView.getSurfaceTexture());
+        } else {
+            pendingSurfaceRequest = request;
+        }
+    }
 
 
-        // Setup ImageCapture use case
-        imageCapture = new ImageCapture.Builder()
-                .setTargetRotation(Surface.ROTATION_0)
-                // You can add more configurations as needed
-                .build();
+    /**
+     * Hands a surface on the given texture to the camera, sized to the preview resolution, and releases the surface
+     * once the camera no longer uses it.
+     */
+    private void provideSurface(SurfaceRequest request, SurfaceTexture surfaceTexture) {
+        surfaceTexture.setDefaultBufferSize(request.getResolution().getWidth(), request.getResolution().getHeight());
+        Surface surface = new Surface(surfaceTexture);
+        request.provideSurface(surface, ContextCompat.getMainExecutor(this), result -> surface.release());
+    }
 
-        CameraSelector cameraSelector = new CameraSelector.Builder()
-                .requireLensFacing(CameraSelector.LENS_FACING_BACK)
-                .build();
 
-        preview.setSurfaceProvider(new Preview.SurfaceProvider() {
-            @Override
-            public void onSurfaceRequested(@NonNull SurfaceRequest request) {
-                // Use the SurfaceTexture from the TextureView to create a Surface
-                SurfaceTexture surfaceTexture = textureView.getSurfaceTexture();
-                Surface surface = new Surface(surfaceTexture);
-
-                // Provide the Surface to the camera
-                request.provideSurface(surface, Executors.newSingleThreadExecutor(), (result) -> {
-                    //
-                });
+    /**
+     * Follows the {@link TextureView}'s surface: provides it to a waiting {@link SurfaceRequest} once available, and
+     * reports the first preview frame to the {@link CameraSessionManager} for the entry-to-preview measurement.
+     */
+    private final class PreviewSurfaceListener implements TextureView.SurfaceTextureListener {
+        @Override
+        public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
+            if (pendingSurfaceRequest != null) {
+                provideSurface(pendingSurfaceRequest, surface);
+                pendingSurfaceRequest = null;
             }
-        });
+        }
 
-        try {
-            // Unbind any previous use cases before rebinding
-            cameraProvider.unbindAll();
+        @Override
+        public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {
+        }
 
-            // Bind the camera to the lifecycle of the activity with the specified preview and camera selector
-            Camera camera = cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture);
-        } catch (Exception e) {
-            e.printStackTrace();
+        @Override
+        public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
+            // Released by the view; the camera has detached from it in onStop
+            return true;
+        }
+
+        @Override
+        public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {
+            cameraSessionManager.onPreviewFrame();
         }
     }
 
 
+    /**
+     * Decides what the captured frames are used for. Frames are only captured at full resolution if the original is
+     * stored, which file-based capture always does; otherwise they are captured close to the upload rendition's size.
+     *
+     * @return The mode for the {@link CaptureResolutionPolicy}.
+     */
+    private CaptureResolutionPolicy.Mode captureResolutionMode() {
+        boolean keepsOriginals = !appSettings.isInMemoryCapture() || appSettings.isKeepOriginals();
+        return keepsOriginals ? CaptureResolutionPolicy.Mode.KEEP_ORIGINALS : CaptureResolutionPolicy.Mode.FAST_ANALYSIS;
+    }
+
     /**
      * Handles the result of the permission request.
      *
@@ -686,46 +905,54 @@ public class CameraActivity extends AppCompatActivity {
     /**
      * Called when the activity is becoming visible to the user.
      *
-     * This method ensures that the {@link ImageCapture} use case is initialized if the {@link TextureView} is
-     * already attached to the window, indicating that the UI is ready for the camera preview to be displayed.
-     * It logs an error if the {@code textureView} is not ready, which is ensuring that
-     * the app's UI is correctly set up before attempting to use camera functionalities.
+     * Starts listening for orientation changes and opens the camera session if the camera permission has been granted.
+     * Otherwise the camera is started once the permission request is answered, see
+     * {@link #onRequestPermissionsResult(int, String[], int[])}.
      */
     @Override
     protected void onStart() {
         super.onStart();
-        if (textureView != null && textureView.isAttachedToWindow()) {
-            // Initialize the ImageCapture use case
-            imageCapture = new ImageCapture.Builder()
-                    .setTargetRotation(textureView.getDisplay().getRotation())
-                    .build();
-        } else {
-            Log.e("CameraActivity", "textureView is not ready in onStart");
+        orientationEventListener.enable();
+        if (allPermissionsGranted()) {
+            startCamera();
         }
     }
 
+
     /**
-     * Called when the activity will start interacting with the user.
-     *
-     * At this point, your activity is at the top of the activity stack, with user input going to it.
-     * Similar to {@code onStart()}, this method checks if the {@link TextureView} is ready and re-initializes
-     * the {@link ImageCapture} use case accordingly. If the {@code textureView} is not ready, it attempts to
-     * request the necessary camera permissions again. This ensures that the app correctly handles camera permissions
-     * and initialization following the Android activity lifecycle, especially when returning from a paused state.
+     * Called when the activity is no longer visible to the user. Stops listening for orientation changes and releases
+     * the camera session, which keeps the camera open for the grace period of
+     * {@link AppSettings#getCameraKeepWarmMillis()} in case the user comes back to this screen.
      */
     @Override
-    protected void onResume() {
-        super.onResume();
-        if (textureView != null && textureView.isAttachedToWindow()) {
-            imageCapture = new ImageCapture.Builder()
-                    .setTargetRotation(textureView.getDisplay().getRotation())
-                    .build();
-        } else {
-            ActivityCompat.requestPermissions(this, REQUIRED_PERMISSIONS, REQUEST_CODE_PERMISSIONS);
+    protected void onStop() {
+        super.onStop();
+        orientationEventListener.disable();
+        imageCapture = null;
+        if (pendingSurfaceRequest != null) {
+            pendingSurfaceRequest.willNotProvideSurface();
+            pendingSurfaceRequest = null;
         }
+        cameraSessionManager.release(appSettings.getCameraKeepWarmMillis());
     }
 
-
+    /**
+     * Maps a physical device orientation, as reported by {@link OrientationEventListener}, to the
+     * {@link Surface} rotation constant which {@link ImageCapture#setTargetRotation(int)} expects.
+     *
+     * @param orientation The device orientation in degrees, 0 to 359.
+     * @return One of {@code Surface.ROTATION_0}, {@code ROTATION_90}, {@code ROTATION_180} or {@code ROTATION_270}.
+     */
+    private static int surfaceRotationFor(int orientation) {
+        if (orientation >= 45 && orientation < 135) {
+            return Surface.ROTATION_270;
+        } else if (orientation >= 135 && orientation < 225) {
+            return Surface.ROTATION_180;
+        } else if (orientation >= 225 && orientation < 315) {
+            return Surface.ROTATION_90;
+        }
+        return Surface.ROTATION_0;
+    }
 
     /**
      * Checks if all required permissions have been granted for the app.
@@ -741,66 +968,20 @@ public class CameraActivity extends AppCompatActivity {
         return true;
     }
 
-    /**
-     * Rotates the image at the given file path by the specified degrees and saves the rotated image back to the file.
-     *
-     * This method loads the bitmap from the specified image path, applies a rotation transformation, and then saves
-     * the rotated bitmap to the same file path. It is useful for correcting the orientation of an image based on sensor
-     * data or user input.
-     *
-     * @param imagePath The file path of the image to rotate.
-     * @param degrees   The number of degrees to rotate the image. Positive values rotate clockwise, while negative values rotate counterclockwise.
-     */
-    private void rotateImage(String imagePath, float degrees) {
-        // Load the captured image
-        Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-
-        // Create a matrix for the rotation transformation
-        Matrix matrix = new Matrix();
-
-        // Set the rotation angle
-        matrix.postRotate(degrees);
-
-        // Apply the rotation to the bitmap
-        Bitmap rotatedBitmap = Bitmap.createBitmap(
-                bitmap,
-                0, 0,
-                bitmap.getWidth(), bitmap.getHeight(),
-                matrix, true);
-
-        // Save the rotated bitmap back to the image file
-        saveBitmapToFile(rotatedBitmap, imagePath);
-    }
-
-    /**
-     * Saves a {@link Bitmap} object to a file at the specified path.
-     *
-     * This method attempts to open or create the file at the given path and compresses the bitmap into this file
-     * using the JPEG format with a quality setting of 90. It is used to persist bitmap images to storage.
-     *
-     * @param bitmap   The bitmap to save to a file.
-     * @param filePath The path where the bitmap should be saved.
-     */
-    private void saveBitmapToFile(Bitmap bitmap, String filePath) {
-        File file = new File(filePath);
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, fos);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-
     /**
      * Called by the system to clean up resources before the activity is destroyed.
      *
-     * This method shuts down the {@link ExecutorService} used for camera operations, ensuring that any background
-     * tasks are properly terminated and resources are freed up. It is an important part of managing the app's
-     * resources and preventing memory leaks.
+     * This method closes the {@link CapturePipeline}: it admits no new captures, but lets the ones already admitted
+     * drain through processing and into the upload outbox, so that no photo the user has taken is lost. Only once the
+     * last of them has left the pipeline are its stages and the {@link ExecutorService} used for storage shut down,
+     * as the originals of those captures are still written on it. The pipeline is deliberately not cancelled here;
+     * {@link CapturePipeline#cancel()} would drop the admitted captures.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        cameraExecutor.shutdown();
+        // Refuse new captures, but let the admitted ones be processed, have their originals written and reach the
+        // outbox; the executor writing the originals is shut down once the last of them has left the pipeline
+        capturePipeline.close(ioExecutor::shutdown);
     }
 }
@@ -1,24 +1,25 @@
 package com.example.plant_aid;
 
-import android.content.Context;
-
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.plant_aid.myGardenHelper.GardenEntry;
+import com.example.plant_aid.myGardenHelper.GardenPrefetcher;
 import com.example.plant_aid.myGardenHelper.GardenRecyclerAdapter;
+import com.example.plant_aid.myGardenHelper.GardenRepository;
+import com.example.plant_aid.myGardenHelper.SummaryLoader;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -29,19 +30,48 @@ import java.util.Set;
  * <p>Within this activity, users can view their garden's images that have been saved previously. Each image
  * in the list can be clicked to view an analysis result associated with that image.</p>
  *
- * <p>The activity also handles retrieving image paths from shared preferences, initializing the RecyclerView
- * and its adapter, and setting up a click listener for items within the RecyclerView.</p>
+ * <p>The garden is loaded from the {@link GardenRepository} page by page, newest first, on a background thread:
+ * the first page when the activity is created, each further page once the user scrolls close to the end of the
+ * list. Each entry of a page carries the summary of its analysis result from the garden index, so the rows are
+ * bound without reading any result; only entries of earlier versions that have no summary in the index yet are
+ * read by a {@link SummaryLoader}, which keeps the recently shown ones in memory. The whole result is loaded by the
+ * {@link AnalysisResultActivity} once a row is opened. The activity also initializes the RecyclerView and its
+ * adapter, and sets up a click listener for items within the RecyclerView.</p>
+ *
+ * <p>While the activity exists, it listens for the changes of the garden: a completed capture appears at the top
+ * of the list, and a row whose result has been updated shows the summary that comes with the change, without
+ * reloading the list. See {@link GardenRepository.ChangeListener}.</p>
+ *
+ * <p>As the user scrolls, a {@link GardenPrefetcher} loads the thumbnails and summaries of the rows ahead into
+ * memory, so they are ready when the rows come into view.</p>
  */
 public class MyGardenActivity extends AppCompatActivity {
 
+    private static final String TAG = "MyGardenActivity";
+
+    /** The number of entries loaded at a time, a few screens full. */
+    private static final int PAGE_SIZE = 40;
+
+    /** The number of summaries kept in memory, enough to scroll back a few pages without reading any again. */
+    private static final int SUMMARY_CACHE_SIZE = 256;
+
     private RecyclerView gardenRecyclerView;
     private GardenRecyclerAdapter recyclerAdapter;
-    private SharedPreferences sharedPreferences;
+    private GardenRepository gardenRepository;
+    private SummaryLoader summaryLoader;
+    private GardenPrefetcher prefetcher;
+    private GardenRepository.ChangeListener gardenChangeListener;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    /** The last entry loaded so far, the page after it is loaded next. Only accessed on the main thread. */
+    private GardenEntry lastLoadedEntry;
+    private boolean loadingPage;
+    private boolean allPagesLoaded;
 
     /**
      * Called when the activity is starting. This is where initialization of the activity's UI and
      * components takes place. It sets the content view, initializes the RecyclerView and its adapter,
-     * and sets up the bottom navigation.
+     * starts loading the first page of the garden, and sets up the bottom navigation.
      *
      * @param savedInstanceState If the activity is being re-initialized after previously being shut down
      *                           then this Bundle contains the data it most recently supplied in
@@ -55,73 +85,102 @@ public class MyGardenActivity extends AppCompatActivity {
         NavigationHelper.setupBottomNavigation(this, R.id.my_garden_nav_bar);
 
         gardenRecyclerView = findViewById(R.id.gardenRecyclerView);
-        gardenRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        gardenRecyclerView.setLayoutManager(layoutManager);
+
+        gardenRepository = new GardenRepository(this);
 
-        // Initialize SharedPreferences
-        sharedPreferences = getSharedPreferences("MyGardenPrefs", Context.MODE_PRIVATE);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        summaryLoader = new SummaryLoader(gardenRepository::loadSummary, SUMMARY_CACHE_SIZE, mainHandler::post);
 
         // Initialize the custom adapter
-        ArrayList<String> imagePaths = getImagePathsFromPrefs();
-        recyclerAdapter = new GardenRecyclerAdapter(this, imagePaths, sharedPreferences);
+        recyclerAdapter = new GardenRecyclerAdapter(this, summaryLoader);
 
         // Set a click listener for the images in the list
-        recyclerAdapter.setOnItemClickListener(position -> {
-            String selectedImagePath = imagePaths.get(position);
-            openAnalysisResult(selectedImagePath);
-        });
+        recyclerAdapter.setOnItemClickListener(entry -> openAnalysisResult(entry.imagePath));
 
         gardenRecyclerView.setAdapter(recyclerAdapter);
+
+        // Load the thumbnails and summaries of the rows ahead of the scroll
+        prefetcher = new GardenPrefetcher(this, recyclerAdapter, layoutManager, summaryLoader);
+        gardenRecyclerView.addOnScrollListener(prefetcher);
+
+        // Apply the changes of the garden on the main thread, where the adapter is accessed
+        gardenChangeListener = changes -> mainHandler.post(() -> applyGardenChanges(changes));
+        GardenRepository.addChangeListener(gardenChangeListener);
+
+        // Load the next page while the user is still half a page away from the end of the list
+        gardenRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= recyclerAdapter.getItemCount() - PAGE_SIZE / 2) {
+                    loadNextPage();
+                }
+            }
+        });
+        loadNextPage();
     }
 
     /**
-     * Retrieves the list of image paths from shared preferences.
+     * Loads the page of the garden following the entries loaded so far and appends it to the list. Does nothing
+     * while a page is loading or once the garden has been loaded completely.
+     */
+    private void loadNextPage() {
+        if (loadingPage || allPagesLoaded) {
+            return;
+        }
+        loadingPage = true;
+        GardenEntry after = lastLoadedEntry;
+        ioExecutor.execute(() -> {
+            List<GardenEntry> page = gardenRepository.loadPage(after, PAGE_SIZE);
+            runOnUiThread(() -> {
+                loadingPage = false;
+                allPagesLoaded = page.size() < PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    lastLoadedEntry = page.get(page.size() - 1);
+                    recyclerAdapter.appendPage(page);
+                }
+            });
+        });
+    }
+
+    /**
+     * Applies changes of the garden to the list. The cached summaries of the changed entries are dropped first, so
+     * that a row whose change came without a summary loads the new one.
      *
-     * @return An ArrayList containing the image paths stored in shared preferences.
+     * @param changes The changes of one batch, in the order they were written.
      */
-    private ArrayList<String> getImagePathsFromPrefs() {
-        Set<String> imagePathSet = sharedPreferences.getStringSet("imagePaths", new HashSet<>());
-        return new ArrayList<>(imagePathSet);
+    private void applyGardenChanges(List<GardenRepository.Change> changes) {
+        if (isDestroyed()) {
+            return;
+        }
+        for (GardenRepository.Change change : changes) {
+            summaryLoader.invalidate(change.entry.imagePath);
+            recyclerAdapter.applyChange(change, allPagesLoaded);
+        }
     }
 
     /**
-     * Opens the AnalysisResultActivity for the selected image path. This method prepares and starts the
-     * AnalysisResultActivity with the selected image path and its analysis result.
+     * Opens the AnalysisResultActivity for the selected image path, which loads the analysis result of the image
+     * from the {@link GardenRepository}.
      *
      * @param selectedImagePath The path of the image selected by the user.
      */
     private void openAnalysisResult(String selectedImagePath) {
-        String analysisResultFilePath = sharedPreferences.getString(selectedImagePath, "");
-        String analysisResult = readAnalysisResultFromFile(analysisResultFilePath);
-
-        // Start AnalysisResultActivity with the selected image path and analysis result
         Intent intent = new Intent(this, AnalysisResultActivity.class);
         intent.putExtra("imagePath", selectedImagePath);
-        intent.putExtra("analysisResult", analysisResultFilePath);
         startActivity(intent);
     }
 
-
-    /**
-     * Reads the analysis result from a file specified by the file path.
-     *
-     * @param filePath The path of the file containing the analysis result.
-     * @return A string representing the content of the analysis result file.
-     */
-    private String readAnalysisResultFromFile(String filePath) {
-        StringBuilder result = new StringBuilder();
-        try {
-            FileInputStream fis = new FileInputStream(filePath);
-            InputStreamReader inputStreamReader = new InputStreamReader(fis);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
-            }
-            fis.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return result.toString();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        GardenRepository.removeChangeListener(gardenChangeListener);
+        ioExecutor.shutdown();
+        prefetcher.cancel();
+        summaryLoader.shutdown();
+        Log.d(TAG, String.format(Locale.US, "Summary cache: hits=%d misses=%d hitRate=%.2f prefetched=%d cancelled=%d",
+                summaryLoader.getHitCount(), summaryLoader.getMissCount(), summaryLoader.getHitRate(),
+                prefetcher.getPrefetchedRows(), prefetcher.getCancelledRows()));
     }
 }
-
@@ -5,6 +5,7 @@ import android.view.MenuItem;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.plant_aid.cameraHelper.CameraSessionManager;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
@@ -61,6 +62,8 @@ public class NavigationHelper {
     private static void handleFabClick(AppCompatActivity currentActivity, BottomNavigationView bottomNavigationView) {
         bottomNavigationView.setSelectedItemId(R.id.camera_nav_bar_item);
         if (currentActivity.getClass() != CameraActivity.class) {
+            // Start of the tap-to-preview measurement
+            CameraSessionManager.getInstance(currentActivity).markEntryRequested();
             startNewActivity(currentActivity, CameraActivity.class);
         }
     }
@@ -0,0 +1,24 @@
+package com.example.plant_aid;
+
+import android.app.Application;
+
+import com.example.plant_aid.cameraHelper.CameraSessionManager;
+import com.example.plant_aid.myGardenHelper.GardenRepository;
+
+/**
+ * The application class of Plant AID.
+ *
+ * <p>Starts the work that should be done once per process, ahead of the first screen that needs it: CameraX is
+ * initialised in the background while the user is still on the home screen, so the camera screen can bind its
+ * use cases as soon as it is opened. The garden of earlier versions is migrated to the garden database in the
+ * background, see {@link GardenRepository#migrateInBackground(android.content.Context)}.</p>
+ */
+public class PlantAidApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        CameraSessionManager.getInstance(this).prewarm(this);
+        GardenRepository.migrateInBackground(this);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.plant_aid;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.module.AppGlideModule;
+import com.example.plant_aid.cameraHelper.RenditionModelLoader;
+import com.example.plant_aid.cameraHelper.RenditionStore;
+
+import java.io.InputStream;
+
+/**
+ * The Glide configuration of Plant AID.
+ *
+ * <p>Teaches Glide to load the renditions of garden images by their {@link RenditionStore.Key}, see
+ * {@link RenditionModelLoader}.</p>
+ */
+@GlideModule
+public final class PlantAidGlideModule extends AppGlideModule {
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.prepend(RenditionStore.Key.class, InputStream.class, new RenditionModelLoader.Factory(context));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.plant_aid.analysisHelper;
+
+import com.example.plant_aid.networkHelper.UploadPayload;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the analyzers an {@link AnalysisPolicy} plans for a capture and compares their latency.
+ *
+ * <p>If the plan includes the local analyzer, it runs first. Its result is stored as the garden entry of the image
+ * straight away and reported to the listener; if the remote analyzer runs as well, it is stored as an
+ * {@link AnalysisResult.Status#ESTIMATE} to be replaced, and the remote result is reported as a refinement once it
+ * arrives. The remote analyzer
+ * stores its own results, since its retries may complete in the background long after the listener is gone. If the
+ * local analyzer fails, the remote one still runs when planned.</p>
+ *
+ * <p>The latency of every result is recorded per analyzer, see {@link #getLatencySummary()}, so the two paths can
+ * be compared on real devices and networks.</p>
+ */
+public final class AnalysisCoordinator {
+
+    /**
+     * Where a result came from.
+     */
+    public enum Source {
+        LOCAL,
+        REMOTE
+    }
+
+    /**
+     * Receives the results of one capture, on the threads of the analyzers.
+     */
+    public interface Listener {
+        /**
+         * Called for every result.
+         *
+         * @param imagePath  The absolute path of the analysed image.
+         * @param result     The result text.
+         * @param source     The analyzer that produced it.
+         * @param refinement {@code true} if it replaces an earlier result of the same capture.
+         */
+        void onResult(String imagePath, String result, Source source, boolean refinement);
+
+        /**
+         * Called if no result is available for now, e.g. because the upload is waiting to be retried.
+         *
+         * @param imagePath The absolute path of the image.
+         * @param reason    A short, user-readable description.
+         */
+        void onDeferred(String imagePath, String reason);
+    }
+
+    /**
+     * Stores a result as the garden entry of an image.
+     */
+    public interface ResultStore {
+        void store(String imagePath, AnalysisResult result);
+    }
+
+    private final PlantAnalyzer localAnalyzer;
+    private final PlantAnalyzer remoteAnalyzer;
+    private final ResultStore resultStore;
+    private final BooleanSupplier online;
+    private final LongSupplier clockMillis;
+    private final LongSupplier wallClockMillis;
+    private final LatencyStats localLatency;
+    private final LatencyStats remoteLatency;
+
+    /**
+     * Creates a coordinator.
+     *
+     * @param localAnalyzer  The analyzer running on the device.
+     * @param remoteAnalyzer The analyzer backed by the server.
+     * @param resultStore    Stores local results in the garden.
+     * @param online         Tells whether a network is currently available.
+     */
+    public AnalysisCoordinator(PlantAnalyzer localAnalyzer, PlantAnalyzer remoteAnalyzer, ResultStore resultStore,
+                               BooleanSupplier online) {
+        this(localAnalyzer, remoteAnalyzer, resultStore, online, () -> System.nanoTime() / 1_000_000L,
+                System::currentTimeMillis);
+    }
+
+    AnalysisCoordinator(PlantAnalyzer localAnalyzer, PlantAnalyzer remoteAnalyzer, ResultStore resultStore,
+                        BooleanSupplier online, LongSupplier clockMillis, LongSupplier wallClockMillis) {
+        this.localAnalyzer = localAnalyzer;
+        this.remoteAnalyzer = remoteAnalyzer;
+        this.resultStore = resultStore;
+        this.online = online;
+        this.clockMillis = clockMillis;
+        this.wallClockMillis = wallClockMillis;
+        this.localLatency = new LatencyStats(localAnalyzer.getName());
+        this.remoteLatency = new LatencyStats(remoteAnalyzer.getName());
+    }
+
+    /**
+     * Analyses a capture as planned by the policy.
+     *
+     * @param policy    Decides which analyzers run.
+     * @param imagePath The absolute path of the garden image.
+     * @param payload   The upload rendition of the image.
+     * @param listener  Receives the results.
+     */
+    public void analyze(AnalysisPolicy policy, String imagePath, UploadPayload payload, Listener listener) {
+        AnalysisPolicy.Plan plan = policy.plan(online.getAsBoolean());
+        if (!plan.runLocal) {
+            analyzeRemotely(imagePath, payload, listener, false);
+            return;
+        }
+
+        long start = clockMillis.getAsLong();
+        localAnalyzer.analyze(imagePath, payload, new PlantAnalyzer.Callback() {
+            @Override
+            public void onResult(String result) {
+                localLatency.record(clockMillis.getAsLong() - start);
+                // Stored before the upload starts, so that the remote result can only ever overwrite it
+                AnalysisResult.Status status = plan.runRemote ? AnalysisResult.Status.ESTIMATE : AnalysisResult.Status.FINAL;
+                resultStore.store(imagePath, AnalysisResult.fromText(result, status, wallClockMillis.getAsLong(), 0));
+                listener.onResult(imagePath, result, Source.LOCAL, false);
+                if (plan.runRemote) {
+                    analyzeRemotely(imagePath, payload, listener, true);
+                }
+            }
+
+            @Override
+            public void onFailure(String reason) {
+                localLatency.recordFailure();
+                if (plan.runRemote) {
+                    analyzeRemotely(imagePath, payload, listener, false);
+                } else {
+                    listener.onDeferred(imagePath, reason);
+                }
+            }
+        });
+    }
+
+    private void analyzeRemotely(String imagePath, UploadPayload payload, Listener listener, boolean refinement) {
+        long start = clockMillis.getAsLong();
+        remoteAnalyzer.analyze(imagePath, payload, new PlantAnalyzer.Callback() {
+            @Override
+            public void onResult(String result) {
+                remoteLatency.record(clockMillis.getAsLong() - start);
+                listener.onResult(imagePath, result, Source.REMOTE, refinement);
+            }
+
+            @Override
+            public void onFailure(String reason) {
+                remoteLatency.recordFailure();
+                listener.onDeferred(imagePath, reason);
+            }
+        });
+    }
+
+    public LatencyStats getLocalLatency() {
+        return localLatency;
+    }
+
+    public LatencyStats getRemoteLatency() {
+        return remoteLatency;
+    }
+
+    /**
+     * @return The latency statistics of both analyzers side by side, for the log.
+     */
+    public String getLatencySummary() {
+        return localLatency + " | " + remoteLatency;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.plant_aid.analysisHelper;
+
+/**
+ * Decides which analyzers run for a capture.
+ *
+ * <p>The backend gives the detailed analysis but needs a network; the on-device model answers within milliseconds
+ * and offline, but only gives a rough estimate. The {@link Mode} chosen in the settings combines them:</p>
+ * <ul>
+ *     <li>{@link Mode#REMOTE} sends the image to the backend. Without a network, the on-device estimate is shown
+ *     instead, and the upload waits in the outbox to refine it later.</li>
+ *     <li>{@link Mode#LOCAL} only runs the on-device model and never uploads.</li>
+ *     <li>{@link Mode#LOCAL_THEN_REMOTE} shows the on-device estimate right away and refines it with the backend's
+ *     analysis once that arrives.</li>
+ * </ul>
+ */
+public final class AnalysisPolicy {
+
+    /**
+     * Which analyzers are preferred.
+     */
+    public enum Mode {
+        REMOTE,
+        LOCAL,
+        LOCAL_THEN_REMOTE
+    }
+
+    /**
+     * The analyzers to run for one capture. If both run, the local one runs first.
+     */
+    public static final class Plan {
+        public final boolean runLocal;
+        public final boolean runRemote;
+
+        Plan(boolean runLocal, boolean runRemote) {
+            this.runLocal = runLocal;
+            this.runRemote = runRemote;
+        }
+    }
+
+    private final Mode mode;
+
+    public AnalysisPolicy(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Plans the analysis of a capture.
+     *
+     * @param online Whether a network is currently available.
+     * @return The analyzers to run.
+     */
+    public Plan plan(boolean online) {
+        switch (mode) {
+            case LOCAL:
+                return new Plan(true, false);
+            case LOCAL_THEN_REMOTE:
+                return new Plan(true, true);
+            default:
+                // The upload is queued either way, offline the user gets the estimate in the meantime
+                return new Plan(!online, true);
+        }
+    }
+}
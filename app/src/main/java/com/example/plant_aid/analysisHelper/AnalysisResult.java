@@ -0,0 +1,286 @@
+package com.example.plant_aid.analysisHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The analysis result of a garden image, parsed once from the answer of an analyzer.
+ *
+ * <p>The list screens only need the {@link #status}, {@link #diagnosis}, {@link #confidence} and the timestamps,
+ * which {@link AnalysisResultCodec} stores in a small header ahead of the {@link #recommendations} and
+ * {@link #details}, so they can be loaded without the rest, see {@link #isSummary()}.</p>
+ */
+public final class AnalysisResult {
+
+    /** Appended to the display text of an {@link Status#ESTIMATE}. */
+    public static final String PROVISIONAL_NOTE =
+            "This is a quick on-device estimate. The detailed analysis will replace it once the image has been uploaded.";
+
+    /** Appended to the display text of a {@link Status#REUSED} result. */
+    public static final String REUSED_NOTE =
+            "This result was reused from an earlier, near-identical photo; this image itself was not analysed.";
+
+    /** Shown for an entry whose image has not been analysed yet. */
+    public static final String PENDING_TEXT =
+            "Analysis pending. The result will appear here once the image has been uploaded.";
+
+    /**
+     * The state of the analysis. The codes are part of the binary schema and must never change.
+     */
+    public enum Status {
+        /** The image waits for its analysis. */
+        PENDING(0),
+        /** An on-device estimate that the server's analysis is going to replace. */
+        ESTIMATE(1),
+        /** The final result. */
+        FINAL(2),
+        /** No result could be obtained. */
+        FAILED(3),
+        /** The final result of an earlier capture of the same subject, reused instead of analysing the image. */
+        REUSED(4);
+
+        final int code;
+
+        Status(int code) {
+            this.code = code;
+        }
+
+        /**
+         * @return The code of the status in stored results and in the garden index.
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * @param code A code as returned by {@link #getCode()}.
+         * @return The status with the code.
+         */
+        public static Status ofCode(int code) {
+            for (Status status : values()) {
+                if (status.code == code) {
+                    return status;
+                }
+            }
+            // A status added by a later schema version; the result is still shown as it is
+            return FINAL;
+        }
+    }
+
+    /** The longest diagnosis kept in a {@link #toListSummary() list summary}, in characters. */
+    public static final int MAX_HEADLINE_LENGTH = 120;
+
+    /** Bullet or numbered lines of a text result, which are read as recommendations. */
+    private static final Pattern BULLET = Pattern.compile("^(?:[-*\u2022]|\\d{1,2}[.)])\\s+(.*)$");
+    /** "Confidence: 87%", "confidence 0.87" or "87% confidence" within a line of a text result. */
+    private static final Pattern CONFIDENCE = Pattern.compile(
+            "(?i)(?:confidence\\s*[:=]?\\s*(\\d+(?:\\.\\d+)?)\\s*(%)?|(\\d+(?:\\.\\d+)?)\\s*%\\s*confidence)");
+    /** A parenthesised confidence such as " (87% confidence)", removed from the diagnosis. */
+    private static final Pattern CONFIDENCE_REMARK = Pattern.compile("(?i)\\s*\\([^)]*confidence[^)]*\\)");
+    private static final Pattern DIAGNOSIS_LABEL = Pattern.compile("(?i)^(?:diagnosis|result)\\s*:\\s*");
+
+    public final Status status;
+    /** A one-line diagnosis, never {@code null}. */
+    public final String diagnosis;
+    /** The confidence of the diagnosis between 0 and 1, or {@link Float#NaN} if the analyzer did not state one. */
+    public final float confidence;
+    /** What the user should do, empty if there is nothing to recommend or for a summary. */
+    public final List<String> recommendations;
+    /** Further explanations, {@code null} if there are none or for a summary. */
+    public final String details;
+    /** When the result was obtained, in milliseconds since the epoch, or 0 if unknown. */
+    public final long analyzedAt;
+    /** When the image was taken, in milliseconds since the epoch, or 0 if unknown. */
+    public final long capturedAt;
+
+    private final boolean summary;
+
+    public AnalysisResult(Status status, String diagnosis, float confidence, List<String> recommendations,
+                          String details, long analyzedAt, long capturedAt) {
+        this(status, diagnosis, confidence, recommendations, details, analyzedAt, capturedAt, false);
+    }
+
+    AnalysisResult(Status status, String diagnosis, float confidence, List<String> recommendations, String details,
+                   long analyzedAt, long capturedAt, boolean summary) {
+        this.status = status;
+        this.diagnosis = diagnosis != null ? diagnosis : "";
+        this.confidence = confidence;
+        this.recommendations = recommendations != null
+                ? Collections.unmodifiableList(new ArrayList<>(recommendations))
+                : Collections.<String>emptyList();
+        this.details = details;
+        this.analyzedAt = analyzedAt;
+        this.capturedAt = capturedAt;
+        this.summary = summary;
+    }
+
+    /**
+     * @return A result for an image that waits for its analysis.
+     */
+    public static AnalysisResult pending(long capturedAt) {
+        return new AnalysisResult(Status.PENDING, PENDING_TEXT, Float.NaN, null, null, 0, capturedAt);
+    }
+
+    /**
+     * @param reason A user-readable description of why no result could be obtained.
+     * @return A result for an image whose analysis failed.
+     */
+    public static AnalysisResult failed(String reason, long analyzedAt, long capturedAt) {
+        return new AnalysisResult(Status.FAILED, reason, Float.NaN, null, null, analyzedAt, capturedAt);
+    }
+
+    /**
+     * Recreates a summary from its parts, as the garden index keeps them.
+     *
+     * @return A result without recommendations and details, see {@link #isSummary()}.
+     */
+    public static AnalysisResult summary(Status status, String diagnosis, float confidence, long analyzedAt,
+                                         long capturedAt) {
+        return new AnalysisResult(status, diagnosis, confidence, null, null, analyzedAt, capturedAt, true);
+    }
+
+    /**
+     * Reads a result from free text, as the server answered before it returned JSON and as the on-device analyzer
+     * describes its diagnosis.
+     *
+     * <p>The first line is the diagnosis, bullet and numbered lines are recommendations, a stated confidence is
+     * picked up from any line, and all remaining lines are kept as the details.</p>
+     *
+     * @param text       The text of the result.
+     * @param status     The status of the result.
+     * @param analyzedAt When the result was obtained.
+     * @param capturedAt When the image was taken.
+     * @return The result.
+     */
+    public static AnalysisResult fromText(String text, Status status, long analyzedAt, long capturedAt) {
+        String diagnosis = null;
+        float confidence = Float.NaN;
+        List<String> recommendations = new ArrayList<>();
+        StringBuilder details = new StringBuilder();
+
+        for (String rawLine : text.split("\\r?\\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            Matcher confidenceMatcher = CONFIDENCE.matcher(line);
+            boolean statesConfidence = Float.isNaN(confidence) && confidenceMatcher.find();
+            if (statesConfidence) {
+                confidence = confidenceOf(confidenceMatcher);
+            }
+
+            Matcher bullet = BULLET.matcher(line);
+            if (diagnosis == null) {
+                diagnosis = DIAGNOSIS_LABEL.matcher(CONFIDENCE_REMARK.matcher(line).replaceAll("")).replaceFirst("");
+            } else if (bullet.matches()) {
+                recommendations.add(bullet.group(1).trim());
+            } else if (!(statesConfidence && confidenceMatcher.start() == 0 && confidenceMatcher.end() == line.length())) {
+                // Lines that state nothing but the confidence are fully represented by the field
+                if (details.length() > 0) {
+                    details.append('\n');
+                }
+                details.append(line);
+            }
+        }
+        return new AnalysisResult(status, diagnosis, confidence, recommendations,
+                details.length() > 0 ? details.toString() : null, analyzedAt, capturedAt);
+    }
+
+    private static float confidenceOf(Matcher matcher) {
+        boolean labelled = matcher.group(1) != null;
+        float value = Float.parseFloat(labelled ? matcher.group(1) : matcher.group(3));
+        boolean percent = !labelled || matcher.group(2) != null || value > 1f;
+        return normalizeConfidence(percent ? value / 100f : value);
+    }
+
+    /**
+     * Clamps a confidence to the range 0 to 1, mapping anything that is not a number to {@link Float#NaN}.
+     */
+    static float normalizeConfidence(float confidence) {
+        if (Float.isNaN(confidence) || Float.isInfinite(confidence)) {
+            return Float.NaN;
+        }
+        return Math.max(0f, Math.min(1f, confidence));
+    }
+
+    /**
+     * @return A copy of this result with another status.
+     */
+    public AnalysisResult withStatus(Status status) {
+        return new AnalysisResult(status, diagnosis, confidence, recommendations, details, analyzedAt, capturedAt,
+                summary);
+    }
+
+    /**
+     * @return A copy of this result for an image taken at the given time.
+     */
+    public AnalysisResult withCapturedAt(long capturedAt) {
+        return new AnalysisResult(status, diagnosis, confidence, recommendations, details, analyzedAt, capturedAt,
+                summary);
+    }
+
+    /**
+     * @return The summary of this result as the garden list shows it, with the diagnosis cut to
+     *         {@link #MAX_HEADLINE_LENGTH} characters.
+     */
+    public AnalysisResult toListSummary() {
+        String headline = diagnosis;
+        if (headline.length() > MAX_HEADLINE_LENGTH) {
+            headline = headline.substring(0, MAX_HEADLINE_LENGTH - 1).trim() + "\u2026";
+        }
+        return summary(status, headline, confidence, analyzedAt, capturedAt);
+    }
+
+    /**
+     * @return Whether only the header of the result was loaded, without recommendations and details.
+     */
+    public boolean isSummary() {
+        return summary;
+    }
+
+    public boolean hasConfidence() {
+        return !Float.isNaN(confidence);
+    }
+
+    /**
+     * @return The diagnosis and confidence on one line, as shown in the garden list, marked if it was reused.
+     */
+    public String toSummaryText() {
+        String text = diagnosis;
+        if (hasConfidence()) {
+            text = String.format(Locale.US, "%s (%.0f%% confidence)", diagnosis, confidence * 100);
+        }
+        return status == Status.REUSED ? text + " [reused]" : text;
+    }
+
+    /**
+     * @return The whole result as shown on the analysis result screen, one part per paragraph.
+     */
+    public String toDisplayText() {
+        StringBuilder text = new StringBuilder(toSummaryText());
+        if (details != null) {
+            text.append("\n\n").append(details);
+        }
+        if (!recommendations.isEmpty()) {
+            text.append("\n\nRecommendations:");
+            for (String recommendation : recommendations) {
+                text.append("\n\u2022 ").append(recommendation);
+            }
+        }
+        if (status == Status.ESTIMATE) {
+            text.append("\n\n").append(PROVISIONAL_NOTE);
+        } else if (status == Status.REUSED) {
+            text.append("\n\n").append(REUSED_NOTE);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return status + ": " + toSummaryText();
+    }
+}
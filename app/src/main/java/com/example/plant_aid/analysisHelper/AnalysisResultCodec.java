@@ -0,0 +1,220 @@
+package com.example.plant_aid.analysisHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes {@link AnalysisResult}s in a compact, versioned binary encoding.
+ *
+ * <p>Schema version 1, all numbers big-endian:</p>
+ * <pre>
+ * magic        3 bytes  "PAR"
+ * version      1 byte   1
+ * headerLength int      length of the header section
+ * header:
+ *   status       byte     {@link AnalysisResult.Status} code
+ *   confidence   float    NaN if unknown
+ *   analyzedAt   long
+ *   capturedAt   long
+ *   diagnosis    string
+ * detailLength int      length of the detail section
+ * detail:
+ *   recommendationCount int, followed by as many strings
+ *   hasDetails   byte, followed by the details string if 1
+ * </pre>
+ * <p>A string is its length in UTF-8 bytes as an int, followed by the bytes.</p>
+ *
+ * <p>Because each section is prefixed with its length, a later version may append fields to the end of a section
+ * and still be read by this one, which skips what it does not know. Only an incompatible change requires a new
+ * magic. {@link #readSummary(InputStream)} stops after the header, so the list screens read a few dozen bytes
+ * per entry however long the details are.</p>
+ */
+public final class AnalysisResultCodec {
+
+    public static final int VERSION = 1;
+
+    /** The extension of the result files written by {@link #writeFile}. */
+    public static final String FILE_EXTENSION = ".bin";
+
+    private static final byte[] MAGIC = {'P', 'A', 'R'};
+
+    /** Large enough for the header of a typical result, so a summary is read with a single small read. */
+    private static final int SUMMARY_BUFFER_SIZE = 256;
+
+    /** Guards against allocating for the length of a corrupt file. */
+    private static final int MAX_SECTION_LENGTH = 1 << 20;
+
+    private AnalysisResultCodec() {
+    }
+
+    /**
+     * Writes a result.
+     *
+     * @param result The result, which must not be a summary.
+     * @param out    The stream to write to, which is flushed but not closed.
+     */
+    public static void write(AnalysisResult result, OutputStream out) throws IOException {
+        if (result.isSummary()) {
+            throw new IllegalArgumentException("A summary lacks the detail section");
+        }
+        ByteArrayOutputStream section = new ByteArrayOutputStream(256);
+        DataOutputStream sectionOut = new DataOutputStream(section);
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+
+        sectionOut.writeByte(result.status.code);
+        sectionOut.writeFloat(result.confidence);
+        sectionOut.writeLong(result.analyzedAt);
+        sectionOut.writeLong(result.capturedAt);
+        writeString(sectionOut, result.diagnosis);
+        data.writeInt(section.size());
+        section.writeTo(data);
+
+        section.reset();
+        sectionOut.writeInt(result.recommendations.size());
+        for (String recommendation : result.recommendations) {
+            writeString(sectionOut, recommendation);
+        }
+        sectionOut.writeByte(result.details != null ? 1 : 0);
+        if (result.details != null) {
+            writeString(sectionOut, result.details);
+        }
+        data.writeInt(section.size());
+        section.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Reads a whole result.
+     *
+     * @param in The stream to read from, which is not closed.
+     * @return The result.
+     * @throws IOException If the stream is not a result of a known schema or ends early.
+     */
+    public static AnalysisResult read(InputStream in) throws IOException {
+        return read(new DataInputStream(in), false);
+    }
+
+    /**
+     * Reads the header of a result and nothing after it.
+     *
+     * @param in The stream to read from, which is not closed.
+     * @return The result without recommendations and details, see {@link AnalysisResult#isSummary()}.
+     * @throws IOException If the stream is not a result of a known schema or ends early.
+     */
+    public static AnalysisResult readSummary(InputStream in) throws IOException {
+        return read(new DataInputStream(in), true);
+    }
+
+    /**
+     * Writes a result to a file, replacing the file only once the result has been written completely.
+     */
+    public static void writeFile(AnalysisResult result, File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary))) {
+            write(result, out);
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Reads a whole result from a file.
+     */
+    public static AnalysisResult readFile(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads the header of a result from a file.
+     */
+    public static AnalysisResult readSummaryFile(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), SUMMARY_BUFFER_SIZE)) {
+            return readSummary(in);
+        }
+    }
+
+    private static AnalysisResult read(DataInputStream in, boolean summaryOnly) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not an analysis result");
+            }
+        }
+        // Every version so far only appended fields, which the section lengths let us skip
+        int version = in.readUnsignedByte();
+        if (version < 1) {
+            throw new IOException("Unknown analysis result version " + version);
+        }
+
+        int headerLength = in.readInt();
+        byte[] header = readSection(in, headerLength);
+        DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(header));
+        AnalysisResult.Status status = AnalysisResult.Status.ofCode(headerIn.readUnsignedByte());
+        float confidence = headerIn.readFloat();
+        long analyzedAt = headerIn.readLong();
+        long capturedAt = headerIn.readLong();
+        String diagnosis = readString(headerIn);
+        if (summaryOnly) {
+            return new AnalysisResult(status, diagnosis, confidence, null, null, analyzedAt, capturedAt, true);
+        }
+
+        int detailLength = in.readInt();
+        DataInputStream detailIn = new DataInputStream(new ByteArrayInputStream(readSection(in, detailLength)));
+        int recommendationCount = detailIn.readInt();
+        if (recommendationCount < 0 || recommendationCount > detailLength / 4) {
+            throw new IOException("Corrupt recommendation count " + recommendationCount);
+        }
+        List<String> recommendations = new ArrayList<>(recommendationCount);
+        for (int i = 0; i < recommendationCount; i++) {
+            recommendations.add(readString(detailIn));
+        }
+        String details = detailIn.readUnsignedByte() == 1 ? readString(detailIn) : null;
+        return new AnalysisResult(status, diagnosis, confidence, recommendations, details, analyzedAt, capturedAt);
+    }
+
+    private static byte[] readSection(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > MAX_SECTION_LENGTH) {
+            throw new IOException("Corrupt section length " + length);
+        }
+        byte[] section = new byte[length];
+        in.readFully(section);
+        return section;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("Corrupt string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.plant_aid.analysisHelper;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the answer of the analysis server into an {@link AnalysisResult}, once, as it is stored in the garden.
+ *
+ * <p>A JSON object is read with a streaming {@link JsonReader}, so no tree of the response is built. The field
+ * names the server may use are listed below; unknown fields are skipped, so the server can add more. Anything else
+ * is read as free text with {@link AnalysisResult#fromText}.</p>
+ * <pre>
+ * diagnosis | disease | condition | label       string
+ * confidence | probability | score              number, 0..1 or percent
+ * recommendations | treatment | advice          array of strings, or a string
+ * details | description | text                  string
+ * analyzedAt | timestamp                        number, milliseconds since the epoch
+ * </pre>
+ */
+public final class AnalysisResultParser {
+
+    private AnalysisResultParser() {
+    }
+
+    /**
+     * Parses an answer of the server.
+     *
+     * @param response   The body of the response.
+     * @param analyzedAt When the response was received, used unless the server states a time.
+     * @param capturedAt When the image was taken.
+     * @return The result with status {@link AnalysisResult.Status#FINAL}.
+     */
+    public static AnalysisResult parse(String response, long analyzedAt, long capturedAt) {
+        try {
+            return parse(new StringReader(response), analyzedAt, capturedAt);
+        } catch (IOException | RuntimeException e) {
+            // A body that merely looks like JSON is still worth showing
+            return AnalysisResult.fromText(response, AnalysisResult.Status.FINAL, analyzedAt, capturedAt);
+        }
+    }
+
+    /**
+     * Parses an answer of the server from a stream of characters.
+     *
+     * @see #parse(String, long, long)
+     * @throws IOException If the answer cannot be read or starts as JSON but is not valid JSON.
+     */
+    public static AnalysisResult parse(Reader response, long analyzedAt, long capturedAt) throws IOException {
+        BufferedReader reader = new BufferedReader(response);
+        reader.mark(1);
+        int first = reader.read();
+        while (first != -1 && Character.isWhitespace(first)) {
+            reader.mark(1);
+            first = reader.read();
+        }
+        if (first == -1) {
+            return AnalysisResult.fromText("", AnalysisResult.Status.FINAL, analyzedAt, capturedAt);
+        }
+        reader.reset();
+        if (first != '{') {
+            return AnalysisResult.fromText(readRemaining(reader), AnalysisResult.Status.FINAL, analyzedAt,
+                    capturedAt);
+        }
+        return parseObject(new JsonReader(reader), analyzedAt, capturedAt);
+    }
+
+    private static AnalysisResult parseObject(JsonReader json, long analyzedAt, long capturedAt) throws IOException {
+        String diagnosis = null;
+        float confidence = Float.NaN;
+        List<String> recommendations = new ArrayList<>();
+        String details = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "diagnosis":
+                case "disease":
+                case "condition":
+                case "label":
+                    diagnosis = json.nextString();
+                    break;
+                case "confidence":
+                case "probability":
+                case "score":
+                    double value = json.nextDouble();
+                    confidence = AnalysisResult.normalizeConfidence((float) (value > 1 ? value / 100 : value));
+                    break;
+                case "recommendations":
+                case "treatment":
+                case "advice":
+                    readStrings(json, recommendations);
+                    break;
+                case "details":
+                case "description":
+                case "text":
+                    details = json.nextString();
+                    break;
+                case "analyzedAt":
+                case "timestamp":
+                    analyzedAt = json.nextLong();
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        if (diagnosis == null && details != null) {
+            // Without a diagnosis field the text speaks for itself
+            AnalysisResult fromText = AnalysisResult.fromText(details, AnalysisResult.Status.FINAL, analyzedAt,
+                    capturedAt);
+            diagnosis = fromText.diagnosis;
+            details = fromText.details;
+            if (Float.isNaN(confidence)) {
+                confidence = fromText.confidence;
+            }
+            recommendations.addAll(fromText.recommendations);
+        }
+        return new AnalysisResult(AnalysisResult.Status.FINAL, diagnosis, confidence, recommendations, details,
+                analyzedAt, capturedAt);
+    }
+
+    private static void readStrings(JsonReader json, List<String> into) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_ARRAY) {
+            into.add(json.nextString());
+            return;
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.STRING) {
+                into.add(json.nextString());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endArray();
+    }
+
+    private static String readRemaining(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[512];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            text.append(chunk, 0, read);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.plant_aid.analysisHelper;
+
+import java.util.Locale;
+
+/**
+ * Running latency statistics of one analyzer: the number of results, their mean, minimum and maximum latency, and
+ * the number of analyses that ended without a result. Thread-safe.
+ */
+public final class LatencyStats {
+
+    private final String name;
+    private long count;
+    private long failures;
+    private long totalMillis;
+    private long minMillis = Long.MAX_VALUE;
+    private long maxMillis;
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the latency of an analysis that produced a result.
+     *
+     * @param millis The time from the start of the analysis to its result.
+     */
+    public synchronized void record(long millis) {
+        count++;
+        totalMillis += millis;
+        minMillis = Math.min(minMillis, millis);
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    /**
+     * Records an analysis that ended without a result.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * @return The mean latency in milliseconds, or {@code -1} if there has been no result yet.
+     */
+    public synchronized long getMeanMillis() {
+        return count == 0 ? -1 : totalMillis / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return String.format(Locale.US, "%s n=0 failed=%d", name, failures);
+        }
+        return String.format(Locale.US, "%s n=%d mean=%dms min=%dms max=%dms failed=%d",
+                name, count, totalMillis / count, minMillis, maxMillis, failures);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.plant_aid.analysisHelper;
+
+import java.util.Locale;
+
+/**
+ * A small on-device model that estimates the health of the leaves in an image from their colours.
+ *
+ * <p>Every pixel is classified by hue, saturation and brightness as healthy green tissue, yellowed tissue, brown
+ * tissue, a whitish coating or background. The shares of the four tissue classes are the model's features; a linear
+ * layer with a softmax turns them into a probability per {@link Condition}. The model is deliberately coarse, it
+ * answers in milliseconds on the CPU and without a network, while the backend provides the detailed analysis.</p>
+ *
+ * <p>It works on plain packed ARGB pixels so that it runs, and can be tested, without Android.</p>
+ */
+public final class LeafHealthModel {
+
+    /** Longer side, in pixels, the image is reduced to before it is classified. */
+    public static final int INPUT_SIZE = 128;
+
+    /** Share of tissue pixels below which no plant is taken to be in the image. */
+    static final double MIN_PLANT_SHARE = 0.15;
+
+    /**
+     * The conditions the model tells apart.
+     */
+    public enum Condition {
+        HEALTHY("Looks healthy"),
+        CHLOROSIS("Yellowing leaves, possibly a nutrient deficiency or overwatering"),
+        NECROSIS("Brown spots or dead tissue, possibly a fungal infection, rust or sunburn"),
+        POWDERY_MILDEW("Whitish coating, possibly powdery mildew"),
+        NO_PLANT("No plant recognised, please fill the frame with the leaves");
+
+        final String description;
+
+        Condition(String description) {
+            this.description = description;
+        }
+    }
+
+    /** Weights of the linear layer, one row per condition up to NO_PLANT: bias, green, yellow, brown, white. */
+    private static final double[][] WEIGHTS = {
+            {-1.0, 4.0, -6.0, -6.0, -6.0},
+            {-0.5, 0.0, 8.0, 0.0, 0.0},
+            {-0.5, 0.0, 0.0, 8.0, 0.0},
+            {-0.8, 0.0, 0.0, 0.0, 8.0},
+    };
+
+    /**
+     * The outcome of a classification.
+     */
+    public static final class Diagnosis {
+        public final Condition condition;
+        /** The probability of {@link #condition}, 0 to 1. */
+        public final double confidence;
+        public final double greenShare;
+        public final double yellowShare;
+        public final double brownShare;
+        public final double whiteShare;
+
+        Diagnosis(Condition condition, double confidence, double greenShare, double yellowShare, double brownShare,
+                  double whiteShare) {
+            this.condition = condition;
+            this.confidence = confidence;
+            this.greenShare = greenShare;
+            this.yellowShare = yellowShare;
+            this.brownShare = brownShare;
+            this.whiteShare = whiteShare;
+        }
+
+        /**
+         * @return The diagnosis as text for the user.
+         */
+        public String describe() {
+            if (condition == Condition.NO_PLANT) {
+                return "On-device estimate: " + condition.description + ".";
+            }
+            return String.format(Locale.US,
+                    "On-device estimate: %s (%.0f%% confidence).%nGreen tissue %.0f%%, yellowed %.0f%%, brown %.0f%%, whitish coating %.0f%%.",
+                    condition.description, confidence * 100, greenShare * 100, yellowShare * 100, brownShare * 100,
+                    whiteShare * 100);
+        }
+    }
+
+    private LeafHealthModel() {
+    }
+
+    /**
+     * Classifies an image.
+     *
+     * @param argb   The pixels in row-major order, as packed ARGB.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The diagnosis.
+     */
+    public static Diagnosis classify(int[] argb, int width, int height) {
+        int count = width * height;
+        int green = 0;
+        int yellow = 0;
+        int brown = 0;
+        int white = 0;
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int max = Math.max(r, Math.max(g, b));
+            int min = Math.min(r, Math.min(g, b));
+            if (max < 40) {
+                // Too dark to tell
+                continue;
+            }
+            int chroma = max - min;
+            if (chroma * 100 < 18 * max) {
+                if (max > 190) {
+                    white++;
+                }
+                continue;
+            }
+            float hue = hueOf(r, g, b, max, chroma);
+            if (hue >= 75 && hue < 170) {
+                green++;
+            } else if (hue >= 45 && hue < 75) {
+                yellow++;
+            } else if ((hue >= 10 && hue < 45) || ((hue < 10 || hue >= 345) && max < 160)) {
+                brown++;
+            }
+        }
+
+        int tissue = green + yellow + brown;
+        if (count == 0 || (double) tissue / count < MIN_PLANT_SHARE) {
+            return new Diagnosis(Condition.NO_PLANT, 1, 0, 0, 0, 0);
+        }
+        // A coating only counts where it covers leaves, so its share is measured against the tissue as well
+        double total = tissue + white;
+        double[] features = {1, green / total, yellow / total, brown / total, white / total};
+
+        double[] scores = new double[WEIGHTS.length];
+        double maxScore = Double.NEGATIVE_INFINITY;
+        int best = 0;
+        for (int c = 0; c < WEIGHTS.length; c++) {
+            for (int f = 0; f < features.length; f++) {
+                scores[c] += WEIGHTS[c][f] * features[f];
+            }
+            if (scores[c] > maxScore) {
+                maxScore = scores[c];
+                best = c;
+            }
+        }
+        double sum = 0;
+        for (int c = 0; c < scores.length; c++) {
+            scores[c] = Math.exp(scores[c] - maxScore);
+            sum += scores[c];
+        }
+        return new Diagnosis(Condition.values()[best], scores[best] / sum,
+                features[1], features[2], features[3], features[4]);
+    }
+
+    /**
+     * @return The hue in degrees, 0 to 360.
+     */
+    private static float hueOf(int r, int g, int b, int max, int chroma) {
+        float hue;
+        if (max == r) {
+            hue = 60f * (g - b) / chroma;
+        } else if (max == g) {
+            hue = 60f * (b - r) / chroma + 120f;
+        } else {
+            hue = 60f * (r - g) / chroma + 240f;
+        }
+        return hue < 0 ? hue + 360f : hue;
+    }
+}
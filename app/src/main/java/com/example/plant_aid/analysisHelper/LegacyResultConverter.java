@@ -0,0 +1,77 @@
+package com.example.plant_aid.analysisHelper;
+
+import com.example.plant_aid.networkHelper.AnalysisUploader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the {@code analysis_*.txt} files of earlier versions, which held the raw text of a result, into
+ * {@link AnalysisResult}s.
+ *
+ * <p>The texts that those versions stored for pending, failed and estimated analyses are recognised and mapped to
+ * the corresponding {@link AnalysisResult.Status}; any other text is a final result of the server.</p>
+ */
+public final class LegacyResultConverter {
+
+    /** The extension of the result files of earlier versions. */
+    public static final String LEGACY_EXTENSION = ".txt";
+
+    private LegacyResultConverter() {
+    }
+
+    /**
+     * @param resultFilePath The path of a result file.
+     * @return Whether the file is a text file of an earlier version.
+     */
+    public static boolean isLegacy(String resultFilePath) {
+        return resultFilePath.endsWith(LEGACY_EXTENSION);
+    }
+
+    /**
+     * Converts the text of a result.
+     *
+     * @param text       The text as it was stored.
+     * @param analyzedAt When the text was stored.
+     * @param capturedAt When the image was taken.
+     * @return The result.
+     */
+    public static AnalysisResult convert(String text, long analyzedAt, long capturedAt) {
+        String trimmed = text.trim();
+        if (trimmed.equals(AnalysisResult.PENDING_TEXT)) {
+            return AnalysisResult.pending(capturedAt);
+        }
+        if (trimmed.equals(AnalysisUploader.FAILED_RESULT)) {
+            return AnalysisResult.failed(trimmed, analyzedAt, capturedAt);
+        }
+        if (trimmed.endsWith(AnalysisResult.PROVISIONAL_NOTE)) {
+            String estimate = trimmed.substring(0, trimmed.length() - AnalysisResult.PROVISIONAL_NOTE.length());
+            return AnalysisResult.fromText(estimate, AnalysisResult.Status.ESTIMATE, analyzedAt, capturedAt);
+        }
+        return AnalysisResultParser.parse(trimmed, analyzedAt, capturedAt);
+    }
+
+    /**
+     * Converts a result text file. The file is left in place.
+     *
+     * @param textFile   The text file.
+     * @param capturedAt When the image was taken.
+     * @return The result, analysed at the time the file was last written.
+     * @throws IOException If the file cannot be read.
+     */
+    public static AnalysisResult convertFile(File textFile, long capturedAt) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (Reader reader = new InputStreamReader(new FileInputStream(textFile), StandardCharsets.UTF_8)) {
+            char[] chunk = new char[512];
+            int read;
+            while ((read = reader.read(chunk)) != -1) {
+                text.append(chunk, 0, read);
+            }
+        }
+        return convert(text.toString(), textFile.lastModified(), capturedAt);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.plant_aid.analysisHelper;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.example.plant_aid.networkHelper.UploadPayload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Analyses images on the device's CPU with the {@link LeafHealthModel}, without any network.
+ *
+ * <p>The upload rendition is decoded subsampled to about {@link LeafHealthModel#INPUT_SIZE} pixels and classified on
+ * the analyzer's own background thread, which is shared by the whole process.</p>
+ */
+public final class LocalAnalyzer implements PlantAnalyzer {
+
+    private static final String TAG = "LocalAnalyzer";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "local-analyzer"));
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public void analyze(String imagePath, UploadPayload payload, Callback callback) {
+        EXECUTOR.execute(() -> {
+            Bitmap input;
+            try {
+                input = decodeInput(payload);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read the rendition of " + imagePath, e);
+                input = null;
+            }
+            if (input == null) {
+                callback.onFailure("The image could not be analysed on the device.");
+                return;
+            }
+
+            int width = input.getWidth();
+            int height = input.getHeight();
+            int[] pixels = new int[width * height];
+            input.getPixels(pixels, 0, width, 0, 0, width, height);
+            input.recycle();
+            callback.onResult(LeafHealthModel.classify(pixels, width, height).describe());
+        });
+    }
+
+    /**
+     * Decodes the rendition at the smallest power-of-two subsampling that keeps both sides at least
+     * {@link LeafHealthModel#INPUT_SIZE} pixels.
+     */
+    private static Bitmap decodeInput(UploadPayload payload) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = payload.openStream()) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= LeafHealthModel.INPUT_SIZE
+                && options.outHeight / (sampleSize * 2) >= LeafHealthModel.INPUT_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        try (InputStream in = payload.openStream()) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.plant_aid.analysisHelper;
+
+import com.example.plant_aid.networkHelper.UploadPayload;
+
+/**
+ * Something that can analyse a captured plant image, such as the backend or a model running on the device.
+ *
+ * <p>Analyzers are asynchronous: {@link #analyze(String, UploadPayload, Callback)} returns right away and reports
+ * the outcome, exactly once, to its callback on a thread of the analyzer's choosing. Which analyzers run for a capture
+ * is decided by the {@link AnalysisPolicy}, and the {@link AnalysisCoordinator} runs them.</p>
+ */
+public interface PlantAnalyzer {
+
+    /**
+     * Receives the outcome of one analysis.
+     */
+    interface Callback {
+        /**
+         * @param result The analysis result as text to be shown to the user.
+         */
+        void onResult(String result);
+
+        /**
+         * @param reason A short, user-readable description of why no result is available now.
+         */
+        void onFailure(String reason);
+    }
+
+    /**
+     * @return A short name of the analyzer for logs and metrics.
+     */
+    String getName();
+
+    /**
+     * Starts analysing an image.
+     *
+     * @param imagePath The absolute path of the garden image the result belongs to.
+     * @param payload   The upload rendition of the image.
+     * @param callback  Receives the outcome.
+     */
+    void analyze(String imagePath, UploadPayload payload, Callback callback);
+}
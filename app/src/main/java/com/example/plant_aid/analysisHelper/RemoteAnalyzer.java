@@ -0,0 +1,58 @@
+package com.example.plant_aid.analysisHelper;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import com.example.plant_aid.networkHelper.AnalysisUploader;
+import com.example.plant_aid.networkHelper.UploadPayload;
+
+/**
+ * Analyses images on the backend, through the {@link AnalysisUploader} and its persistent outbox.
+ *
+ * <p>The result is stored in the garden by the uploader. A failed upload is reported as a failure to the callback,
+ * but stays in the outbox and is retried in the background, so its result may still reach the garden later.</p>
+ */
+public final class RemoteAnalyzer implements PlantAnalyzer {
+
+    private final AnalysisUploader analysisUploader;
+
+    public RemoteAnalyzer(AnalysisUploader analysisUploader) {
+        this.analysisUploader = analysisUploader;
+    }
+
+    @Override
+    public String getName() {
+        return "remote";
+    }
+
+    @Override
+    public void analyze(String imagePath, UploadPayload payload, Callback callback) {
+        analysisUploader.submit(imagePath, payload, new AnalysisUploader.ResultListener() {
+            @Override
+            public void onAnalysisResult(String imagePath, String result) {
+                callback.onResult(result);
+            }
+
+            @Override
+            public void onAnalysisDeferred(String imagePath, String reason) {
+                callback.onFailure(reason);
+            }
+        });
+    }
+
+    /**
+     * @param context Any context of the application.
+     * @return Whether the device currently has a network with internet access.
+     */
+    public static boolean isNetworkAvailable(Context context) {
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) {
+            return false;
+        }
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.plant_aid.cameraHelper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Picks the best frame of a burst, scoring the frames in parallel as they arrive.
+ *
+ * <p>A handheld shot of a small leaf is often slightly out of focus, and users used to compensate by shooting
+ * again, each shot another upload. In a burst the camera takes several frames in quick succession instead; each
+ * frame is scored on the scoring executor as soon as it has been captured, and once every frame is accounted for,
+ * only the one with the highest score is handed on. The selector keeps no more than the best frame so far, so the
+ * others become garbage as soon as they have been scored and are never written anywhere.</p>
+ *
+ * @param <F> The type of the frames.
+ */
+public final class BurstSelector<F> {
+
+    /**
+     * Scores a frame, higher is better.
+     */
+    public interface Scorer<F> {
+        /**
+         * @param frame The frame to score.
+         * @return The score of the frame, or {@link Double#NaN} if it cannot be used at all.
+         */
+        double score(F frame);
+    }
+
+    /**
+     * Receives the outcome of a burst, on the thread that accounted for its last frame.
+     */
+    public interface Listener<F> {
+        /**
+         * Called with the frame of the highest score.
+         *
+         * @param best  The winning frame.
+         * @param score Its score.
+         */
+        void onSelected(F best, double score);
+
+        /**
+         * Called if no frame of the burst could be captured or scored.
+         */
+        void onNoFrame();
+    }
+
+    private final int frameCount;
+    private final Executor scoringExecutor;
+    private final Scorer<F> scorer;
+    private final Listener<F> listener;
+
+    private int accountedFrames;
+    private F best;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a selector for one burst.
+     *
+     * @param frameCount      The number of frames the burst consists of.
+     * @param scoringExecutor Runs the scoring, one task per frame.
+     * @param scorer          Scores the frames.
+     * @param listener        Receives the winner.
+     */
+    public BurstSelector(int frameCount, Executor scoringExecutor, Scorer<F> scorer, Listener<F> listener) {
+        this.frameCount = frameCount;
+        this.scoringExecutor = scoringExecutor;
+        this.scorer = scorer;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a captured frame and schedules its scoring.
+     *
+     * @param frame The frame.
+     */
+    public void add(F frame) {
+        scoringExecutor.execute(() -> {
+            double score;
+            try {
+                score = scorer.score(frame);
+            } catch (RuntimeException e) {
+                score = Double.NaN;
+            }
+            account(Double.isNaN(score) ? null : frame, score);
+        });
+    }
+
+    /**
+     * Accounts for a frame that could not be captured.
+     */
+    public void skip() {
+        account(null, Double.NaN);
+    }
+
+    private void account(F frame, double score) {
+        F winner;
+        double winningScore;
+        synchronized (this) {
+            if (frame != null && score > bestScore) {
+                best = frame;
+                bestScore = score;
+            }
+            if (++accountedFrames < frameCount) {
+                return;
+            }
+            winner = best;
+            winningScore = bestScore;
+            best = null;
+        }
+        if (winner != null) {
+            listener.onSelected(winner, winningScore);
+        } else {
+            listener.onNoFrame();
+        }
+    }
+}
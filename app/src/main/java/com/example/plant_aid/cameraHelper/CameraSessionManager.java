@@ -0,0 +1,294 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Keeps one camera session per process and hands it from one visit of the camera screen to the next.
+ *
+ * <p>The bottom navigation finishes the current activity on every tab switch, so each visit of the camera
+ * screen used to initialise CameraX, open the camera and bind new use cases from scratch. The manager instead:</p>
+ * <ul>
+ *     <li>initialises the {@link ProcessCameraProvider} once per process, started by {@link #prewarm(Application)} when the
+ *     application launches;</li>
+ *     <li>binds the {@link Preview} and {@link ImageCapture} use cases to its own lifecycle rather than to an
+ *     activity, so they survive the activity and are reused on the next visit with only the preview surface
+ *     swapped;</li>
+ *     <li>keeps the camera open for a grace period after the camera screen is left, see
+ *     {@link #release(long)}, so that returning to it shortly afterwards shows the preview almost immediately.
+ *     When the whole application goes to the background, the camera is closed right away.</li>
+ * </ul>
+ *
+ * <p>The time from a tap on the camera button to the first preview frame is measured and logged under the
+ * {@code CameraSession} tag, together with whether the camera was still open.</p>
+ *
+ * <p>All methods must be called on the main thread.</p>
+ */
+public final class CameraSessionManager {
+
+    private static final String TAG = "CameraSession";
+
+    private static volatile CameraSessionManager instance;
+
+    /**
+     * The lifecycle the use cases are bound to: started while the session is in use or kept warm, created otherwise.
+     */
+    private static final class SessionLifecycleOwner implements LifecycleOwner {
+        private final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        SessionLifecycleOwner() {
+            registry.setCurrentState(Lifecycle.State.CREATED);
+        }
+
+        void setState(Lifecycle.State state) {
+            registry.setCurrentState(state);
+        }
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SessionLifecycleOwner lifecycleOwner = new SessionLifecycleOwner();
+    private final Runnable closeSession = this::close;
+
+    private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
+    private Preview preview;
+    private ImageCapture imageCapture;
+    private CaptureResolutionPolicy.Mode boundMode;
+    private Preview.SurfaceProvider currentSurfaceProvider;
+
+    private long entryRequestedAt = -1;
+    private boolean enteredWarm;
+    private long lastEntryToPreviewMillis = -1;
+    private boolean trackingForeground;
+    private int startedActivities;
+
+    private CameraSessionManager(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the process-wide manager, creating it on first use.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     * @return The shared manager.
+     */
+    public static CameraSessionManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CameraSessionManager.class) {
+                if (instance == null) {
+                    instance = new CameraSessionManager(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts initialising CameraX in the background, unless that has already been done, and starts following whether
+     * the application is in the foreground. Intended to be called once when the application launches.
+     *
+     * @param application The application, whose activities are followed.
+     */
+    public void prewarm(Application application) {
+        providerFuture();
+        if (!trackingForeground) {
+            trackingForeground = true;
+            application.registerActivityLifecycleCallbacks(new ForegroundTracker());
+        }
+    }
+
+    private ListenableFuture<ProcessCameraProvider> providerFuture() {
+        if (cameraProviderFuture == null) {
+            cameraProviderFuture = ProcessCameraProvider.getInstance(context);
+        }
+        return cameraProviderFuture;
+    }
+
+    /**
+     * Records that the user asked for the camera screen, the start of the entry-to-preview measurement.
+     */
+    public void markEntryRequested() {
+        entryRequestedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Opens the session for a visit of the camera screen. The use cases of the previous visit are reused unless the
+     * capture mode has changed since; otherwise only the preview surface is replaced.
+     *
+     * @param policy          Chooses the resolutions of new use cases.
+     * @param surfaceProvider Provides the surface of the current camera screen.
+     * @param onReady         Receives the bound {@link ImageCapture} once the session is ready.
+     */
+    public void open(CaptureResolutionPolicy policy, Preview.SurfaceProvider surfaceProvider, Consumer<ImageCapture> onReady) {
+        mainHandler.removeCallbacks(closeSession);
+        enteredWarm = lifecycleOwner.getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED) && preview != null;
+        lifecycleOwner.setState(Lifecycle.State.RESUMED);
+        currentSurfaceProvider = surfaceProvider;
+
+        ListenableFuture<ProcessCameraProvider> future = providerFuture();
+        future.addListener(() -> {
+            ProcessCameraProvider cameraProvider;
+            try {
+                cameraProvider = future.get();
+            } catch (Exception e) {
+                Log.e(TAG, "Could not initialise the camera", e);
+                return;
+            }
+            if (currentSurfaceProvider != surfaceProvider) {
+                // The camera screen was left before CameraX was ready
+                return;
+            }
+            if (preview == null || boundMode != policy.getMode()) {
+                bind(cameraProvider, policy);
+            }
+            if (preview == null) {
+                return;
+            }
+            preview.setSurfaceProvider(surfaceProvider);
+            onReady.accept(imageCapture);
+        }, ContextCompat.getMainExecutor(context));
+    }
+
+    private void bind(ProcessCameraProvider cameraProvider, CaptureResolutionPolicy policy) {
+        boolean fastAnalysis = policy.getMode() == CaptureResolutionPolicy.Mode.FAST_ANALYSIS;
+        Preview newPreview = new Preview.Builder().setResolutionSelector(policy.previewSelector()).build();
+        ImageCapture newImageCapture = new ImageCapture.Builder()
+                .setResolutionSelector(policy.captureSelector())
+                .setCaptureMode(fastAnalysis ? ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY : ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY)
+                .build();
+        CameraSelector cameraSelector = new CameraSelector.Builder()
+                .requireLensFacing(CameraSelector.LENS_FACING_BACK)
+                .build();
+        try {
+            cameraProvider.unbindAll();
+            cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, newPreview, newImageCapture);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not bind the camera use cases", e);
+            preview = null;
+            imageCapture = null;
+            return;
+        }
+        preview = newPreview;
+        imageCapture = newImageCapture;
+        boundMode = policy.getMode();
+    }
+
+    /**
+     * Called for every preview frame that reaches the camera screen. The first one after
+     * {@link #markEntryRequested()} completes the entry-to-preview measurement.
+     */
+    public void onPreviewFrame() {
+        if (entryRequestedAt < 0) {
+            return;
+        }
+        lastEntryToPreviewMillis = SystemClock.elapsedRealtime() - entryRequestedAt;
+        entryRequestedAt = -1;
+        Log.d(TAG, String.format(Locale.US, "entryToPreview=%dms session=%s",
+                lastEntryToPreviewMillis, enteredWarm ? "warm" : "cold"));
+    }
+
+    /**
+     * @return The time from the last tap on the camera button to the first preview frame, or {@code -1} if not measured yet.
+     */
+    public long getLastEntryToPreviewMillis() {
+        return lastEntryToPreviewMillis;
+    }
+
+    /**
+     * Releases the session when the camera screen is no longer visible. The preview surface is detached right away,
+     * the camera itself is kept open for {@code keepWarmMillis}.
+     *
+     * @param keepWarmMillis The grace period in milliseconds, 0 to close the camera immediately.
+     */
+    public void release(long keepWarmMillis) {
+        currentSurfaceProvider = null;
+        if (preview != null) {
+            preview.setSurfaceProvider(null);
+        }
+        lifecycleOwner.setState(Lifecycle.State.STARTED);
+        mainHandler.removeCallbacks(closeSession);
+        // Only keep warm for navigation within the application, never in the background
+        boolean inBackground = trackingForeground && startedActivities == 0;
+        if (keepWarmMillis > 0 && !inBackground) {
+            mainHandler.postDelayed(closeSession, keepWarmMillis);
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * Closes the camera. The use cases stay bound and are reopened by the next {@link #open}.
+     */
+    private void close() {
+        mainHandler.removeCallbacks(closeSession);
+        lifecycleOwner.setState(Lifecycle.State.CREATED);
+    }
+
+    /**
+     * Closes the camera as soon as no activity of the application is started any more, i.e. the application has gone
+     * to the background. Navigating between screens never drops the count to zero, as the next activity starts before
+     * the previous one stops.
+     */
+    private final class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            startedActivities++;
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            startedActivities--;
+            if (startedActivities == 0) {
+                close();
+            }
+        }
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+        }
+    }
+}
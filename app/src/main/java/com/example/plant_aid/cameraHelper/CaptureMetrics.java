@@ -0,0 +1,75 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Lightweight latency and memory probe for a single capture.
+ *
+ * <p>An instance is created when the shutter is pressed and carried through the capture pipeline.
+ * Each stage can sample the current heap usage; the highest sample is kept as the peak. Because
+ * bitmap pixel data lives in the native heap on Android 8.0 and later, both the Java heap and the
+ * native heap are included in a sample.</p>
+ *
+ * <p>The figures are written to logcat under the {@code CaptureMetrics} tag so that before/after
+ * comparisons can be made on a real device with {@code adb logcat -s CaptureMetrics}.</p>
+ */
+public class CaptureMetrics {
+
+    private static final String TAG = "CaptureMetrics";
+
+    private final long startNanos;
+    private final long baselineHeapBytes;
+    private long peakHeapBytes;
+
+    /**
+     * Starts a new measurement. The current heap usage is recorded as the baseline.
+     */
+    public CaptureMetrics() {
+        startNanos = SystemClock.elapsedRealtimeNanos();
+        baselineHeapBytes = currentHeapBytes();
+        peakHeapBytes = baselineHeapBytes;
+    }
+
+    /**
+     * Samples the current heap usage and keeps it if it is the highest seen so far.
+     */
+    public synchronized void sampleHeap() {
+        long current = currentHeapBytes();
+        if (current > peakHeapBytes) {
+            peakHeapBytes = current;
+        }
+    }
+
+    /**
+     * @return The number of milliseconds elapsed since this measurement was started.
+     */
+    public long elapsedMillis() {
+        return (SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000L;
+    }
+
+    /**
+     * @return The highest heap usage above the baseline observed during this capture, in bytes.
+     */
+    public synchronized long peakHeapDeltaBytes() {
+        return peakHeapBytes - baselineHeapBytes;
+    }
+
+    /**
+     * Logs the elapsed time and peak heap growth for the given stage.
+     *
+     * @param stage A short name of the pipeline stage that has just completed, e.g. "upload-ready".
+     */
+    public void log(String stage) {
+        Log.d(TAG, String.format(Locale.US, "%s after %d ms, peak heap +%.1f MB",
+                stage, elapsedMillis(), peakHeapDeltaBytes() / (1024f * 1024f)));
+    }
+
+    private static long currentHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) + Debug.getNativeHeapAllocatedSize();
+    }
+}
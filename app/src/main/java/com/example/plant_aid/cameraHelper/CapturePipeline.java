@@ -0,0 +1,288 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The path every capture takes after the shutter, split into three bounded stages.
+ *
+ * <ul>
+ *     <li>The <b>capture</b> stage runs the camera callbacks on a single thread. It only copies the frame out of
+ *     the camera buffer so the camera can take the next picture.</li>
+ *     <li>The <b>processing</b> stage decodes, transforms and encodes the upload rendition. It has one thread per
+ *     core, capped at {@link #MAX_PROCESSING_THREADS} because every running job holds a decoded bitmap.</li>
+ *     <li>The <b>network</b> stage does the bookkeeping of an upload and hands it to the HTTP client, keeping
+ *     database and file I/O off the processing threads.</li>
+ * </ul>
+ *
+ * <p>Backpressure is applied at the shutter: a capture is only started if {@link #tryAdmit()} hands out a
+ * {@link Ticket}, and at most {@link #getMaxInFlight()} tickets are out at a time. A ticket is returned when its
+ * capture has left the network stage. Since every stage queue can hold all admitted captures, an admitted capture
+ * is never dropped between stages; instead, a full pipeline refuses new captures and reports
+ * {@link Listener#onSaturationChanged(boolean) saturation}, so the shutter can be disabled until a capture
+ * finishes. This bounds both the queued work and the number of full-resolution frames held in memory.</p>
+ *
+ * <p>When the owner goes away, {@link #close(Runnable)} refuses further captures but lets the admitted ones pass
+ * through every stage, so none is lost between the shutter and the outbox; the stages shut down once the last one
+ * has left. Only an owner that gives up the admitted work calls {@link #cancel()}, which discards queued work and
+ * interrupts running work. Uploads already recorded in the outbox are unaffected by either.</p>
+ */
+public final class CapturePipeline {
+
+    private static final String TAG = "CapturePipeline";
+
+    /** Upper bound of processing threads, each of which may hold a decoded frame. */
+    static final int MAX_PROCESSING_THREADS = 4;
+
+    /**
+     * Receives changes of the pipeline's state. Called on the thread that caused the change.
+     */
+    public interface Listener {
+        /**
+         * Called when the pipeline becomes full or has room again.
+         *
+         * @param saturated {@code true} if no further capture can be admitted.
+         */
+        void onSaturationChanged(boolean saturated);
+    }
+
+    /**
+     * The admission of one capture to the pipeline. The capture owns its ticket until it has passed through the
+     * stages; the ticket is closed, and its slot returned, by the last stage it ran on.
+     */
+    public final class Ticket {
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile PipelineStage currentStage;
+
+        private Ticket() {
+        }
+
+        /**
+         * Runs the processing of this capture on the processing stage. The ticket is closed afterwards, unless the
+         * task hands the capture on with {@link #upload(Runnable)}.
+         *
+         * @param task The processing work.
+         */
+        public void process(Runnable task) {
+            runOn(processingStage, task);
+        }
+
+        /**
+         * Runs the upload bookkeeping of this capture on the network stage. The ticket is closed afterwards.
+         *
+         * @param task The upload work.
+         */
+        public void upload(Runnable task) {
+            runOn(networkStage, task);
+        }
+
+        /**
+         * Runs side work of this capture on the processing stage, such as scoring one frame of a burst. Unlike
+         * {@link #process(Runnable)}, the ticket stays open afterwards. If the stage is full, the task runs on the
+         * calling thread instead, so that it is never lost.
+         *
+         * @param task The side work.
+         */
+        public void fork(Runnable task) {
+            if (!processingStage.offer(task)) {
+                task.run();
+            }
+        }
+
+        /**
+         * Returns the ticket's slot to the pipeline. Only the first call has an effect, so it is safe to call
+         * when a capture is abandoned at any point.
+         */
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private void runOn(PipelineStage stage, Runnable task) {
+            currentStage = stage;
+            boolean queued = stage.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    // Close unless the task moved the capture on to a later stage
+                    if (currentStage == stage) {
+                        close();
+                    }
+                }
+            });
+            if (!queued) {
+                Log.w(TAG, "Dropped a capture, the " + stage.getName() + " stage is full or cancelled");
+                close();
+            }
+        }
+    }
+
+    private final PipelineStage captureStage;
+    private final PipelineStage processingStage;
+    private final PipelineStage networkStage;
+    private final int maxInFlight;
+    private final Listener listener;
+
+    private int inFlight;
+    private long admittedCount;
+    private long refusedCount;
+    private boolean cancelled;
+    private boolean closing;
+    /** Runs once the pipeline has drained after {@link #close(Runnable)}, {@code null} until then. */
+    private Runnable onDrained;
+
+    /**
+     * Creates and starts a pipeline sized to the device's cores.
+     *
+     * @param listener Receives saturation changes.
+     */
+    public CapturePipeline(Listener listener) {
+        this(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PROCESSING_THREADS)), listener);
+    }
+
+    CapturePipeline(int processingThreads, Listener listener) {
+        this.listener = listener;
+        // Every processing thread busy and as many captures again waiting for them
+        this.maxInFlight = 2 * processingThreads;
+        this.captureStage = new PipelineStage("capture", 1, maxInFlight);
+        this.processingStage = new PipelineStage("processing", processingThreads, maxInFlight);
+        this.networkStage = new PipelineStage("network", 1, maxInFlight);
+    }
+
+    /**
+     * Admits a new capture if the pipeline has room for it.
+     *
+     * @return The ticket of the capture, or {@code null} if the pipeline is full, closed or cancelled.
+     */
+    public Ticket tryAdmit() {
+        boolean saturated;
+        synchronized (this) {
+            if (cancelled || closing || inFlight >= maxInFlight) {
+                refusedCount++;
+                return null;
+            }
+            inFlight++;
+            admittedCount++;
+            saturated = inFlight == maxInFlight;
+        }
+        if (saturated) {
+            listener.onSaturationChanged(true);
+        }
+        return new Ticket();
+    }
+
+    private void release() {
+        boolean unsaturated;
+        boolean drained;
+        synchronized (this) {
+            unsaturated = inFlight == maxInFlight && !closing;
+            inFlight--;
+            drained = closing && inFlight == 0;
+        }
+        logStats();
+        if (unsaturated) {
+            listener.onSaturationChanged(false);
+        }
+        if (drained) {
+            finishDrain();
+        }
+    }
+
+    /**
+     * @return The executor the camera delivers captures on.
+     */
+    public Executor getCaptureExecutor() {
+        return command -> {
+            if (!captureStage.offer(command)) {
+                Log.w(TAG, "Dropped a camera callback, the capture stage is full or cancelled");
+            }
+        };
+    }
+
+    /**
+     * Refuses further captures and lets the admitted ones finish: their queued and running work still passes through
+     * every stage. Once the last of them has left the pipeline, the stages are shut down and {@code onDrained} runs,
+     * on the thread that finished that capture, or right away if no capture is in flight.
+     *
+     * @param onDrained Runs once the pipeline is empty, for example to release resources the captures still use.
+     */
+    public void close(Runnable onDrained) {
+        boolean drained;
+        synchronized (this) {
+            if (closing || cancelled) {
+                return;
+            }
+            closing = true;
+            this.onDrained = onDrained;
+            drained = inFlight == 0;
+        }
+        if (drained) {
+            finishDrain();
+        }
+    }
+
+    private void finishDrain() {
+        captureStage.shutdown();
+        processingStage.shutdown();
+        networkStage.shutdown();
+        logStats();
+        onDrained.run();
+    }
+
+    /**
+     * Gives up the admitted captures: stops all stages, discarding queued work and interrupting running work, and
+     * refuses further captures. Captures that have not reached the outbox yet are lost, so only call this when the
+     * work is really abandoned; an owner that merely goes away calls {@link #close(Runnable)}.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        captureStage.cancel();
+        processingStage.cancel();
+        networkStage.cancel();
+        logStats();
+    }
+
+    /**
+     * @return The number of captures that may be in the pipeline at the same time.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return The number of captures currently in the pipeline.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return Whether the pipeline currently refuses new captures.
+     */
+    public synchronized boolean isSaturated() {
+        return cancelled || closing || inFlight >= maxInFlight;
+    }
+
+    /**
+     * Logs the admission counters and the queue depth of every stage.
+     */
+    public void logStats() {
+        StringBuilder stats;
+        synchronized (this) {
+            stats = new StringBuilder(String.format(Locale.US, "inFlight=%d/%d admitted=%d refused=%d",
+                    inFlight, maxInFlight, admittedCount, refusedCount));
+        }
+        for (PipelineStage stage : new PipelineStage[]{captureStage, processingStage, networkStage}) {
+            stats.append(String.format(Locale.US, " | %s queued=%d maxQueued=%d active=%d done=%d rejected=%d",
+                    stage.getName(), stage.getQueueDepth(), stage.getMaxQueueDepth(), stage.getActiveCount(),
+                    stage.getCompletedCount(), stage.getRejectedCount()));
+        }
+        Log.d(TAG, stats.toString());
+    }
+}
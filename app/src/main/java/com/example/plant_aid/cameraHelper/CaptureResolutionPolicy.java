@@ -0,0 +1,223 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.util.Size;
+
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the capture and preview resolutions from what the upload and the screen actually need.
+ *
+ * <p>Without guidance, CameraX captures at the full sensor resolution, 12 to 50 megapixels, only for the
+ * preprocessor to shrink every frame to at most {@link ImagePreprocessor#MAX_UPLOAD_WIDTH} x
+ * {@link ImagePreprocessor#MAX_UPLOAD_HEIGHT}. The policy instead ranks the sizes a camera supports:</p>
+ * <ul>
+ *     <li>In {@link Mode#FAST_ANALYSIS} the capture size is the smallest one with the aspect ratio of the upload
+ *     rendition that still covers it, so the camera produces, and the preprocessor decodes, a fraction of the
+ *     pixels.</li>
+ *     <li>In {@link Mode#KEEP_ORIGINALS} the capture size is the largest one with that aspect ratio, because the
+ *     original is stored for the user.</li>
+ *     <li>The preview size is the smallest one with the preview's aspect ratio that covers the display.</li>
+ * </ul>
+ * <p>If no size covers a target, the largest size is used. If no size has the wanted aspect ratio, all sizes are
+ * considered. Sizes are compared in landscape orientation, the way camera sensors report them.</p>
+ *
+ * <p>The ranking works on plain {@link Resolution}s so that it can be tested against synthetic capability tables;
+ * {@link #captureSelector()} and {@link #previewSelector()} adapt it to CameraX.</p>
+ */
+public final class CaptureResolutionPolicy {
+
+    /** Relative difference at which two aspect ratios still count as equal. */
+    private static final float ASPECT_RATIO_TOLERANCE = 0.02f;
+
+    /**
+     * What the captured frames are used for.
+     */
+    public enum Mode {
+        /** Only the upload rendition is derived from the frame, capture close to its size. */
+        FAST_ANALYSIS,
+        /** The frame is also stored as the original, capture at full resolution. */
+        KEEP_ORIGINALS
+    }
+
+    /**
+     * A width and height in pixels.
+     */
+    public static final class Resolution {
+        public final int width;
+        public final int height;
+
+        public Resolution(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * @return This resolution turned to landscape, i.e. with the longer side as the width.
+         */
+        Resolution landscape() {
+            return width >= height ? this : new Resolution(height, width);
+        }
+
+        long area() {
+            return (long) width * height;
+        }
+
+        boolean covers(Resolution target) {
+            Resolution self = landscape();
+            Resolution other = target.landscape();
+            return self.width >= other.width && self.height >= other.height;
+        }
+
+        boolean hasAspectRatioOf(Resolution other) {
+            Resolution self = landscape();
+            Resolution that = other.landscape();
+            float ratio = (float) self.width / self.height;
+            float otherRatio = (float) that.width / that.height;
+            return Math.abs(ratio - otherRatio) <= ASPECT_RATIO_TOLERANCE * otherRatio;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Resolution)) {
+                return false;
+            }
+            Resolution that = (Resolution) o;
+            return width == that.width && height == that.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * width + height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height;
+        }
+    }
+
+    private final Mode mode;
+    private final Resolution uploadTarget;
+    private final Resolution displayTarget;
+
+    /**
+     * Creates a policy.
+     *
+     * @param mode          Whether originals are kept, which decides the capture size.
+     * @param uploadTarget  The largest size of the upload rendition.
+     * @param displayTarget The size the preview is displayed at, in either orientation.
+     */
+    public CaptureResolutionPolicy(Mode mode, Resolution uploadTarget, Resolution displayTarget) {
+        this.mode = mode;
+        this.uploadTarget = uploadTarget;
+        this.displayTarget = displayTarget;
+    }
+
+    /**
+     * Creates the policy for the upload rendition of {@link ImagePreprocessor} and a preview shown in a 3:4 viewfinder
+     * as wide as the screen.
+     *
+     * @param mode        Whether originals are kept.
+     * @param screenWidth The width of the screen in pixels, in portrait.
+     * @return The policy.
+     */
+    public static CaptureResolutionPolicy forUploadRendition(Mode mode, int screenWidth) {
+        return new CaptureResolutionPolicy(mode,
+                new Resolution(ImagePreprocessor.MAX_UPLOAD_WIDTH, ImagePreprocessor.MAX_UPLOAD_HEIGHT),
+                new Resolution(screenWidth, screenWidth * 4 / 3));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Ranks capture sizes, most preferred first.
+     *
+     * @param supported The sizes the camera supports.
+     * @return The supported sizes in order of preference.
+     */
+    public List<Resolution> rankCaptureSizes(List<Resolution> supported) {
+        return mode == Mode.KEEP_ORIGINALS ? rankLargestFirst(supported, uploadTarget)
+                : rankSmallestCoveringFirst(supported, uploadTarget);
+    }
+
+    /**
+     * Ranks preview sizes, most preferred first.
+     *
+     * @param supported The sizes the camera supports for the preview.
+     * @return The supported sizes in order of preference.
+     */
+    public List<Resolution> rankPreviewSizes(List<Resolution> supported) {
+        return rankSmallestCoveringFirst(supported, displayTarget);
+    }
+
+    /**
+     * Sizes with the target's aspect ratio that cover the target, smallest first, then the remaining sizes with that
+     * aspect ratio, largest first, then all other sizes in the same order.
+     */
+    private static List<Resolution> rankSmallestCoveringFirst(List<Resolution> supported, Resolution target) {
+        List<Resolution> ranked = new ArrayList<>(supported);
+        Collections.sort(ranked, Comparator
+                .comparing((Resolution r) -> !r.hasAspectRatioOf(target))
+                .thenComparing(r -> !r.covers(target))
+                .thenComparing(r -> r.covers(target) ? r.area() : -r.area()));
+        return ranked;
+    }
+
+    /**
+     * Sizes with the target's aspect ratio, largest first, then all other sizes, largest first.
+     */
+    private static List<Resolution> rankLargestFirst(List<Resolution> supported, Resolution target) {
+        List<Resolution> ranked = new ArrayList<>(supported);
+        Collections.sort(ranked, Comparator
+                .comparing((Resolution r) -> !r.hasAspectRatioOf(target))
+                .thenComparing(r -> -r.area()));
+        return ranked;
+    }
+
+    /**
+     * @return A CameraX resolution selector which applies {@link #rankCaptureSizes(List)} to the camera's sizes.
+     */
+    public ResolutionSelector captureSelector() {
+        return new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(AspectRatioStrategy.RATIO_4_3_FALLBACK_AUTO_STRATEGY)
+                .setResolutionFilter((sizes, rotationDegrees) -> toSizes(rankCaptureSizes(toResolutions(sizes))))
+                .build();
+    }
+
+    /**
+     * @return A CameraX resolution selector which applies {@link #rankPreviewSizes(List)} to the camera's sizes.
+     */
+    public ResolutionSelector previewSelector() {
+        return new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(AspectRatioStrategy.RATIO_4_3_FALLBACK_AUTO_STRATEGY)
+                .setResolutionFilter((sizes, rotationDegrees) -> toSizes(rankPreviewSizes(toResolutions(sizes))))
+                .build();
+    }
+
+    private static List<Resolution> toResolutions(List<Size> sizes) {
+        List<Resolution> resolutions = new ArrayList<>(sizes.size());
+        for (Size size : sizes) {
+            resolutions.add(new Resolution(size.getWidth(), size.getHeight()));
+        }
+        return resolutions;
+    }
+
+    private static List<Size> toSizes(List<Resolution> resolutions) {
+        List<Size> sizes = new ArrayList<>(resolutions.size());
+        for (Resolution resolution : resolutions) {
+            sizes.add(new Size(resolution.width, resolution.height));
+        }
+        return sizes;
+    }
+}
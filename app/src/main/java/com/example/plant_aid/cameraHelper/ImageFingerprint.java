@@ -0,0 +1,93 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.graphics.Bitmap;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the fingerprints by which an upload rendition is recognised again.
+ *
+ * <p>The content digest is a SHA-256 over the encoded bytes and only matches byte-identical renditions.
+ * The perceptual hash is a 64-bit difference hash (dHash) of the pixels: the image is reduced to 9x8
+ * grey values and every bit records whether a pixel is brighter than its right neighbour. Two shots of
+ * the same leaf taken a moment apart differ in sensor noise and exposure, but their difference hashes
+ * differ in only a few bits, measured with {@link #hammingDistance(long, long)}.</p>
+ */
+public final class ImageFingerprint {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    private ImageFingerprint() {
+    }
+
+    /**
+     * Computes the content digest of an encoded image.
+     *
+     * @param buffer The buffer holding the encoded image.
+     * @param length The number of valid bytes at the start of the buffer.
+     * @return The SHA-256 of the bytes as lowercase hex.
+     */
+    public static String contentDigest(byte[] buffer, int length) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+        sha256.update(buffer, 0, length);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : sha256.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Computes the perceptual hash of a bitmap.
+     *
+     * @param bitmap The upload rendition. It is not modified.
+     * @return The 64-bit difference hash.
+     */
+    public static long perceptualHash(Bitmap bitmap) {
+        Bitmap reduced = Bitmap.createScaledBitmap(bitmap, HASH_WIDTH, HASH_HEIGHT, true);
+        int[] pixels = new int[HASH_WIDTH * HASH_HEIGHT];
+        reduced.getPixels(pixels, 0, HASH_WIDTH, 0, 0, HASH_WIDTH, HASH_HEIGHT);
+        if (reduced != bitmap) {
+            reduced.recycle();
+        }
+        return differenceHash(pixels);
+    }
+
+    /**
+     * Computes the difference hash of a 9x8 image.
+     *
+     * @param argbPixels The 72 pixels in row-major order, as packed ARGB.
+     * @return The 64-bit difference hash, one bit per horizontally adjacent pixel pair.
+     */
+    static long differenceHash(int[] argbPixels) {
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luma(argbPixels[y * HASH_WIDTH + x]);
+                int right = luma(argbPixels[y * HASH_WIDTH + x + 1]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return The number of bits in which the two perceptual hashes differ, from 0 to 64.
+     */
+    public static int hammingDistance(long hash, long otherHash) {
+        return Long.bitCount(hash ^ otherHash);
+    }
+
+    private static int luma(int argb) {
+        // Integer approximation of the Rec. 601 luma weights
+        return (299 * ((argb >> 16) & 0xFF) + 587 * ((argb >> 8) & 0xFF) + 114 * (argb & 0xFF)) / 1000;
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns a captured camera image into the rendition that is uploaded for analysis.
+ *
+ * <p>The work is done as a single fused stage: the source JPEG is decoded exactly once, with
+ * {@link BitmapFactory.Options#inSampleSize} chosen so that the decoder already discards most of the
+ * sensor resolution, then orientation and the final resize are applied with a single {@link Matrix}
+ * transform, and the result is encoded exactly once. Compared to decoding the full-resolution file,
+ * rotating it, re-encoding it and decoding it a second time for resizing, this keeps only one small
+ * bitmap alive at a time and needs one JPEG decode and one encode per capture. The encode is done by
+ * {@link UploadEncoder}, which picks the quality (and optionally WebP) to fit the current byte budget.</p>
+ *
+ * <p>The orientation is taken from the EXIF metadata which CameraX writes according to the target
+ * rotation of the capture. The stored original is never re-encoded; orientation is only applied to
+ * the pixels of derived renditions, i.e. the upload rendition and the images decoded for display.</p>
+ *
+ * <p>While the rendition is still in memory, its {@link ImageFingerprint fingerprints} are taken so that a
+ * repeated shot of the same subject can be answered from the analysis result cache. The rendition is
+ * returned in memory only; whether it is ever written to storage is up to the caller.</p>
+ *
+ * <p>For a new capture, the same decode also yields the renditions the screens display, one per
+ * {@link RenditionStore.SizeClass}: the frame is decoded and oriented at the size of the preview, the largest of
+ * them, and the upload rendition and the thumbnail are scaled down from it. The caller saves them to the
+ * {@link RenditionStore}; images captured before renditions existed get theirs from
+ * {@link #renderRenditions(String)} when they are first displayed.</p>
+ *
+ * <p>Given {@link QualityGate.Thresholds}, the oriented frame is first measured by the {@link QualityGate}; a blurry
+ * or badly exposed frame is returned as {@link ProcessedImage#isRejected() rejected} without being encoded.</p>
+ */
+public final class ImagePreprocessor {
+
+    private static final String TAG = "ImagePreprocessor";
+
+    /** Maximum width of the upload rendition. */
+    public static final int MAX_UPLOAD_WIDTH = 800;
+
+    /** Maximum height of the upload rendition. */
+    public static final int MAX_UPLOAD_HEIGHT = 600;
+
+    private ImagePreprocessor() {
+    }
+
+    /**
+     * Decodes, orients, resizes and encodes the image at {@code imagePath} into an in-memory upload rendition.
+     *
+     * @param imagePath      The path of the captured JPEG. The file is only read, never modified.
+     * @param encoder        Encodes the rendition within the current byte budget.
+     * @param quality        The limits of the quality gate, or {@code null} to encode the frame without assessing it.
+     * @param withRenditions Whether to make the renditions for display as well, see {@link ProcessedImage#renditions}.
+     * @param metrics        The metrics of the capture, sampled at the point of highest memory use. May be null.
+     * @return The encoded upload rendition and its fingerprints, or {@code null} if the image could not be decoded.
+     */
+    public static ProcessedImage preprocess(String imagePath, UploadEncoder encoder, QualityGate.Thresholds quality,
+                                            boolean withRenditions, CaptureMetrics metrics) {
+        return preprocess(options -> BitmapFactory.decodeFile(imagePath, options),
+                readExifOrientation(imagePath), encoder, quality, withRenditions, metrics);
+    }
+
+    /**
+     * Decodes, orients, resizes and encodes an in-memory JPEG into an in-memory upload rendition.
+     *
+     * @param jpeg            The encoded JPEG as delivered by the camera.
+     * @param rotationDegrees The clockwise rotation reported by CameraX for this frame.
+     * @param encoder         Encodes the rendition within the current byte budget.
+     * @param quality         The limits of the quality gate, or {@code null} to encode the frame without assessing it.
+     * @param withRenditions  Whether to make the renditions for display as well, see {@link ProcessedImage#renditions}.
+     * @param metrics         The metrics of the capture, sampled at the point of highest memory use. May be null.
+     * @return The encoded upload rendition and its fingerprints, or {@code null} if the image could not be decoded.
+     */
+    public static ProcessedImage preprocess(byte[] jpeg, int rotationDegrees, UploadEncoder encoder,
+                                            QualityGate.Thresholds quality, boolean withRenditions,
+                                            CaptureMetrics metrics) {
+        return preprocess(options -> BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options),
+                exifOrientationOf(rotationDegrees), encoder, quality, withRenditions, metrics);
+    }
+
+    private static ProcessedImage preprocess(BitmapSource source, int exifOrientation, UploadEncoder encoder,
+                                             QualityGate.Thresholds quality, boolean withRenditions,
+                                             CaptureMetrics metrics) {
+        int rotationDegrees = rotationDegreesOf(exifOrientation);
+
+        // Read only the header to learn the source dimensions
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Could not read image bounds");
+            return null;
+        }
+
+        int[] targetSize = computeTargetSize(options.outWidth, options.outHeight, rotationDegrees,
+                MAX_UPLOAD_WIDTH, MAX_UPLOAD_HEIGHT);
+        // The preview is the largest rendition, the others are scaled down from it
+        int previewSize = RenditionStore.SizeClass.PREVIEW.maxSize;
+        int[] decodeSize = withRenditions
+                ? computeTargetSize(options.outWidth, options.outHeight, rotationDegrees, previewSize, previewSize)
+                : targetSize;
+
+        // Decode once, letting the decoder subsample towards the largest size needed
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                rotationDegrees, decodeSize[0], decodeSize[1]);
+        Bitmap decoded = source.decode(options);
+        if (decoded == null) {
+            Log.e(TAG, "Could not decode image");
+            return null;
+        }
+
+        Bitmap oriented = transform(decoded, exifOrientation, decodeSize[0], decodeSize[1]);
+        Bitmap transformed = scaleToFit(oriented, targetSize[0], targetSize[1]);
+        if (metrics != null) {
+            metrics.sampleHeap();
+        }
+        if (oriented != decoded) {
+            decoded.recycle();
+        }
+
+        // Turn down unusable frames before paying for the encode and the upload
+        QualityGate.Assessment assessment = null;
+        if (quality != null) {
+            long assessStart = SystemClock.elapsedRealtime();
+            assessment = QualityGate.forCurrentThread().assess(transformed, quality);
+            Log.d(TAG, "Quality " + assessment + " in " + (SystemClock.elapsedRealtime() - assessStart) + "ms");
+            if (!assessment.isAccepted()) {
+                recycle(transformed, oriented);
+                return ProcessedImage.rejected(assessment);
+            }
+        }
+
+        UploadEncoder.EncodedImage encoded = encoder.encode(transformed);
+        long perceptualHash = ImageFingerprint.perceptualHash(transformed);
+        RenditionStore.Renditions renditions = withRenditions ? encodeRenditions(oriented) : null;
+        recycle(transformed, oriented);
+        Log.d(TAG, "Encoded upload rendition as " + encoded.mimeType + " q" + encoded.quality + ", "
+                + encoded.length + " of " + encoder.getBudgetBytes() + " budget bytes");
+        return new ProcessedImage(encoded, ImageFingerprint.contentDigest(encoded.buffer, encoded.length), perceptualHash,
+                assessment, renditions);
+    }
+
+    /**
+     * Scores the sharpness of a captured JPEG, for picking the best frame of a burst. The frame is decoded heavily
+     * subsampled, to roughly the size the {@link QualityGate} measures at, and not oriented, as the measure does not
+     * depend on the orientation.
+     *
+     * @param jpeg The encoded JPEG as delivered by the camera.
+     * @return The variance of the Laplacian, see {@link QualityGate.Assessment#sharpness}, or {@link Double#NaN} if
+     * the image could not be decoded.
+     */
+    public static double scoreSharpness(byte[] jpeg) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return Double.NaN;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, 0,
+                Math.min(options.outWidth, QualityGate.ANALYSIS_SIZE), Math.min(options.outHeight, QualityGate.ANALYSIS_SIZE));
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (decoded == null) {
+            return Double.NaN;
+        }
+        double sharpness = QualityGate.forCurrentThread().assess(decoded, QualityGate.Thresholds.DEFAULT).sharpness;
+        decoded.recycle();
+        return sharpness;
+    }
+
+    /**
+     * Decodes the image at {@code imagePath} for display, subsampled to roughly the requested size and
+     * turned upright according to its EXIF orientation. The file itself is not modified.
+     *
+     * @param imagePath The path of the JPEG to decode.
+     * @param maxWidth  The maximum width the image is displayed at.
+     * @param maxHeight The maximum height the image is displayed at.
+     * @return The upright bitmap, or {@code null} if the image could not be decoded.
+     */
+    public static Bitmap decodeForDisplay(String imagePath, int maxWidth, int maxHeight) {
+        int exifOrientation = readExifOrientation(imagePath);
+        int rotationDegrees = rotationDegreesOf(exifOrientation);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int[] targetSize = computeTargetSize(options.outWidth, options.outHeight, rotationDegrees, maxWidth, maxHeight);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                rotationDegrees, targetSize[0], targetSize[1]);
+        Bitmap decoded = BitmapFactory.decodeFile(imagePath, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        // Only orient, the subsampled size is close enough for display
+        boolean swapsAxes = swapsAxes(rotationDegrees);
+        Bitmap oriented = transform(decoded, exifOrientation,
+                swapsAxes ? decoded.getHeight() : decoded.getWidth(),
+                swapsAxes ? decoded.getWidth() : decoded.getHeight());
+        if (oriented != decoded) {
+            decoded.recycle();
+        }
+        return oriented;
+    }
+
+    /**
+     * Reads the EXIF orientation tag of the image at {@code imagePath}.
+     *
+     * @param imagePath The path of the JPEG.
+     * @return One of the {@code ExifInterface.ORIENTATION_*} constants, {@code ORIENTATION_UNDEFINED} if unreadable.
+     */
+    public static int readExifOrientation(String imagePath) {
+        try {
+            ExifInterface exif = new ExifInterface(imagePath);
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read EXIF orientation of " + imagePath, e);
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+    }
+
+    /**
+     * Applies the EXIF orientation and scaling to {@code source} in a single matrix transform.
+     *
+     * @param source          The decoded (possibly subsampled) bitmap.
+     * @param exifOrientation The EXIF orientation of the source image.
+     * @param targetWidth     The width of the result, measured after orientation.
+     * @param targetHeight    The height of the result, measured after orientation.
+     * @return The transformed bitmap, or {@code source} itself if no transform was necessary.
+     */
+    private static Bitmap transform(Bitmap source, int exifOrientation, int targetWidth, int targetHeight) {
+        int rotationDegrees = rotationDegreesOf(exifOrientation);
+        boolean flipped = isFlipped(exifOrientation);
+        boolean swapsAxes = swapsAxes(rotationDegrees);
+        int orientedWidth = swapsAxes ? source.getHeight() : source.getWidth();
+        int orientedHeight = swapsAxes ? source.getWidth() : source.getHeight();
+
+        float scaleX = (float) targetWidth / orientedWidth;
+        float scaleY = (float) targetHeight / orientedHeight;
+        if (rotationDegrees == 0 && !flipped && scaleX == 1f && scaleY == 1f) {
+            return source;
+        }
+
+        Matrix matrix = new Matrix();
+        if (flipped) {
+            matrix.postScale(-1f, 1f);
+        }
+        matrix.postRotate(rotationDegrees);
+        matrix.postScale(scaleX, scaleY);
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    /**
+     * Makes the renditions for display of an image captured before they were made at capture time. The image is
+     * decoded once, subsampled towards the preview size and turned upright.
+     *
+     * @param imagePath The path of the garden image. The file is only read, never modified.
+     * @return The encoded renditions, or {@code null} if the image could not be decoded.
+     */
+    public static RenditionStore.Renditions renderRenditions(String imagePath) {
+        int previewSize = RenditionStore.SizeClass.PREVIEW.maxSize;
+        Bitmap oriented = decodeForDisplay(imagePath, previewSize, previewSize);
+        if (oriented == null) {
+            return null;
+        }
+        RenditionStore.Renditions renditions = encodeRenditions(oriented);
+        oriented.recycle();
+        return renditions;
+    }
+
+    /**
+     * Encodes one rendition per {@link RenditionStore.SizeClass}, each scaled down from the given upright bitmap.
+     *
+     * @param oriented The upright image, at least as large as the preview unless the image itself is smaller. It is
+     *                 left intact.
+     * @return The encoded renditions.
+     */
+    private static RenditionStore.Renditions encodeRenditions(Bitmap oriented) {
+        return new RenditionStore.Renditions(encodeRendition(oriented, RenditionStore.SizeClass.THUMBNAIL),
+                encodeRendition(oriented, RenditionStore.SizeClass.PREVIEW));
+    }
+
+    private static byte[] encodeRendition(Bitmap oriented, RenditionStore.SizeClass sizeClass) {
+        int[] size = computeTargetSize(oriented.getWidth(), oriented.getHeight(), 0,
+                sizeClass.maxSize, sizeClass.maxSize);
+        Bitmap scaled = scaleToFit(oriented, size[0], size[1]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        scaled.compress(Bitmap.CompressFormat.JPEG, sizeClass.jpegQuality, out);
+        if (scaled != oriented) {
+            scaled.recycle();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Scales an upright bitmap to the given size, which has its aspect ratio.
+     *
+     * @return The scaled bitmap, or {@code source} itself if it already has that size.
+     */
+    private static Bitmap scaleToFit(Bitmap source, int width, int height) {
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        return Bitmap.createScaledBitmap(source, width, height, true);
+    }
+
+    /**
+     * Recycles a bitmap and the one it was scaled from, which may be the same.
+     */
+    private static void recycle(Bitmap scaled, Bitmap source) {
+        if (scaled != source) {
+            scaled.recycle();
+        }
+        source.recycle();
+    }
+
+    /**
+     * Maps a clockwise rotation, as reported by CameraX, to the equivalent EXIF orientation.
+     *
+     * @param rotationDegrees The rotation in degrees: 0, 90, 180 or 270.
+     * @return The matching {@code ExifInterface.ORIENTATION_*} constant.
+     */
+    public static int exifOrientationOf(int rotationDegrees) {
+        switch ((rotationDegrees % 360 + 360) % 360) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Maps an EXIF orientation to the clockwise rotation that is applied after an optional horizontal flip.
+     *
+     * @param exifOrientation One of the {@code ExifInterface.ORIENTATION_*} constants.
+     * @return The rotation in degrees: 0, 90, 180 or 270.
+     */
+    static int rotationDegreesOf(int exifOrientation) {
+        switch (exifOrientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param exifOrientation One of the {@code ExifInterface.ORIENTATION_*} constants.
+     * @return {@code true} if the orientation mirrors the image horizontally before rotating it.
+     */
+    static boolean isFlipped(int exifOrientation) {
+        return exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL
+                || exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL
+                || exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Computes the size of the upload rendition. The image is fitted inside the maximum dimensions
+     * while keeping its aspect ratio; images that already fit are left at their size.
+     *
+     * @param sourceWidth     The width of the source image as stored.
+     * @param sourceHeight    The height of the source image as stored.
+     * @param rotationDegrees The clockwise rotation that will be applied.
+     * @param maxWidth        The maximum width of the result.
+     * @param maxHeight       The maximum height of the result.
+     * @return A two-element array holding the target width and height, measured after rotation.
+     */
+    static int[] computeTargetSize(int sourceWidth, int sourceHeight, int rotationDegrees, int maxWidth, int maxHeight) {
+        int width = swapsAxes(rotationDegrees) ? sourceHeight : sourceWidth;
+        int height = swapsAxes(rotationDegrees) ? sourceWidth : sourceHeight;
+
+        float aspectRatio = (float) width / height;
+
+        int newWidth = width;
+        int newHeight = height;
+        if (width > maxWidth || height > maxHeight) {
+            if (aspectRatio > 1) {
+                newWidth = maxWidth;
+                newHeight = (int) (maxWidth / aspectRatio);
+            } else {
+                newHeight = maxHeight;
+                newWidth = (int) (maxHeight * aspectRatio);
+            }
+        }
+        return new int[]{Math.max(1, newWidth), Math.max(1, newHeight)};
+    }
+
+    /**
+     * Calculates the largest power-of-two sample size which still decodes the image at least as large
+     * as the requested target, so that the final scale step only ever shrinks.
+     *
+     * @param sourceWidth     The width of the source image as stored.
+     * @param sourceHeight    The height of the source image as stored.
+     * @param rotationDegrees The clockwise rotation that will be applied.
+     * @param targetWidth     The target width, measured after rotation.
+     * @param targetHeight    The target height, measured after rotation.
+     * @return The value to use for {@link BitmapFactory.Options#inSampleSize}.
+     */
+    static int calculateInSampleSize(int sourceWidth, int sourceHeight, int rotationDegrees, int targetWidth, int targetHeight) {
+        // Bring the target back into the orientation of the stored image
+        int requiredWidth = swapsAxes(rotationDegrees) ? targetHeight : targetWidth;
+        int requiredHeight = swapsAxes(rotationDegrees) ? targetWidth : targetHeight;
+
+        int inSampleSize = 1;
+        while (sourceWidth / (inSampleSize * 2) >= requiredWidth
+                && sourceHeight / (inSampleSize * 2) >= requiredHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static boolean swapsAxes(int rotationDegrees) {
+        return Math.abs(rotationDegrees) % 180 == 90;
+    }
+
+    /**
+     * Decodes an encoded image, either from a file or from memory, with the given options.
+     */
+    private interface BitmapSource {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+}
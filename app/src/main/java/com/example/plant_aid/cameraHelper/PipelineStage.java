@@ -0,0 +1,122 @@
+package com.example.plant_aid.cameraHelper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One stage of the {@link CapturePipeline}: a fixed number of worker threads fed by a bounded queue.
+ *
+ * <p>A stage never grows its queue beyond the capacity it was created with; work offered to a full stage is
+ * rejected instead of piling up. The current and highest queue depth and the number of completed and rejected
+ * tasks are tracked for the pipeline's metrics.</p>
+ */
+public final class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+
+    /**
+     * Creates and starts a stage.
+     *
+     * @param name          The name of the stage, used for its threads and in the metrics.
+     * @param threads       The number of worker threads.
+     * @param queueCapacity The number of tasks that may wait for a free worker.
+     */
+    public PipelineStage(String name, int threads, int queueCapacity) {
+        this.name = name;
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "pipeline-" + PipelineStage.this.name + "-" + threadNumber.getAndIncrement());
+            }
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a task for this stage.
+     *
+     * @param task The task to run on one of the stage's threads.
+     * @return {@code true} if the task was queued, {@code false} if the queue is full or the stage has been shut down.
+     */
+    public boolean offer(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        int depth = executor.getQueue().size();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        return true;
+    }
+
+    /**
+     * Shuts the stage down gently: no further tasks are accepted, while queued and running tasks still finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Cancels the stage: queued tasks are discarded and running tasks are interrupted.
+     */
+    public void cancel() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return Whether the stage has been cancelled.
+     */
+    public boolean isCancelled() {
+        return executor.isShutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of tasks waiting for a free worker.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The highest number of tasks that were waiting at the same time.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of tasks that are currently running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of tasks that have finished.
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return The number of tasks rejected because the queue was full or the stage had been cancelled.
+     */
+    public int getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.plant_aid.cameraHelper;
+
+/**
+ * The upload rendition produced by {@link ImagePreprocessor}, together with the fingerprints that
+ * identify it in the analysis result cache. The rendition is only held in memory.
+ *
+ * <p>If the frame was turned down by the {@link QualityGate}, it is never encoded: only the
+ * {@link #quality} assessment is set and {@link #isRejected()} returns {@code true}.</p>
+ */
+public final class ProcessedImage {
+
+    /** The encoded upload rendition. */
+    public final UploadEncoder.EncodedImage encoded;
+
+    /** The SHA-256 of the encoded rendition, see {@link ImageFingerprint#contentDigest(byte[], int)}. */
+    public final String contentDigest;
+
+    /** The difference hash of the rendition's pixels, see {@link ImageFingerprint#perceptualHash(android.graphics.Bitmap)}. */
+    public final long perceptualHash;
+
+    /** The assessment of the quality gate, or {@code null} if the frame was not assessed. */
+    public final QualityGate.Assessment quality;
+
+    /**
+     * The renditions for display, made from the same decode, to be saved to the {@link RenditionStore} under the
+     * path of the garden image; {@code null} if they were not asked for.
+     */
+    public final RenditionStore.Renditions renditions;
+
+    ProcessedImage(UploadEncoder.EncodedImage encoded, String contentDigest, long perceptualHash, QualityGate.Assessment quality,
+                   RenditionStore.Renditions renditions) {
+        this.encoded = encoded;
+        this.contentDigest = contentDigest;
+        this.perceptualHash = perceptualHash;
+        this.quality = quality;
+        this.renditions = renditions;
+    }
+
+    static ProcessedImage rejected(QualityGate.Assessment quality) {
+        return new ProcessedImage(null, null, 0, quality, null);
+    }
+
+    /**
+     * @return Whether the quality gate turned the frame down, in which case there is no rendition to upload.
+     */
+    public boolean isRejected() {
+        return quality != null && !quality.isAccepted();
+    }
+}
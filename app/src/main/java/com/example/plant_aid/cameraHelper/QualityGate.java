@@ -0,0 +1,259 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Rejects captures that are too blurry, too dark or too bright to be worth an upload.
+ *
+ * <p>A blurred or badly exposed shot costs the same encode, upload and server inference as a good one, and its
+ * analysis result is rarely useful. The gate measures the upload rendition on a small luminance plane, at most
+ * {@link #ANALYSIS_SIZE} pixels on the longer side:</p>
+ * <ul>
+ *     <li><b>Sharpness</b> is the variance of the 4-neighbour Laplacian. Edges give large responses of both signs,
+ *     so a sharp image has a high variance, while blur flattens the response towards zero.</li>
+ *     <li><b>Exposure</b> is read from the luminance histogram: the mean brightness and the fractions of pixels
+ *     clipped to black or white.</li>
+ * </ul>
+ *
+ * <p>Exposure is judged before sharpness, as a dark frame also lacks edges and would otherwise be reported as blurry.
+ * A gate owns the buffers it measures in and reuses them for every frame, so the per-pixel work allocates nothing
+ * and takes a few milliseconds. Gates are therefore not thread-safe; {@link #forCurrentThread()} hands every
+ * processing thread its own.</p>
+ */
+public final class QualityGate {
+
+    /** Longer side, in pixels, of the luminance plane that is measured. */
+    static final int ANALYSIS_SIZE = 256;
+
+    /** Luminance at or below which a pixel counts as clipped to black. */
+    static final int SHADOW_CLIP_LUMA = 8;
+
+    /** Luminance at or above which a pixel counts as clipped to white. */
+    static final int HIGHLIGHT_CLIP_LUMA = 247;
+
+    private static final ThreadLocal<QualityGate> GATES = new ThreadLocal<QualityGate>() {
+        @Override
+        protected QualityGate initialValue() {
+            return new QualityGate();
+        }
+    };
+
+    /**
+     * The outcome of an assessment.
+     */
+    public enum Verdict {
+        ACCEPTED,
+        BLURRY,
+        UNDEREXPOSED,
+        OVEREXPOSED
+    }
+
+    /**
+     * The limits a frame has to stay within to be accepted.
+     */
+    public static final class Thresholds {
+
+        /** Limits which reject only clearly unusable frames. */
+        public static final Thresholds DEFAULT = new Thresholds(40f, 35f, 225f, 0.4f);
+
+        /** Lowest accepted variance of the Laplacian. */
+        public final float minSharpness;
+        /** Lowest accepted mean luminance, 0 to 255. */
+        public final float minMeanLuma;
+        /** Highest accepted mean luminance, 0 to 255. */
+        public final float maxMeanLuma;
+        /** Largest accepted fraction of pixels clipped to black, and likewise to white. */
+        public final float maxClippedFraction;
+
+        public Thresholds(float minSharpness, float minMeanLuma, float maxMeanLuma, float maxClippedFraction) {
+            this.minSharpness = minSharpness;
+            this.minMeanLuma = minMeanLuma;
+            this.maxMeanLuma = maxMeanLuma;
+            this.maxClippedFraction = maxClippedFraction;
+        }
+
+        /**
+         * @return A copy of these limits with a different minimum sharpness.
+         */
+        public Thresholds withMinSharpness(float minSharpness) {
+            return new Thresholds(minSharpness, minMeanLuma, maxMeanLuma, maxClippedFraction);
+        }
+    }
+
+    /**
+     * The measurements of one frame and the verdict derived from them.
+     */
+    public static final class Assessment {
+        public final Verdict verdict;
+        /** Variance of the Laplacian of the luminance plane. */
+        public final double sharpness;
+        /** Mean luminance, 0 to 255. */
+        public final double meanLuma;
+        /** Fraction of pixels clipped to black. */
+        public final double shadowClippedFraction;
+        /** Fraction of pixels clipped to white. */
+        public final double highlightClippedFraction;
+
+        Assessment(Verdict verdict, double sharpness, double meanLuma, double shadowClippedFraction, double highlightClippedFraction) {
+            this.verdict = verdict;
+            this.sharpness = sharpness;
+            this.meanLuma = meanLuma;
+            this.shadowClippedFraction = shadowClippedFraction;
+            this.highlightClippedFraction = highlightClippedFraction;
+        }
+
+        public boolean isAccepted() {
+            return verdict == Verdict.ACCEPTED;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s sharpness=%.1f meanLuma=%.1f shadows=%.2f highlights=%.2f",
+                    verdict, sharpness, meanLuma, shadowClippedFraction, highlightClippedFraction);
+        }
+    }
+
+    private final int[] histogram = new int[256];
+    private int[] argbPixels = new int[0];
+    private int[] lumaPlane = new int[0];
+
+    // Created on first use of the bitmap path, so that the gate can be measured on plain arrays without Android
+    private Bitmap analysisBitmap;
+    private Canvas analysisCanvas;
+    private Paint scalePaint;
+    private Rect analysisRect;
+
+    QualityGate() {
+    }
+
+    /**
+     * @return The gate of the calling thread, created on first use.
+     */
+    public static QualityGate forCurrentThread() {
+        return GATES.get();
+    }
+
+    /**
+     * Assesses a decoded frame, shrunk to at most {@link #ANALYSIS_SIZE} pixels on the longer side.
+     *
+     * @param frame      The upright upload rendition. It is not modified.
+     * @param thresholds The limits the frame has to stay within.
+     * @return The measurements and verdict.
+     */
+    public Assessment assess(Bitmap frame, Thresholds thresholds) {
+        float scale = Math.min(1f, (float) ANALYSIS_SIZE / Math.max(frame.getWidth(), frame.getHeight()));
+        int width = Math.max(1, Math.round(frame.getWidth() * scale));
+        int height = Math.max(1, Math.round(frame.getHeight() * scale));
+
+        if (analysisBitmap == null || analysisBitmap.getWidth() != width || analysisBitmap.getHeight() != height) {
+            if (analysisBitmap != null) {
+                analysisBitmap.recycle();
+            }
+            analysisBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            analysisCanvas = new Canvas(analysisBitmap);
+            scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            analysisRect = new Rect(0, 0, width, height);
+        }
+        analysisCanvas.drawBitmap(frame, null, analysisRect, scalePaint);
+
+        int[] pixels = argbBuffer(width * height);
+        analysisBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return assess(pixels, width, height, thresholds);
+    }
+
+    /**
+     * Assesses a frame given as packed ARGB pixels. Only the first {@code width * height} pixels are read.
+     *
+     * @param argb       The pixels in row-major order.
+     * @param width      The width of the frame.
+     * @param height     The height of the frame.
+     * @param thresholds The limits the frame has to stay within.
+     * @return The measurements and verdict.
+     */
+    public Assessment assess(int[] argb, int width, int height, Thresholds thresholds) {
+        int count = width * height;
+        int[] luma = lumaBuffer(count);
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            // Integer approximation of the Rec. 601 luma weights
+            int y = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+            luma[i] = y;
+            histogram[y]++;
+        }
+
+        long lumaSum = 0;
+        for (int y = 0; y < 256; y++) {
+            lumaSum += (long) y * histogram[y];
+        }
+        int shadowClipped = 0;
+        for (int y = 0; y <= SHADOW_CLIP_LUMA; y++) {
+            shadowClipped += histogram[y];
+        }
+        int highlightClipped = 0;
+        for (int y = HIGHLIGHT_CLIP_LUMA; y < 256; y++) {
+            highlightClipped += histogram[y];
+        }
+        double meanLuma = (double) lumaSum / count;
+        double shadowFraction = (double) shadowClipped / count;
+        double highlightFraction = (double) highlightClipped / count;
+        double sharpness = laplacianVariance(luma, width, height);
+
+        Verdict verdict;
+        if (meanLuma < thresholds.minMeanLuma || shadowFraction > thresholds.maxClippedFraction) {
+            verdict = Verdict.UNDEREXPOSED;
+        } else if (meanLuma > thresholds.maxMeanLuma || highlightFraction > thresholds.maxClippedFraction) {
+            verdict = Verdict.OVEREXPOSED;
+        } else if (sharpness < thresholds.minSharpness) {
+            verdict = Verdict.BLURRY;
+        } else {
+            verdict = Verdict.ACCEPTED;
+        }
+        return new Assessment(verdict, sharpness, meanLuma, shadowFraction, highlightFraction);
+    }
+
+    /**
+     * Computes the variance of the 4-neighbour Laplacian over the interior of a luminance plane.
+     *
+     * @return The variance, 0 for planes without an interior.
+     */
+    static double laplacianVariance(int[] luma, int width, int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int response = 4 * luma[i] - luma[i - 1] - luma[i + 1] - luma[i - width] - luma[i + width];
+                sum += response;
+                sumOfSquares += (long) response * response;
+            }
+        }
+        long n = (long) (width - 2) * (height - 2);
+        double mean = (double) sum / n;
+        return (double) sumOfSquares / n - mean * mean;
+    }
+
+    private int[] argbBuffer(int count) {
+        if (argbPixels.length < count) {
+            argbPixels = new int[count];
+        }
+        return argbPixels;
+    }
+
+    private int[] lumaBuffer(int count) {
+        if (lumaPlane.length < count) {
+            lumaPlane = new int[count];
+        }
+        return lumaPlane;
+    }
+}
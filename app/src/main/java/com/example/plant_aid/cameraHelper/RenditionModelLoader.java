@@ -0,0 +1,130 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lets Glide load a rendition by its {@link RenditionStore.Key}, so that a screen only names the image and the size
+ * it displays it at.
+ *
+ * <p>The rendition is looked up, and made first if the image has none yet, on Glide's source thread, so neither the
+ * lookup nor a lazy regeneration ever runs on the main thread, and a row that is recycled before its load starts
+ * costs nothing. Registered by the app's Glide module.</p>
+ */
+public final class RenditionModelLoader implements ModelLoader<RenditionStore.Key, InputStream> {
+
+    private final RenditionStore store;
+
+    RenditionModelLoader(RenditionStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull RenditionStore.Key key, int width, int height,
+                                               @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(key), new Fetcher(store, key));
+    }
+
+    @Override
+    public boolean handles(@NonNull RenditionStore.Key key) {
+        return true;
+    }
+
+    /**
+     * Opens the file of one rendition.
+     */
+    private static final class Fetcher implements DataFetcher<InputStream> {
+        private final RenditionStore store;
+        private final RenditionStore.Key key;
+        private InputStream stream;
+
+        Fetcher(RenditionStore store, RenditionStore.Key key) {
+            this.store = store;
+            this.key = key;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            File file = store.obtain(key.imagePath, key.sizeClass);
+            if (file == null) {
+                callback.onLoadFailed(new FileNotFoundException("No " + key));
+                return;
+            }
+            try {
+                stream = new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                callback.onLoadFailed(e);
+                return;
+            }
+            callback.onDataReady(stream);
+        }
+
+        @Override
+        public void cleanup() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Only read from, nothing is lost
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            // The lookup is short and the regeneration writes files another load can use
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+    /**
+     * Creates the loader for Glide's registry.
+     */
+    public static final class Factory implements ModelLoaderFactory<RenditionStore.Key, InputStream> {
+        private final RenditionStore store;
+
+        /**
+         * @param context Any context, only used to locate the renditions.
+         */
+        public Factory(Context context) {
+            this.store = new RenditionStore(context);
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<RenditionStore.Key, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new RenditionModelLoader(store);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
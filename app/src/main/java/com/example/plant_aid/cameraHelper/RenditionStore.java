@@ -0,0 +1,193 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Keeps the downscaled renditions of the garden images that the screens display, so that no screen ever decodes
+ * an original.
+ *
+ * <p>Every image has one rendition per {@link SizeClass}: a small thumbnail for the garden list and a larger preview
+ * for the analysis result screen. Both are upright JPEGs without metadata, kept in a directory per size class
+ * within the app's private file directory. They are made from the same decode of the capture that yields the upload
+ * rendition, see {@link ImagePreprocessor}, and {@link #save saved} once the path of the garden image is known.
+ * Images captured before renditions existed get theirs the first time one is {@link #obtain asked for}: the original
+ * is decoded once and both size classes are written, as the other one is usually needed soon after.</p>
+ *
+ * <p>Renditions are written to a temporary file and renamed into place, so a reader never sees a partial file. The
+ * methods access the disk and should not be called on the main thread; the screens load renditions through Glide
+ * by their {@link Key}, see {@link RenditionModelLoader}.</p>
+ */
+public final class RenditionStore {
+
+    private static final String TAG = "RenditionStore";
+
+    /** The directory of the renditions within the app's private file directory. */
+    private static final String RENDITION_DIRECTORY = "renditions";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The sizes images are displayed at. Each rendition fits within the bounds of its size class while keeping the
+     * aspect ratio of the image.
+     */
+    public enum SizeClass {
+        /** A row of the garden list, 100dp cropped to a square. */
+        THUMBNAIL("thumbnail", 480, 80),
+        /**
+         * The image on the analysis result screen. Kept a little below the usual screen width, so that a capture
+         * subsampled for the upload rendition still covers it and no larger decode is needed.
+         */
+        PREVIEW("preview", 960, 85);
+
+        final String directoryName;
+        /** The maximum width and height of the rendition. */
+        public final int maxSize;
+        final int jpegQuality;
+
+        SizeClass(String directoryName, int maxSize, int jpegQuality) {
+            this.directoryName = directoryName;
+            this.maxSize = maxSize;
+            this.jpegQuality = jpegQuality;
+        }
+    }
+
+    /**
+     * The encoded renditions of one image, one per {@link SizeClass}, held in memory until they are saved.
+     */
+    public static final class Renditions {
+        final byte[] thumbnail;
+        final byte[] preview;
+
+        Renditions(byte[] thumbnail, byte[] preview) {
+            this.thumbnail = thumbnail;
+            this.preview = preview;
+        }
+
+        byte[] of(SizeClass sizeClass) {
+            return sizeClass == SizeClass.THUMBNAIL ? thumbnail : preview;
+        }
+    }
+
+    /**
+     * Names the rendition of an image in one size class; the model that Glide loads renditions by.
+     */
+    public static final class Key {
+        public final String imagePath;
+        public final SizeClass sizeClass;
+
+        /**
+         * @param imagePath The absolute path of the garden image.
+         * @param sizeClass The size the image is displayed at.
+         */
+        public Key(String imagePath, SizeClass sizeClass) {
+            this.imagePath = imagePath;
+            this.sizeClass = sizeClass;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return imagePath.equals(key.imagePath) && sizeClass == key.sizeClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(imagePath, sizeClass);
+        }
+
+        @Override
+        public String toString() {
+            return sizeClass + " of " + imagePath;
+        }
+    }
+
+    private final File directory;
+
+    /**
+     * @param context Any context, only used to locate the app's private file directory.
+     */
+    public RenditionStore(Context context) {
+        this.directory = new File(context.getApplicationContext().getFilesDir(), RENDITION_DIRECTORY);
+    }
+
+    /**
+     * Writes the renditions made while an image was captured.
+     *
+     * @param imagePath  The absolute path of the garden image.
+     * @param renditions The renditions, or {@code null} if none were made.
+     */
+    public void save(String imagePath, Renditions renditions) {
+        if (renditions == null) {
+            return;
+        }
+        for (SizeClass sizeClass : SizeClass.values()) {
+            write(fileOf(imagePath, sizeClass), renditions.of(sizeClass));
+        }
+    }
+
+    /**
+     * Returns the file of a rendition, making the renditions of the image first if it has none yet.
+     *
+     * @param imagePath The absolute path of the garden image.
+     * @param sizeClass The size the image is displayed at.
+     * @return The rendition, or {@code null} if it does not exist and the image cannot be decoded.
+     */
+    public File obtain(String imagePath, SizeClass sizeClass) {
+        File file = fileOf(imagePath, sizeClass);
+        if (file.exists()) {
+            return file;
+        }
+        Renditions renditions = ImagePreprocessor.renderRenditions(imagePath);
+        if (renditions == null) {
+            Log.w(TAG, "Could not make the renditions of " + imagePath);
+            return null;
+        }
+        Log.d(TAG, "Made the missing renditions of " + imagePath);
+        save(imagePath, renditions);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Names the rendition after the image and a hash of its path, as images in different directories may share a
+     * name.
+     */
+    private File fileOf(String imagePath, SizeClass sizeClass) {
+        String name = new File(imagePath).getName();
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return new File(new File(directory, sizeClass.directoryName),
+                name + "_" + Integer.toHexString(imagePath.hashCode()) + ".jpg");
+    }
+
+    private static void write(File file, byte[] jpeg) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            Log.w(TAG, "Could not create " + parent);
+            return;
+        }
+        // Concurrent writers of the same rendition each use their own temporary file
+        File temporary = new File(parent, file.getName() + "." + Thread.currentThread().getId() + TEMPORARY_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(jpeg);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file, e);
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w(TAG, "Could not move " + temporary + " into place");
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.plant_aid.cameraHelper;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.example.plant_aid.AppSettings;
+import com.example.plant_aid.networkHelper.BandwidthEstimator;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes the upload rendition so that it fits a target payload size with the least possible degradation.
+ *
+ * <p>Instead of a fixed JPEG quality, the encoder searches for the highest quality whose output still
+ * fits the byte budget. The search is a bounded binary search over the quality range, so an image costs
+ * at most a handful of encodes, and usually just one when the first attempt at the highest quality
+ * already fits. If WebP uploads are enabled and supported by the platform, WebP is searched as well and
+ * whichever format reaches the higher quality within the budget is used; on a tie JPEG is preferred.</p>
+ *
+ * <p>The budget follows the link: it is the number of bytes the {@link BandwidthEstimator} expects to be
+ * uploaded within {@link AppSettings#getUploadTargetSeconds()}, clamped between {@link #MIN_BUDGET_BYTES}
+ * and {@link AppSettings#getMaxUploadBytes()}.</p>
+ */
+public final class UploadEncoder {
+
+    /** The smallest budget ever used, below it the analysis would suffer too much. */
+    public static final int MIN_BUDGET_BYTES = 40 * 1024;
+
+    /** The budget used before any upload has been measured. */
+    static final int DEFAULT_BUDGET_BYTES = 200 * 1024;
+
+    static final int MIN_QUALITY = 40;
+    static final int MAX_QUALITY = 92;
+    private static final int MAX_SEARCH_STEPS = 6;
+
+    /**
+     * The encoded upload rendition.
+     */
+    public static final class EncodedImage {
+        public final byte[] buffer;
+        public final int length;
+        public final String mimeType;
+        public final String fileExtension;
+        public final int quality;
+
+        EncodedImage(byte[] buffer, int length, String mimeType, String fileExtension, int quality) {
+            this.buffer = buffer;
+            this.length = length;
+            this.mimeType = mimeType;
+            this.fileExtension = fileExtension;
+            this.quality = quality;
+        }
+    }
+
+    /**
+     * Encodes a bitmap at a given quality and reports the size of the result. Implemented by the bitmap
+     * encoder on the device and by fakes in tests.
+     */
+    interface QualityEncoder {
+        int encode(int quality, ByteArrayOutputStream out);
+    }
+
+    private final int budgetBytes;
+    private final boolean webpAllowed;
+
+    /**
+     * Creates an encoder for a fixed budget.
+     *
+     * @param budgetBytes The target payload size in bytes.
+     * @param webpAllowed Whether WebP may be chosen instead of JPEG.
+     */
+    public UploadEncoder(int budgetBytes, boolean webpAllowed) {
+        this.budgetBytes = budgetBytes;
+        this.webpAllowed = webpAllowed && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+    }
+
+    /**
+     * Creates an encoder whose budget is derived from the current bandwidth estimate and the settings.
+     *
+     * @param appSettings The settings holding the target upload time, the maximum size and the WebP switch.
+     * @return The encoder for the next upload.
+     */
+    public static UploadEncoder forCurrentConditions(AppSettings appSettings) {
+        return new UploadEncoder(computeBudget(BandwidthEstimator.getInstance().getBytesPerSecond(),
+                appSettings.getUploadTargetSeconds(), appSettings.getMaxUploadBytes()),
+                appSettings.isWebpUploads());
+    }
+
+    /**
+     * @return The target payload size in bytes.
+     */
+    public int getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Encodes the bitmap within the budget.
+     *
+     * @param bitmap The upload rendition, already oriented and resized.
+     * @return The encoded image.
+     */
+    public EncodedImage encode(Bitmap bitmap) {
+        EncodedImage jpeg = search((quality, out) -> compress(bitmap, Bitmap.CompressFormat.JPEG, quality, out),
+                budgetBytes, "image/jpeg", ".jpg");
+        if (!webpAllowed || jpeg.quality == MAX_QUALITY) {
+            return jpeg;
+        }
+        EncodedImage webp = search((quality, out) -> compress(bitmap, Bitmap.CompressFormat.WEBP_LOSSY, quality, out),
+                budgetBytes, "image/webp", ".webp");
+        return webp.quality > jpeg.quality ? webp : jpeg;
+    }
+
+    private static int compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality, ByteArrayOutputStream out) {
+        out.reset();
+        bitmap.compress(format, quality, out);
+        return out.size();
+    }
+
+    /**
+     * Finds the highest quality whose encoding fits {@code budgetBytes}. If not even {@link #MIN_QUALITY} fits,
+     * the encoding at {@link #MIN_QUALITY} is returned.
+     */
+    static EncodedImage search(QualityEncoder encoder, int budgetBytes, String mimeType, String fileExtension) {
+        ExposedByteArrayOutputStream best = new ExposedByteArrayOutputStream();
+        ExposedByteArrayOutputStream trial = new ExposedByteArrayOutputStream();
+
+        // Most images fit right away at the highest quality
+        if (encoder.encode(MAX_QUALITY, best) <= budgetBytes) {
+            return best.toEncodedImage(mimeType, fileExtension, MAX_QUALITY);
+        }
+        int bestQuality = MIN_QUALITY;
+        if (encoder.encode(MIN_QUALITY, best) > budgetBytes) {
+            return best.toEncodedImage(mimeType, fileExtension, MIN_QUALITY);
+        }
+
+        // Invariant: bestQuality fits, everything above high does not
+        int high = MAX_QUALITY - 1;
+        for (int step = 0; step < MAX_SEARCH_STEPS && bestQuality < high; step++) {
+            int quality = (bestQuality + high + 1) / 2;
+            if (encoder.encode(quality, trial) <= budgetBytes) {
+                bestQuality = quality;
+                ExposedByteArrayOutputStream swap = best;
+                best = trial;
+                trial = swap;
+            } else {
+                high = quality - 1;
+            }
+        }
+        return best.toEncodedImage(mimeType, fileExtension, bestQuality);
+    }
+
+    /**
+     * Computes the byte budget for an upload.
+     *
+     * @param bytesPerSecond The estimated upload bandwidth, negative if unknown.
+     * @param targetSeconds  The time an upload should take at most.
+     * @param maxBytes       The upper bound of the budget.
+     * @return The budget in bytes.
+     */
+    static int computeBudget(double bytesPerSecond, float targetSeconds, int maxBytes) {
+        if (bytesPerSecond <= 0) {
+            return Math.min(DEFAULT_BUDGET_BYTES, maxBytes);
+        }
+        long budget = (long) (bytesPerSecond * targetSeconds);
+        return (int) Math.max(MIN_BUDGET_BYTES, Math.min(budget, maxBytes));
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} whose buffer can be handed out without copying.
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(64 * 1024);
+        }
+
+        EncodedImage toEncodedImage(String mimeType, String fileExtension, int quality) {
+            return new EncodedImage(buf, count, mimeType, fileExtension, quality);
+        }
+    }
+}
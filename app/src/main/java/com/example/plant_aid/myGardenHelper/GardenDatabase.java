@@ -0,0 +1,318 @@
+package com.example.plant_aid.myGardenHelper;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SQLite database indexing the garden: one row per image with where its result is kept, the time the image
+ * was taken and the summary of the result that the garden list shows. The results themselves are in the
+ * {@link GardenJournal}, or in a result file of an earlier version.
+ *
+ * <p>The capture time is indexed, so the garden is read page by page, newest first, with keyset queries that
+ * continue after the last entry of the previous page instead of skipping over an offset. Only the rows of one page
+ * are ever loaded, however large the garden grows, and adding an entry writes a single row.</p>
+ *
+ * <p>The summary columns hold the status, the {@link AnalysisResult#toListSummary() headline} diagnosis, the
+ * confidence and the analysis time of the result, written in the same transaction that indexes the result. A page
+ * therefore carries everything its rows show. They are {@code NULL} for rows indexed by version 1 of the database
+ * until the repository fills them in, see {@link #putSummary(String, AnalysisResult)}.</p>
+ *
+ * <p>The database is only accessed through the {@link GardenRepository}, which keeps it in line with the
+ * journal.</p>
+ */
+class GardenDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "garden.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_ENTRIES = "entries";
+    private static final String COLUMN_IMAGE_PATH = "image_path";
+    private static final String COLUMN_RESULT_PATH = "result_path";
+    private static final String COLUMN_CAPTURED_AT = "captured_at";
+    private static final String COLUMN_UPDATED_AT = "updated_at";
+    // The summary of the result, since version 2
+    private static final String COLUMN_SUMMARY_STATUS = "summary_status";
+    private static final String COLUMN_SUMMARY_DIAGNOSIS = "summary_diagnosis";
+    private static final String COLUMN_SUMMARY_CONFIDENCE = "summary_confidence";
+    private static final String COLUMN_SUMMARY_ANALYZED_AT = "summary_analyzed_at";
+
+    private static final String[] ENTRY_COLUMNS = {COLUMN_IMAGE_PATH, COLUMN_RESULT_PATH, COLUMN_CAPTURED_AT,
+            COLUMN_SUMMARY_STATUS, COLUMN_SUMMARY_DIAGNOSIS, COLUMN_SUMMARY_CONFIDENCE, COLUMN_SUMMARY_ANALYZED_AT};
+
+    private static volatile GardenDatabase instance;
+
+    private GardenDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Returns the process-wide database, creating it on first use. The database file itself is only opened by the
+     * first query.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     * @return The shared database.
+     */
+    static GardenDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (GardenDatabase.class) {
+                if (instance == null) {
+                    instance = new GardenDatabase(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " ("
+                + COLUMN_IMAGE_PATH + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_RESULT_PATH + " TEXT NOT NULL, "
+                + COLUMN_CAPTURED_AT + " INTEGER NOT NULL, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL, "
+                + COLUMN_SUMMARY_STATUS + " INTEGER, "
+                + COLUMN_SUMMARY_DIAGNOSIS + " TEXT, "
+                + COLUMN_SUMMARY_CONFIDENCE + " REAL, "
+                + COLUMN_SUMMARY_ANALYZED_AT + " INTEGER)");
+        db.execSQL("CREATE INDEX idx_entries_captured_at ON " + TABLE_ENTRIES
+                + " (" + COLUMN_CAPTURED_AT + ", " + COLUMN_IMAGE_PATH + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // The existing rows are left without a summary, see putSummary()
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_SUMMARY_STATUS + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_SUMMARY_DIAGNOSIS + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_SUMMARY_CONFIDENCE + " REAL");
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_SUMMARY_ANALYZED_AT + " INTEGER");
+        }
+    }
+
+    /**
+     * Indexes a batch of changes of the {@link GardenJournal} in one transaction. A put adds an entry pointing at
+     * the journal, or points an existing entry at it, keeping its capture time, and stores the summary of the new
+     * result; a deletion removes the entry.
+     *
+     * @param changes   The changes, in the order they were written to the journal.
+     * @param summaries The list summary of the result of each change, at the same index, {@code null} for a
+     *                  deletion or a result that could not be read.
+     * @return The result files of earlier versions which the changes superseded and which can be deleted.
+     */
+    synchronized List<String> applyJournalChanges(List<GardenJournal.Change> changes,
+                                                  List<AnalysisResult> summaries) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        List<String> superseded = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < changes.size(); i++) {
+                GardenJournal.Change change = changes.get(i);
+                GardenEntry previous = get(change.imagePath);
+                if (previous != null && !previous.isInJournal()) {
+                    superseded.add(previous.resultFilePath);
+                }
+                String[] imagePath = {change.imagePath};
+                if (change.deleted) {
+                    db.delete(TABLE_ENTRIES, COLUMN_IMAGE_PATH + " = ?", imagePath);
+                    continue;
+                }
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_RESULT_PATH, GardenEntry.IN_JOURNAL);
+                values.put(COLUMN_UPDATED_AT, now);
+                putSummaryValues(values, summaries.get(i));
+                if (previous != null) {
+                    db.update(TABLE_ENTRIES, values, COLUMN_IMAGE_PATH + " = ?", imagePath);
+                } else {
+                    values.put(COLUMN_IMAGE_PATH, change.imagePath);
+                    values.put(COLUMN_CAPTURED_AT, change.capturedAt);
+                    db.insert(TABLE_ENTRIES, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return superseded;
+    }
+
+    /**
+     * Adds entries in one transaction, leaving images that already have an entry untouched.
+     *
+     * @param entries The entries to add.
+     * @return The number of entries that were added.
+     */
+    synchronized int putAllIfAbsent(List<GardenEntry> entries) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        int added = 0;
+        db.beginTransaction();
+        try {
+            for (GardenEntry entry : entries) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_IMAGE_PATH, entry.imagePath);
+                values.put(COLUMN_RESULT_PATH, entry.resultFilePath);
+                values.put(COLUMN_CAPTURED_AT, entry.capturedAt);
+                values.put(COLUMN_UPDATED_AT, now);
+                if (db.insertWithOnConflict(TABLE_ENTRIES, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    added++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return added;
+    }
+
+    /**
+     * Stores the summary of an entry that has none yet. An entry whose summary was stored in the meantime, along
+     * with a newer result, keeps it.
+     *
+     * @param imagePath The absolute path of the image.
+     * @param summary   The list summary of its result.
+     * @return Whether the summary was stored.
+     */
+    synchronized boolean putSummary(String imagePath, AnalysisResult summary) {
+        ContentValues values = new ContentValues();
+        putSummaryValues(values, summary);
+        return getWritableDatabase().update(TABLE_ENTRIES, values,
+                COLUMN_IMAGE_PATH + " = ? AND " + COLUMN_SUMMARY_STATUS + " IS NULL", new String[]{imagePath}) > 0;
+    }
+
+    private static void putSummaryValues(ContentValues values, AnalysisResult summary) {
+        if (summary == null) {
+            values.putNull(COLUMN_SUMMARY_STATUS);
+            values.putNull(COLUMN_SUMMARY_DIAGNOSIS);
+            values.putNull(COLUMN_SUMMARY_CONFIDENCE);
+            values.putNull(COLUMN_SUMMARY_ANALYZED_AT);
+            return;
+        }
+        values.put(COLUMN_SUMMARY_STATUS, summary.status.getCode());
+        values.put(COLUMN_SUMMARY_DIAGNOSIS, summary.diagnosis);
+        if (summary.hasConfidence()) {
+            values.put(COLUMN_SUMMARY_CONFIDENCE, summary.confidence);
+        } else {
+            values.putNull(COLUMN_SUMMARY_CONFIDENCE);
+        }
+        values.put(COLUMN_SUMMARY_ANALYZED_AT, summary.analyzedAt);
+    }
+
+    /**
+     * @param imagePath The absolute path of an image.
+     * @return The entry of the image, or {@code null} if it is not part of the garden.
+     */
+    GardenEntry get(String imagePath) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS,
+                COLUMN_IMAGE_PATH + " = ?", new String[]{imagePath}, null, null, null)) {
+            return cursor.moveToFirst() ? entryAt(cursor) : null;
+        }
+    }
+
+    /**
+     * Reads a page of the garden, newest first.
+     *
+     * @param after The last entry of the previous page, or {@code null} for the first page.
+     * @param limit The maximum number of entries.
+     * @return The entries following {@code after}.
+     */
+    List<GardenEntry> page(GardenEntry after, int limit) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (after != null) {
+            // Entries with the same capture time are ordered by path, so none is skipped or repeated
+            selection = COLUMN_CAPTURED_AT + " < ? OR (" + COLUMN_CAPTURED_AT + " = ? AND " + COLUMN_IMAGE_PATH + " < ?)";
+            String capturedAt = String.valueOf(after.capturedAt);
+            selectionArgs = new String[]{capturedAt, capturedAt, after.imagePath};
+        }
+        List<GardenEntry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS, selection, selectionArgs,
+                null, null, COLUMN_CAPTURED_AT + " DESC, " + COLUMN_IMAGE_PATH + " DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                entries.add(entryAt(cursor));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param extension The extension of result files, including the dot.
+     * @return All entries whose result file has the given extension.
+     */
+    List<GardenEntry> withResultExtension(String extension) {
+        List<GardenEntry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS,
+                COLUMN_RESULT_PATH + " LIKE ?", new String[]{"%" + extension}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                entries.add(entryAt(cursor));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param resultFilePath A result file path, or {@link GardenEntry#IN_JOURNAL}.
+     * @return All entries whose result is kept there.
+     */
+    List<GardenEntry> withResultPath(String resultFilePath) {
+        List<GardenEntry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS,
+                COLUMN_RESULT_PATH + " = ?", new String[]{resultFilePath}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                entries.add(entryAt(cursor));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the entries without a summary, ordered by image path, for filling in their summaries batch by batch.
+     *
+     * @param after The image path of the last entry of the previous batch, or {@code null} for the first batch.
+     * @param limit The maximum number of entries.
+     * @return The entries without a summary whose image path follows {@code after}.
+     */
+    List<GardenEntry> withoutSummary(String after, int limit) {
+        String selection = COLUMN_SUMMARY_STATUS + " IS NULL";
+        String[] selectionArgs = null;
+        if (after != null) {
+            selection += " AND " + COLUMN_IMAGE_PATH + " > ?";
+            selectionArgs = new String[]{after};
+        }
+        List<GardenEntry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS, selection, selectionArgs,
+                null, null, COLUMN_IMAGE_PATH, String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                entries.add(entryAt(cursor));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return The number of entries in the garden.
+     */
+    int count() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_ENTRIES, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    private static GardenEntry entryAt(Cursor cursor) {
+        long capturedAt = cursor.getLong(2);
+        AnalysisResult summary = null;
+        if (!cursor.isNull(3)) {
+            summary = AnalysisResult.summary(AnalysisResult.Status.ofCode(cursor.getInt(3)), cursor.getString(4),
+                    cursor.isNull(5) ? Float.NaN : cursor.getFloat(5), cursor.getLong(6), capturedAt);
+        }
+        return new GardenEntry(cursor.getString(0), cursor.getString(1), capturedAt, summary);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.plant_aid.myGardenHelper;
+
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+
+import java.util.Comparator;
+
+/**
+ * One entry of the garden: an analysed image, where its analysis result is kept and the summary of the result that
+ * the garden list shows.
+ */
+public final class GardenEntry {
+
+    /** The {@link #resultFilePath} of an entry whose result is kept in the {@link GardenJournal}. */
+    static final String IN_JOURNAL = "";
+
+    /**
+     * The order of the garden: newest first, and entries taken at the same time by descending path, as the
+     * {@link GardenRepository#loadPage(GardenEntry, int) pages} are.
+     */
+    public static final Comparator<GardenEntry> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.capturedAt, a.capturedAt);
+        return byTime != 0 ? byTime : b.imagePath.compareTo(a.imagePath);
+    };
+
+    /** The absolute path of the image, which identifies the entry. */
+    public final String imagePath;
+    /**
+     * The absolute path of the file holding the analysis result, as written by earlier versions, or
+     * {@link #IN_JOURNAL} once the result is kept in the journal.
+     */
+    public final String resultFilePath;
+    /** When the image was taken, in milliseconds since the epoch. The garden is ordered by it, newest first. */
+    public final long capturedAt;
+    /**
+     * The {@link AnalysisResult#toListSummary() list summary} of the result, kept in the garden index so the list
+     * never reads the result itself, or {@code null} if the index has none yet for an entry of an earlier version.
+     */
+    public final AnalysisResult summary;
+
+    public GardenEntry(String imagePath, String resultFilePath, long capturedAt) {
+        this(imagePath, resultFilePath, capturedAt, null);
+    }
+
+    public GardenEntry(String imagePath, String resultFilePath, long capturedAt, AnalysisResult summary) {
+        this.imagePath = imagePath;
+        this.resultFilePath = resultFilePath;
+        this.capturedAt = capturedAt;
+        this.summary = summary;
+    }
+
+    /**
+     * @return A copy of this entry with another summary, in the same place of the garden.
+     */
+    public GardenEntry withSummary(AnalysisResult summary) {
+        return new GardenEntry(imagePath, resultFilePath, capturedAt, summary);
+    }
+
+    /**
+     * Returns an identifier of the entry that stays the same however the garden changes, for lists that need one
+     * per row. It is a 64-bit FNV-1a hash of the image path, so two images of a garden practically never share one.
+     *
+     * @return The identifier.
+     */
+    public long getStableId() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < imagePath.length(); i++) {
+            hash ^= imagePath.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return Whether the result of the entry is kept in the {@link GardenJournal} rather than in a file.
+     */
+    boolean isInJournal() {
+        return IN_JOURNAL.equals(resultFilePath);
+    }
+}
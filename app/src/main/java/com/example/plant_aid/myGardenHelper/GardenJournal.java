@@ -0,0 +1,867 @@
+package com.example.plant_aid.myGardenHelper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the mutations of the garden: putting the encoded analysis result of an image, and
+ * deleting an image. It is the durable record of the garden's results; the {@link GardenDatabase} indexes it.
+ *
+ * <p>Mutations are appended to the current log file by a single writer thread, the only thread that ever changes
+ * the garden. All mutations that queue up while the writer is busy are written as one batch and made durable with
+ * a single {@link FileChannel#force(boolean) sync} (group commit), so a burst of captures costs one sync rather
+ * than one per capture. The writer then hands the batch to the {@link Indexer}, in the order it was written, and
+ * only then releases the callers, so no update can overtake another on its way into the index.</p>
+ *
+ * <p>The results stay in the logs and the snapshot, a handful of segment files, rather than in one file per image.
+ * Only an index from image path to the segment, offset and length of the latest result is kept in memory, so
+ * {@link #read(String)} is a hash lookup and one positional read on a channel that is already open.</p>
+ *
+ * <p>Each record carries its length and a CRC32 of its content. When the journal is opened, the snapshot and the
+ * logs written after it are replayed into the index; a log ends at its first incomplete or damaged record, which is
+ * where the process died while writing it. Such a record was never acknowledged to its caller.</p>
+ *
+ * <p>Once the logs have grown beyond the compaction threshold, and beyond the size of the last snapshot, the writer
+ * moves on to a new log and a background thread copies the results up to the previous log into a new snapshot.
+ * The snapshot is written to a temporary file and renamed into place, the index is pointed at it, and only then
+ * are the older snapshot and the logs it covers deleted, so a crash at any point of the compaction leaves either
+ * the old or the new snapshot with all its logs.</p>
+ *
+ * <p>File layout within the journal directory:</p>
+ * <pre>
+ * snapshot.&lt;n&gt;   int magic, long generation n of the last log it covers, then put records
+ * log.&lt;n&gt;        records, n increasing with every log
+ * record        int length of the content, int CRC32 of the content, content
+ * content       byte type, string image path, and for a put: long capture time, int length and bytes of the result
+ * string        int length in UTF-8 bytes, bytes
+ * </pre>
+ */
+final class GardenJournal implements Closeable {
+
+    /**
+     * An image in the journal.
+     */
+    static final class Record {
+        final String imagePath;
+        final long capturedAt;
+
+        Record(String imagePath, long capturedAt) {
+            this.imagePath = imagePath;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    /** A mutation as it is handed to the {@link Indexer}. */
+    static final class Change {
+        final String imagePath;
+        /** When the image was taken, 0 for a deletion. */
+        final long capturedAt;
+        final boolean deleted;
+        /** The encoded result that was stored, {@code null} for a deletion. */
+        final byte[] result;
+
+        Change(String imagePath, long capturedAt, boolean deleted, byte[] result) {
+            this.imagePath = imagePath;
+            this.capturedAt = capturedAt;
+            this.deleted = deleted;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Receives every batch of mutations once it is durable, on the writer thread, before the callers return.
+     */
+    interface Indexer {
+        /**
+         * @param changes The mutations of the batch in the order they were written. Results that were not stored
+         *                by {@link #putIfAbsent} are left out.
+         */
+        void index(List<Change> changes);
+    }
+
+    /** What replay found when the journal was opened. */
+    static final class RecoveryStats {
+        /** The number of records replayed from the snapshot and the logs. */
+        final int replayedRecords;
+        /** The number of bytes at the end of logs that did not form complete, intact records. */
+        final long discardedBytes;
+
+        RecoveryStats(int replayedRecords, long discardedBytes) {
+            this.replayedRecords = replayedRecords;
+            this.discardedBytes = discardedBytes;
+        }
+    }
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+
+    private static final int SNAPSHOT_MAGIC = 0x47534E31;
+    private static final int SNAPSHOT_HEADER_LENGTH = 12;
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String LOG_PREFIX = "log.";
+
+    /** The length and CRC32 ahead of the content of a record. */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /** Records of one batch are buffered in memory; larger batches are split. */
+    private static final int MAX_BATCH_SIZE = 256;
+    /** Guards against allocating for the length of a damaged record. */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    /**
+     * A log or snapshot file, read with positional reads on a channel that is shared by all readers. Segments are
+     * immutable except for the current log, which only ever grows beyond the results that are already indexed.
+     */
+    private static final class Segment {
+        final File file;
+        private FileChannel channel;
+        private boolean retired;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        byte[] read(long position, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            while (bytes.hasRemaining()) {
+                FileChannel channel = channel();
+                try {
+                    if (channel.read(bytes, position + bytes.position()) < 0) {
+                        throw new EOFException("Result beyond the end of " + file);
+                    }
+                } catch (ClosedChannelException e) {
+                    // Another reader was interrupted, which closes the shared channel, so read again on a new one
+                    if (Thread.currentThread().isInterrupted() || isRetired()) {
+                        throw e;
+                    }
+                }
+            }
+            return bytes.array();
+        }
+
+        private synchronized boolean isRetired() {
+            return retired;
+        }
+
+        /**
+         * Opens the channel on first use, and again after an interrupted reader has closed it.
+         */
+        private synchronized FileChannel channel() throws IOException {
+            if (retired) {
+                throw new ClosedChannelException();
+            }
+            if (channel == null || !channel.isOpen()) {
+                channel = new FileInputStream(file).getChannel();
+            }
+            return channel;
+        }
+
+        /**
+         * Closes the segment for good, before it is deleted. Reads that are running fail and look the result up
+         * again.
+         */
+        synchronized void retire() {
+            retired = true;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Only read from
+                }
+            }
+        }
+    }
+
+    /** Where the latest result of an image is kept. */
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+        final long capturedAt;
+
+        Location(Segment segment, long offset, int length, long capturedAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    /** A queued mutation, completed by the writer once it is durable or has failed. */
+    private static final class Mutation {
+        final byte type;
+        final String imagePath;
+        final long capturedAt;
+        final byte[] result;
+        final boolean onlyIfAbsent;
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean applied;
+        IOException failure;
+
+        Mutation(byte type, String imagePath, long capturedAt, byte[] result, boolean onlyIfAbsent) {
+            this.type = type;
+            this.imagePath = imagePath;
+            this.capturedAt = capturedAt;
+            this.result = result;
+            this.onlyIfAbsent = onlyIfAbsent;
+        }
+    }
+
+    private static final Mutation CLOSE = new Mutation(TYPE_DELETE, "", 0, null, false);
+
+    private final File directory;
+    private final long compactionThresholdBytes;
+    private final Indexer indexer;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    /** The logs by generation; added to by the writer, removed from by the compactor. */
+    private final ConcurrentNavigableMap<Long, Segment> logSegments = new ConcurrentSkipListMap<>();
+    private final LinkedBlockingQueue<Mutation> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "garden-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final Thread writer;
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong logBytes = new AtomicLong();
+    private final RecoveryStats recoveryStats;
+
+    /** Only accessed by the writer thread, and by {@link #open} before it starts. */
+    private FileChannel log;
+    private long logGeneration;
+    /** Only replaced by the compactor, and by {@link #open} before it starts. */
+    private volatile Segment snapshot;
+    private volatile long snapshotBytes;
+    private volatile boolean compacting;
+    /** Guarded by {@link #queue}. */
+    private boolean closed;
+
+    private GardenJournal(File directory, long compactionThresholdBytes, Indexer indexer) throws IOException {
+        this.directory = directory;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        this.indexer = indexer;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.recoveryStats = replay();
+        File logFile = logFile(logGeneration);
+        this.log = new FileOutputStream(logFile, true).getChannel();
+        logSegments.put(logGeneration, new Segment(logFile));
+        this.writer = new Thread(this::writeLoop, "garden-journal-writer");
+        // Nothing is lost if the process ends, callers only continue once their mutation is durable
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the journal in a directory, replaying the snapshot and logs found there. Opening reads the whole
+     * journal and should not happen on the main thread.
+     *
+     * @param directory                The directory of the journal, created if necessary.
+     * @param compactionThresholdBytes The size of the logs beyond which they are compacted into a new snapshot.
+     * @param indexer                  Receives the mutations written from now on. The replayed journal is not
+     *                                 handed to it, see {@link #records()}.
+     * @return The opened journal.
+     * @throws IOException If the directory or the new log cannot be created.
+     */
+    static GardenJournal open(File directory, long compactionThresholdBytes, Indexer indexer) throws IOException {
+        return new GardenJournal(directory, compactionThresholdBytes, indexer);
+    }
+
+    /**
+     * Stores the result of an image, replacing any earlier one. Returns once the result is durable and indexed.
+     *
+     * @param imagePath  The absolute path of the image.
+     * @param capturedAt When the image was taken.
+     * @param result     The encoded result.
+     * @throws IOException If the result could not be written.
+     */
+    void put(String imagePath, long capturedAt, byte[] result) throws IOException {
+        submit(new Mutation(TYPE_PUT, imagePath, capturedAt, result, false));
+    }
+
+    /**
+     * Stores the result of an image unless the journal already holds one. The check and the write are atomic with
+     * respect to all other mutations.
+     *
+     * @return {@code true} if the result was stored.
+     * @throws IOException If the result could not be written.
+     */
+    boolean putIfAbsent(String imagePath, long capturedAt, byte[] result) throws IOException {
+        return submit(new Mutation(TYPE_PUT, imagePath, capturedAt, result, true));
+    }
+
+    /**
+     * Removes an image. Returns once the removal is durable and indexed.
+     *
+     * @throws IOException If the removal could not be written.
+     */
+    void delete(String imagePath) throws IOException {
+        submit(new Mutation(TYPE_DELETE, imagePath, 0, null, false));
+    }
+
+    /**
+     * @param imagePath The absolute path of an image.
+     * @return The image, or {@code null} if the journal holds no result for it.
+     */
+    Record get(String imagePath) {
+        Location location = index.get(imagePath);
+        return location != null ? new Record(imagePath, location.capturedAt) : null;
+    }
+
+    /**
+     * Reads the latest durable result of an image from its segment.
+     *
+     * @param imagePath The absolute path of an image.
+     * @return The encoded result, or {@code null} if the journal holds no result for it.
+     * @throws IOException If the result cannot be read.
+     */
+    byte[] read(String imagePath) throws IOException {
+        Location location = index.get(imagePath);
+        while (location != null) {
+            try {
+                return location.segment.read(location.offset, location.length);
+            } catch (ClosedChannelException e) {
+                // A compaction moved the result and retired the segment, unless this thread was interrupted
+                Location moved = index.get(imagePath);
+                if (moved == location) {
+                    throw e;
+                }
+                location = moved;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return All images in the journal at the moment of the call.
+     */
+    List<Record> records() {
+        List<Record> records = new ArrayList<>(index.size());
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            records.add(new Record(entry.getKey(), entry.getValue().capturedAt));
+        }
+        return records;
+    }
+
+    /**
+     * @return The number of syncs so far, each of which made a whole batch of mutations durable.
+     */
+    long getSyncCount() {
+        return syncCount.get();
+    }
+
+    RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    /**
+     * Waits until a compaction that is running has finished.
+     */
+    void awaitCompaction() throws IOException {
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes all queued mutations, waits for a running compaction and closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Nothing is queued behind the close, see submit()
+            queue.add(CLOSE);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        awaitCompaction();
+        compactor.shutdown();
+        for (Segment segment : logSegments.values()) {
+            segment.retire();
+        }
+        Segment snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.retire();
+        }
+    }
+
+    private boolean submit(Mutation mutation) throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                throw new IOException("The garden journal is closed");
+            }
+            queue.add(mutation);
+        }
+        try {
+            mutation.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the garden journal");
+        }
+        if (mutation.failure != null) {
+            throw mutation.failure;
+        }
+        return mutation.applied;
+    }
+
+    private void writeLoop() {
+        List<Mutation> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // Only close() stops the writer
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            // The close is always the last mutation that is queued
+            closing = batch.remove(CLOSE);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            if (!closing) {
+                maybeCompact();
+            }
+        }
+        try {
+            log.close();
+        } catch (IOException ignored) {
+            // Everything written has been synced
+        }
+    }
+
+    /**
+     * Writes a batch with a single sync, then indexes it and releases its callers.
+     */
+    private void writeBatch(List<Mutation> batch) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Map<String, Boolean> presentInBatch = new HashMap<>();
+        List<Mutation> written = new ArrayList<>(batch.size());
+        List<Long> resultOffsets = new ArrayList<>(batch.size());
+        try {
+            for (Mutation mutation : batch) {
+                Boolean present = presentInBatch.get(mutation.imagePath);
+                boolean exists = present != null ? present : index.containsKey(mutation.imagePath);
+                if (mutation.onlyIfAbsent && exists) {
+                    continue;
+                }
+                long recordOffset = buffer.size();
+                resultOffsets.add(recordOffset + writeRecord(buffer, mutation.type, mutation.imagePath,
+                        mutation.capturedAt, mutation.result));
+                presentInBatch.put(mutation.imagePath, mutation.type == TYPE_PUT);
+                written.add(mutation);
+            }
+        } catch (IOException e) {
+            fail(batch, e);
+            return;
+        }
+
+        long start = -1;
+        if (!written.isEmpty()) {
+            try {
+                start = log.position();
+                ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                while (bytes.hasRemaining()) {
+                    log.write(bytes);
+                }
+                log.force(false);
+                syncCount.incrementAndGet();
+                logBytes.addAndGet(buffer.size());
+            } catch (IOException e) {
+                discardPartialWrite(start);
+                fail(batch, e);
+                return;
+            }
+        }
+
+        Segment segment = logSegments.get(logGeneration);
+        List<Change> changes = new ArrayList<>(written.size());
+        for (int i = 0; i < written.size(); i++) {
+            Mutation mutation = written.get(i);
+            if (mutation.type == TYPE_PUT) {
+                index.put(mutation.imagePath, new Location(segment, start + resultOffsets.get(i),
+                        mutation.result.length, mutation.capturedAt));
+            } else {
+                index.remove(mutation.imagePath);
+            }
+            boolean deleted = mutation.type == TYPE_DELETE;
+            changes.add(new Change(mutation.imagePath, mutation.capturedAt, deleted, deleted ? null : mutation.result));
+            mutation.applied = true;
+        }
+        if (!changes.isEmpty()) {
+            try {
+                indexer.index(changes);
+            } catch (RuntimeException e) {
+                // The batch is durable, an index that missed it catches up from records() after the next open
+            }
+        }
+        for (Mutation mutation : batch) {
+            mutation.done.countDown();
+        }
+    }
+
+    /**
+     * Removes the remains of a failed write, so that the records appended after it can still be replayed. If the
+     * log cannot be truncated, the writer moves on to a new log.
+     */
+    private void discardPartialWrite(long start) {
+        try {
+            if (start >= 0) {
+                log.truncate(start);
+                log.position(start);
+                return;
+            }
+        } catch (IOException ignored) {
+            // Fall through to a new log
+        }
+        try {
+            rotateLog();
+        } catch (IOException ignored) {
+            // The next batch will fail as well and try again
+        }
+    }
+
+    private static void fail(List<Mutation> batch, IOException failure) {
+        for (Mutation mutation : batch) {
+            mutation.failure = failure;
+            mutation.done.countDown();
+        }
+    }
+
+    /**
+     * Starts a compaction in the background if the logs have outgrown both the threshold and the last snapshot,
+     * so that the snapshot is rewritten at most about once per its own size of mutations.
+     */
+    private void maybeCompact() {
+        long size = logBytes.get();
+        if (compacting || size < compactionThresholdBytes || size < snapshotBytes) {
+            return;
+        }
+        long coveredGeneration = logGeneration;
+        try {
+            rotateLog();
+        } catch (IOException e) {
+            return;
+        }
+        compacting = true;
+        // The writer is the only thread adding to the index, so this copy is exactly the state up to the covered log
+        Map<String, Location> locations = new HashMap<>(index);
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(locations, coveredGeneration);
+            } catch (IOException ignored) {
+                // The logs stay in place and the next compaction tries again
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    private void rotateLog() throws IOException {
+        File next = logFile(logGeneration + 1);
+        FileChannel channel = new FileOutputStream(next, true).getChannel();
+        logSegments.put(logGeneration + 1, new Segment(next));
+        log.close();
+        log = channel;
+        logGeneration++;
+    }
+
+    /**
+     * Copies the results of the given locations into a new snapshot, points the index at the copies of the results
+     * that have not been replaced in the meantime, and deletes the files the snapshot supersedes.
+     */
+    private void writeSnapshot(Map<String, Location> locations, long coveredGeneration) throws IOException {
+        File file = snapshotFile(coveredGeneration);
+        File temporary = new File(directory, file.getName() + TEMPORARY_SUFFIX);
+        Segment segment = new Segment(file);
+        Map<String, Location> moved = new HashMap<>(locations.size());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            DataOutputStream header = new DataOutputStream(buffer);
+            header.writeInt(SNAPSHOT_MAGIC);
+            header.writeLong(coveredGeneration);
+            long flushed = 0;
+            for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                Location location = entry.getValue();
+                byte[] result = location.segment.read(location.offset, location.length);
+                long recordOffset = flushed + buffer.size();
+                long resultOffset = writeRecord(buffer, TYPE_PUT, entry.getKey(), location.capturedAt, result);
+                moved.put(entry.getKey(), new Location(segment, recordOffset + resultOffset, result.length,
+                        location.capturedAt));
+                if (buffer.size() >= 64 * 1024) {
+                    flushed += buffer.size();
+                    buffer.writeTo(out);
+                    buffer.reset();
+                }
+            }
+            buffer.writeTo(out);
+            out.getChannel().force(false);
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not create " + file);
+        }
+
+        for (Map.Entry<String, Location> entry : moved.entrySet()) {
+            // Results the writer has replaced or deleted since the copy are not moved back
+            index.replace(entry.getKey(), locations.get(entry.getKey()), entry.getValue());
+        }
+        Segment previous = snapshot;
+        snapshot = segment;
+        snapshotBytes = file.length();
+
+        if (previous != null) {
+            previous.retire();
+            previous.file.delete();
+        }
+        Map<Long, Segment> covered = logSegments.headMap(coveredGeneration, true);
+        for (Segment log : new ArrayList<>(covered.values())) {
+            log.retire();
+            long length = log.file.length();
+            if (log.file.delete()) {
+                logBytes.addAndGet(-length);
+            }
+        }
+        covered.clear();
+    }
+
+    /**
+     * Reads the latest snapshot and the logs after it into the index, deletes files that are no longer needed and
+     * chooses the generation of the new log.
+     */
+    private RecoveryStats replay() throws IOException {
+        int replayed = 0;
+        long discarded = 0;
+        File[] temporaries = directory.listFiles((dir, name) -> name.endsWith(TEMPORARY_SUFFIX));
+        if (temporaries != null) {
+            for (File temporary : temporaries) {
+                temporary.delete();
+            }
+        }
+
+        long coveredGeneration = -1;
+        List<File> snapshots = numberedFiles(SNAPSHOT_PREFIX);
+        if (!snapshots.isEmpty()) {
+            File file = snapshots.get(snapshots.size() - 1);
+            Segment segment = new Segment(file);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a garden journal snapshot: " + file);
+                }
+                coveredGeneration = in.readLong();
+                long[] counts = replayRecords(in, segment, SNAPSHOT_HEADER_LENGTH, file.length());
+                replayed += (int) counts[0];
+                discarded += counts[1];
+            }
+            snapshot = segment;
+            snapshotBytes = file.length();
+            // Left behind by a compaction that was interrupted after its snapshot had been written
+            for (File older : snapshots.subList(0, snapshots.size() - 1)) {
+                older.delete();
+            }
+        }
+
+        long lastGeneration = coveredGeneration;
+        for (File file : numberedFiles(LOG_PREFIX)) {
+            long generation = generationOf(LOG_PREFIX, file.getName());
+            if (generation <= coveredGeneration) {
+                // Left behind by a compaction that was interrupted after its snapshot had been written
+                file.delete();
+                continue;
+            }
+            Segment segment = new Segment(file);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                long[] counts = replayRecords(in, segment, 0, file.length());
+                replayed += (int) counts[0];
+                discarded += counts[1];
+            }
+            logSegments.put(generation, segment);
+            logBytes.addAndGet(file.length());
+            lastGeneration = Math.max(lastGeneration, generation);
+        }
+        logGeneration = lastGeneration + 1;
+        return new RecoveryStats(replayed, discarded);
+    }
+
+    /**
+     * Indexes the records of a segment until its end or its first incomplete or damaged record.
+     *
+     * @param in       The segment, positioned at {@code start}.
+     * @param segment  The segment that is read.
+     * @param start    The offset of the first record within the segment.
+     * @param length   The length of the segment.
+     * @return The number of indexed records and the number of bytes that were not part of one.
+     */
+    private long[] replayRecords(DataInputStream in, Segment segment, long start, long length) throws IOException {
+        long count = 0;
+        long position = start;
+        CRC32 crc = new CRC32();
+        while (true) {
+            int contentLength;
+            int checksum;
+            byte[] content;
+            try {
+                contentLength = in.readInt();
+                if (contentLength <= 0 || contentLength > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                checksum = in.readInt();
+                content = new byte[contentLength];
+                in.readFully(content);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(content, 0, content.length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (!indexContent(content, segment, position + RECORD_HEADER_LENGTH)) {
+                break;
+            }
+            count++;
+            position += RECORD_HEADER_LENGTH + contentLength;
+        }
+        return new long[]{count, Math.max(0, length - position)};
+    }
+
+    private boolean indexContent(byte[] content, Segment segment, long contentOffset) {
+        ByteBuffer in = ByteBuffer.wrap(content);
+        try {
+            byte type = in.get();
+            String imagePath = readString(in);
+            if (type == TYPE_PUT) {
+                long capturedAt = in.getLong();
+                int resultLength = in.getInt();
+                if (resultLength < 0 || resultLength != in.remaining()) {
+                    return false;
+                }
+                index.put(imagePath, new Location(segment, contentOffset + in.position(), resultLength, capturedAt));
+            } else if (type == TYPE_DELETE) {
+                index.remove(imagePath);
+            } else {
+                return false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // The checksum matched but the content does not parse, written by something else
+            return false;
+        }
+    }
+
+    /**
+     * Appends a record to a buffer.
+     *
+     * @return The offset of the result within the record, or -1 for a deletion.
+     */
+    private static long writeRecord(ByteArrayOutputStream out, byte type, String imagePath, long capturedAt,
+                                    byte[] result) throws IOException {
+        ByteArrayOutputStream contentBytes = new ByteArrayOutputStream(64 + (result != null ? result.length : 0));
+        DataOutputStream content = new DataOutputStream(contentBytes);
+        content.writeByte(type);
+        byte[] path = imagePath.getBytes(StandardCharsets.UTF_8);
+        content.writeInt(path.length);
+        content.write(path);
+        long resultOffset = -1;
+        if (type == TYPE_PUT) {
+            content.writeLong(capturedAt);
+            content.writeInt(result.length);
+            resultOffset = RECORD_HEADER_LENGTH + contentBytes.size();
+            content.write(result);
+        }
+        if (contentBytes.size() > MAX_RECORD_LENGTH) {
+            throw new IOException("Record of " + imagePath + " is too large");
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] bytes = contentBytes.toByteArray();
+        crc.update(bytes, 0, bytes.length);
+        DataOutputStream record = new DataOutputStream(out);
+        record.writeInt(bytes.length);
+        record.writeInt((int) crc.getValue());
+        record.write(bytes);
+        return resultOffset;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private File logFile(long generation) {
+        return new File(directory, LOG_PREFIX + generation);
+    }
+
+    private File snapshotFile(long coveredGeneration) {
+        return new File(directory, SNAPSHOT_PREFIX + coveredGeneration);
+    }
+
+    /** The files of the directory named with the prefix and a generation, oldest first. */
+    private List<File> numberedFiles(String prefix) {
+        File[] files = directory.listFiles((dir, name) -> generationOf(prefix, name) >= 0);
+        List<File> numbered = new ArrayList<>();
+        if (files != null) {
+            Collections.addAll(numbered, files);
+        }
+        Collections.sort(numbered, (a, b) -> Long.compare(generationOf(prefix, a.getName()),
+                generationOf(prefix, b.getName())));
+        return numbered;
+    }
+
+    private static long generationOf(String prefix, String name) {
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.plant_aid.myGardenHelper;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Loads the thumbnails and summaries of the rows the user is about to scroll to, so that rows come into view with
+ * their image and text already in memory instead of showing placeholders.
+ *
+ * <p>Added as a scroll listener of the garden list. On every scroll event, the {@link PrefetchPlanner} picks the rows
+ * ahead of the visible ones in the direction of the scroll, more of them the faster the user scrolls. For each row,
+ * the thumbnail is preloaded into Glide's memory cache with the {@link GardenRecyclerAdapter#thumbnailRequest same
+ * request} the row is bound with. The summary comes with the entry from the garden index; only for an entry
+ * without one is it {@link SummaryLoader#prefetch prefetched} into the summary cache. When the user reverses, the
+ * prefetches that are still pending are cancelled, as those rows are now moving away.</p>
+ *
+ * <p>Only used on the main thread.</p>
+ */
+public final class GardenPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * The prefetch of one row, kept until the row comes into view or the prefetch is cancelled.
+     */
+    private static final class Pending {
+        final int position;
+        final Target<Drawable> thumbnail;
+        final SummaryLoader.Request summary;
+
+        Pending(int position, Target<Drawable> thumbnail, SummaryLoader.Request summary) {
+            this.position = position;
+            this.thumbnail = thumbnail;
+            this.summary = summary;
+        }
+    }
+
+    private final RequestManager requestManager;
+    private final GardenRecyclerAdapter adapter;
+    private final LinearLayoutManager layoutManager;
+    private final SummaryLoader summaryLoader;
+    private final PrefetchPlanner planner = new PrefetchPlanner();
+
+    // In the order they were started, the row closest to the visible ones first
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private int direction;
+
+    private long prefetchedRows;
+    private long cancelledRows;
+
+    /**
+     * @param context       The context of the list, which the thumbnail loads are tied to.
+     * @param adapter       The adapter of the list.
+     * @param layoutManager The layout manager of the list.
+     * @param summaryLoader The loader the rows get their summaries from.
+     */
+    public GardenPrefetcher(Context context, GardenRecyclerAdapter adapter, LinearLayoutManager layoutManager,
+                            SummaryLoader summaryLoader) {
+        this.requestManager = Glide.with(context);
+        this.adapter = adapter;
+        this.layoutManager = layoutManager;
+        this.summaryLoader = summaryLoader;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        View firstRow = layoutManager.findViewByPosition(firstVisible);
+        int rowHeight = firstRow != null ? firstRow.getHeight() : 0;
+
+        PrefetchPlanner.Plan plan = planner.onScrolled(dy, SystemClock.uptimeMillis(), firstVisible, lastVisible,
+                rowHeight, adapter.getItemCount());
+        if (plan.directionChanged) {
+            cancel();
+        } else {
+            forgetReached(firstVisible, lastVisible);
+        }
+        if (plan != PrefetchPlanner.Plan.NONE) {
+            direction = plan.direction;
+        }
+        for (int i = 0; i < plan.count; i++) {
+            prefetch(plan.positionAt(i));
+        }
+    }
+
+    private void prefetch(int position) {
+        GardenEntry entry = adapter.getEntry(position);
+        Target<Drawable> thumbnail = adapter.thumbnailRequest(entry).preload();
+        SummaryLoader.Request summary = entry.summary == null ? summaryLoader.prefetch(entry) : null;
+        pending.add(new Pending(position, thumbnail, summary));
+        prefetchedRows++;
+    }
+
+    /**
+     * Drops the prefetches of rows that have come into view or been scrolled past: their rows are bound by now, and
+     * a preload releases its thumbnail to the memory cache by itself once it has finished.
+     */
+    private void forgetReached(int firstVisible, int lastVisible) {
+        Iterator<Pending> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next().position;
+            boolean reached = direction > 0 ? position <= lastVisible : position >= firstVisible;
+            if (!reached) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Cancels the prefetches that are still pending, when the user reverses or the list goes away.
+     */
+    public void cancel() {
+        for (Pending prefetch : pending) {
+            requestManager.clear(prefetch.thumbnail);
+            if (prefetch.summary != null) {
+                prefetch.summary.cancel();
+            }
+        }
+        cancelledRows += pending.size();
+        pending.clear();
+    }
+
+    /**
+     * @return The number of rows prefetched so far.
+     */
+    public long getPrefetchedRows() {
+        return prefetchedRows;
+    }
+
+    /**
+     * @return The number of row prefetches cancelled so far, some of which may have finished already.
+     */
+    public long getCancelledRows() {
+        return cancelledRows;
+    }
+}
@@ -3,7 +3,7 @@ package com.example.plant_aid.myGardenHelper;
 import static android.content.Intent.getIntent;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,28 +14,54 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 import com.example.plant_aid.R;
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+import com.example.plant_aid.cameraHelper.RenditionStore;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * Adapter class for the RecyclerView that displays garden images and their analysis results.
- * This adapter manages the data model containing the image paths and interacts with the RecyclerView
- * to display each image and its corresponding analysis result.
+ * This adapter manages the data model containing the garden entries and interacts with the RecyclerView
+ * to display each image and the summary of its analysis result.
+ *
+ * <p>The garden is handed to the adapter page by page, see {@link #appendPage(List)}. Each entry of a page carries
+ * the {@link GardenEntry#summary summary} of its result from the garden index, so a row is bound from its entry
+ * alone, without reading the result. Only an entry indexed before the index kept summaries has none; its row asks
+ * the {@link SummaryLoader} for it, binds at once if the summary is cached, and otherwise shows the date alone until
+ * the summary has been loaded in the background. A row cancels its load when it is recycled or bound to another
+ * entry.</p>
+ *
+ * <p>While the list is shown, the changes of the garden are applied one entry at a time, see
+ * {@link #applyChange(GardenRepository.Change, boolean)}: a new entry is inserted where it belongs in the order of
+ * the garden, a removed one is taken out, and an updated one takes the new summary and only has it bound again.
+ * Every item has the {@link GardenEntry#getStableId() stable ID} of its entry, so RecyclerView keeps track of the
+ * rows across these changes.</p>
  *
  * <p>The adapter also supports click events on items through an OnItemClickListener, allowing the application
- * to respond when a user clicks on an item in the list.</p>
+ * to respond when a user clicks on an item in the list. The listener is handed the entry the row is bound to, not
+ * its position, which changes as entries are inserted above it.</p>
  */
 public class GardenRecyclerAdapter extends RecyclerView.Adapter<GardenRecyclerAdapter.ViewHolder> {
 
+    /** The payload of a change that only affects the summary of a row, so its thumbnail is left alone. */
+    private static final Object PAYLOAD_SUMMARY = new Object();
+
     private Context context;
-    private ArrayList<String> imagePaths;
-    private SharedPreferences sharedPreferences;
+    private final SummaryLoader summaryLoader;
+    private final int thumbnailSize;
+    private final DateFormat dateFormat;
+    // In the order of the garden, see GardenEntry.NEWEST_FIRST
+    private final List<GardenEntry> entries = new ArrayList<>();
+    private final Map<String, GardenEntry> entriesByPath = new HashMap<>();
 
     private OnItemClickListener onitemClickListener;
 
@@ -47,13 +73,92 @@ public class GardenRecyclerAdapter extends RecyclerView.Adapter<GardenRecyclerAd
      * Constructs a new GardenRecyclerAdapter.
      *
      * @param context The context, typically the activity, where the RecyclerView is being displayed.
-     * @param imagePaths A list of image paths for the garden images to be displayed.
-     * @param sharedPreferences The SharedPreferences instance for accessing stored analysis results.
+     * @param summaryLoader Loads the summaries of the rows, delivering them on the main thread.
      */
-    public GardenRecyclerAdapter(Context context, ArrayList<String> imagePaths, SharedPreferences sharedPreferences) {
+    public GardenRecyclerAdapter(Context context, SummaryLoader summaryLoader) {
         this.context = context;
-        this.imagePaths = imagePaths;
-        this.sharedPreferences = sharedPreferences;
+        this.summaryLoader = summaryLoader;
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.garden_thumbnail_size);
+        this.dateFormat = android.text.format.DateFormat.getMediumDateFormat(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Appends a page of the garden to the end of the list. Entries that are already listed, because their change
+     * was applied while the page was loading, are skipped.
+     *
+     * @param page The entries of the page, in the order of the garden.
+     */
+    public void appendPage(List<GardenEntry> page) {
+        int start = entries.size();
+        for (GardenEntry entry : page) {
+            if (!entriesByPath.containsKey(entry.imagePath)) {
+                entries.add(entry);
+                entriesByPath.put(entry.imagePath, entry);
+            }
+        }
+        notifyItemRangeInserted(start, entries.size() - start);
+    }
+
+    /**
+     * Applies a change of the garden to the list, notifying RecyclerView of the affected item only. A change without
+     * a summary, whose result could not be read, is bound through the {@link SummaryLoader}, in which the summary of
+     * the entry must have been invalidated before.
+     *
+     * @param change         The change.
+     * @param allPagesLoaded Whether the list holds the whole garden. If not, a new entry older than the last listed
+     *                       one is left to the page that is going to load it.
+     */
+    public void applyChange(GardenRepository.Change change, boolean allPagesLoaded) {
+        GardenEntry listed = entriesByPath.get(change.entry.imagePath);
+        if (change.deleted) {
+            if (listed != null) {
+                int position = positionOf(listed);
+                entries.remove(position);
+                entriesByPath.remove(listed.imagePath);
+                notifyItemRemoved(position);
+            }
+        } else if (listed != null) {
+            // The entry keeps its place and capture time, only its result has changed
+            int position = positionOf(listed);
+            GardenEntry updated = listed.withSummary(change.entry.summary);
+            entries.set(position, updated);
+            entriesByPath.put(updated.imagePath, updated);
+            notifyItemChanged(position, PAYLOAD_SUMMARY);
+        } else {
+            int position = -Collections.binarySearch(entries, change.entry, GardenEntry.NEWEST_FIRST) - 1;
+            if (position < entries.size() || allPagesLoaded) {
+                entries.add(position, change.entry);
+                entriesByPath.put(change.entry.imagePath, change.entry);
+                notifyItemInserted(position);
+            }
+        }
+    }
+
+    private int positionOf(GardenEntry listed) {
+        return Collections.binarySearch(entries, listed, GardenEntry.NEWEST_FIRST);
+    }
+
+    /**
+     * @param position The position of an item.
+     * @return The garden entry shown at the position.
+     */
+    GardenEntry getEntry(int position) {
+        return entries.get(position);
+    }
+
+    /**
+     * Builds the request for the thumbnail of an entry at the exact size of the row's image, so that a
+     * {@link GardenPrefetcher prefetch} and the later bind share one entry of Glide's memory cache.
+     *
+     * @param entry The entry.
+     * @return The request, without a target.
+     */
+    RequestBuilder<Drawable> thumbnailRequest(GardenEntry entry) {
+        return Glide.with(context)
+                .load(new RenditionStore.Key(entry.imagePath, RenditionStore.SizeClass.THUMBNAIL))
+                .override(thumbnailSize)
+                .centerCrop();
     }
 
     /**
@@ -67,13 +172,20 @@ public class GardenRecyclerAdapter extends RecyclerView.Adapter<GardenRecyclerAd
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.image_item_layout, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        holder.itemView.setOnClickListener(clicked -> {
+            if (onitemClickListener != null && holder.entry != null) {
+                onitemClickListener.onItemClick(holder.entry);
+            }
+        });
+        return holder;
     }
 
     /**
      * Called by RecyclerView to display the data at the specified position. This method updates the contents
-     * of the {@link ViewHolder#imageView} to reflect the image at the given position and sets the analysis
-     * result text in {@link ViewHolder#textView}.
+     * of the {@link ViewHolder#imageView} to show the thumbnail rendition of the image at the given position, made
+     * at capture time or, for older entries, on first display, see {@link RenditionStore}, and sets the summary of the
+     * analysis result and the capture date in {@link ViewHolder#textView}, from the entry itself.
      *
      * @param holder The ViewHolder which should be updated to represent the contents of the item at the given
      *               position in the data set.
@@ -81,63 +193,84 @@ public class GardenRecyclerAdapter extends RecyclerView.Adapter<GardenRecyclerAd
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        String imagePath = imagePaths.get(position);
+        GardenEntry entry = entries.get(position);
+        holder.entry = entry;
 
-        Glide.with(context)
-                .load(imagePath)
+        thumbnailRequest(entry)
                 .placeholder(R.drawable.placeholder_image)
-                .centerCrop()
                 .into(holder.imageView);
 
 
-        String analysisResultFilePath = sharedPreferences.getString(imagePath, "");
-        String analysisResult = readAnalysisResultFromFile(analysisResultFilePath);
-        holder.textView.setText(analysisResult);
+        bindSummary(holder, entry);
+    }
 
+    /**
+     * Binds an item again after a change of its entry. For a change of the result alone, only the summary is bound
+     * again, so the thumbnail does not flicker.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.stream().allMatch(payload -> payload == PAYLOAD_SUMMARY)) {
+            bindSummary(holder, entries.get(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
 
-        holder.itemView.setOnClickListener(view -> {
-            if (onitemClickListener != null) {
-                onitemClickListener.onItemClick(position);
-            }
-        });
+    private void bindSummary(ViewHolder holder, GardenEntry entry) {
+        // The row may still be waiting for the summary of the entry it showed before
+        holder.cancelSummaryRequest();
+        if (entry.summary != null) {
+            holder.textView.setText(rowText(entry, entry.summary));
+            return;
+        }
+        holder.textView.setText(rowText(entry, null));
+        holder.summaryRequest = summaryLoader.load(entry, summary -> holder.textView.setText(rowText(entry, summary)));
     }
+
     /**
-     * Reads the analysis result from a file specified by the filePath.
-     *
-     * @param filePath The path of the file containing the analysis result.
-     * @return A string representing the content of the file.
+     * @return The text of a row: the diagnosis and confidence, if known, above the date the image was taken.
      */
-    private String readAnalysisResultFromFile(String filePath) {
-        StringBuilder result = new StringBuilder();
-        try {
-            FileInputStream fis = new FileInputStream(filePath);
-            InputStreamReader inputStreamReader = new InputStreamReader(fis);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
-            }
-            fis.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return result.toString();
+    private String rowText(GardenEntry entry, AnalysisResult summary) {
+        String date = dateFormat.format(new Date(entry.capturedAt));
+        return summary != null ? summary.toSummaryText() + "\n" + date : date;
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        holder.cancelSummaryRequest();
     }
 
     @Override
     public int getItemCount() {
-        return imagePaths.size();
+        return entries.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return entries.get(position).getStableId();
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
         ImageView imageView;
         TextView textView;
+        /** The entry the row is bound to, {@code null} until it is bound for the first time. */
+        GardenEntry entry;
+        /** The load of the summary shown by this row, {@code null} once it has been delivered from the cache. */
+        SummaryLoader.Request summaryRequest;
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
             imageView = itemView.findViewById(R.id.itemImageView);
             textView = itemView.findViewById(R.id.itemTextView);
         }
+
+        void cancelSummaryRequest() {
+            if (summaryRequest != null) {
+                summaryRequest.cancel();
+                summaryRequest = null;
+            }
+        }
     }
 }
@@ -0,0 +1,595 @@
+package com.example.plant_aid.myGardenHelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+import com.example.plant_aid.analysisHelper.AnalysisResultCodec;
+import com.example.plant_aid.analysisHelper.AnalysisResultParser;
+import com.example.plant_aid.analysisHelper.LegacyResultConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores the entries of the user's garden: the path of each analysed image and its analysis result.
+ *
+ * <p>The analysis results, encoded by {@link AnalysisResultCodec}, are kept in the {@link GardenJournal}, which
+ * makes every change of the garden durable with a single append, and shares one sync among a burst of captures.
+ * The entries are indexed in the {@link GardenDatabase} by image path and capture time, and read page by page,
+ * newest first, see {@link #loadPage(GardenEntry, int)}. Every change of the garden goes through the journal's
+ * single writer thread, which indexes each durable batch in one database transaction, in the order it was written;
+ * concurrent uploads therefore never lose or reorder an update. If the app dies between the sync and the
+ * transaction, the database is brought in line with the journal the next time the app starts. Every indexed batch
+ * is announced to the {@link ChangeListener}s, so the garden screen updates the rows it affects while it is open.
+ * Answers of the server are parsed into an {@link AnalysisResult} once, when they are stored, and the
+ * {@link AnalysisResult#toListSummary() list summary} of every stored result is kept in the database along with
+ * its entry, so the garden list binds its rows from the pages alone. Only the screen of an entry loads the
+ * {@link #loadResult(String) whole result}.</p>
+ *
+ * <p>Earlier versions kept the garden in the "MyGardenPrefs" {@link SharedPreferences} and stored each result in an
+ * {@code analysis_*} file, as raw text or encoded. {@link #migrateInBackground(Context)} imports the preferences
+ * once and moves the result files into the journal; until the import is done, reads of the garden wait for it. It
+ * then fills in the summaries of the entries that were indexed before the database kept them.</p>
+ *
+ * <p>The repository only depends on a {@link Context}, so garden entries can be written from activities
+ * as well as from background work such as the upload outbox. Its methods access the disk and should not be
+ * called on the main thread.</p>
+ */
+public class GardenRepository {
+
+    /** The preferences which held the garden before it moved to the {@link GardenDatabase}. */
+    private static final String PREFS_NAME = "MyGardenPrefs";
+
+    private static final String TAG = "GardenRepository";
+
+    private static final String PREFS_KEY_IMAGE_PATHS = "imagePaths";
+
+    /** How long a read waits for the import of the preferences before it answers from the database as it is. */
+    private static final long MIGRATION_WAIT_SECONDS = 10;
+
+    /** The directory of the journal within the app's private file directory. */
+    private static final String JOURNAL_DIRECTORY = "garden_journal";
+
+    /** The size of the journal's logs beyond which they are compacted into a snapshot. */
+    private static final long JOURNAL_COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+
+    /** The number of entries whose summary is filled in per database query, see {@link #indexMissingSummaries()}. */
+    private static final int SUMMARY_BATCH_SIZE = 100;
+
+    /**
+     * Serialises deletions with the reconciliation and the migration, which decide from what they read whether an
+     * entry still exists, so that a deleted entry is never brought back. Updates need no lock.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    /**
+     * A change of one entry of the garden, as announced to {@link ChangeListener}s.
+     */
+    public static final class Change {
+        /**
+         * The entry as it was written. For an update of an existing entry, its capture time is the one passed
+         * with the update, while the garden keeps the entry's original capture time.
+         */
+        public final GardenEntry entry;
+        /** Whether the entry was removed rather than added or updated. */
+        public final boolean deleted;
+
+        Change(GardenEntry entry, boolean deleted) {
+            this.entry = entry;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * Receives the changes of the garden once they are durable and indexed, so that a screen showing the garden can
+     * update the affected rows instead of reloading it.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on the journal's writer thread, or on the thread reconciling the garden at start-up, for every
+         * batch of changes in the order they were written. Must return quickly, as the writers of the batch wait
+         * for it.
+         *
+         * @param changes The changes of one batch.
+         */
+        void onGardenChanged(List<Change> changes);
+    }
+
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private static final AtomicBoolean migrationStarted = new AtomicBoolean();
+    private static final CountDownLatch importDone = new CountDownLatch(1);
+
+    /** Opened by the first repository that needs it and kept open for the life of the process. */
+    private static GardenJournal sharedJournal;
+
+    private final Context context;
+    private final GardenDatabase database;
+
+    /**
+     * Creates a repository for the garden.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     */
+    public GardenRepository(Context context) {
+        this.context = context.getApplicationContext();
+        this.database = GardenDatabase.getInstance(this.context);
+    }
+
+    /**
+     * Opens the journal on a background thread and brings the database in line with it, then starts the one-time
+     * migration of the garden of earlier versions: the entries in the "MyGardenPrefs" preferences are imported
+     * into the database, then the result files are moved into the journal. Does nothing after the first call of
+     * the process, and nothing but a few cheap queries once everything has been migrated.
+     *
+     * @param context Any context of the application.
+     */
+    public static void migrateInBackground(Context context) {
+        if (!migrationStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        new Thread(() -> {
+            GardenRepository repository = new GardenRepository(applicationContext);
+            try {
+                repository.reconcileWithJournal();
+                repository.importPreferences();
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not prepare the garden", e);
+            } finally {
+                importDone.countDown();
+            }
+            repository.moveResultFilesIntoJournal();
+            repository.indexMissingSummaries();
+        }, "garden-migration").start();
+    }
+
+    /**
+     * Returns the journal of the garden, opening and replaying it on first use.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static synchronized GardenJournal journal(Context context) throws IOException {
+        if (sharedJournal == null) {
+            GardenDatabase database = GardenDatabase.getInstance(context);
+            sharedJournal = GardenJournal.open(new File(context.getFilesDir(), JOURNAL_DIRECTORY),
+                    JOURNAL_COMPACTION_THRESHOLD_BYTES, changes -> index(database, changes));
+            GardenJournal.RecoveryStats stats = sharedJournal.getRecoveryStats();
+            Log.i(TAG, "Replayed " + stats.replayedRecords + " journal records");
+            if (stats.discardedBytes > 0) {
+                Log.w(TAG, "Discarded " + stats.discardedBytes + " bytes of an interrupted journal write");
+            }
+        }
+        return sharedJournal;
+    }
+
+    /**
+     * Indexes changes of the journal with the summaries of their results, deletes the result files of earlier
+     * versions they supersede and announces them to the {@link ChangeListener}s. Called on the journal's writer
+     * thread for every batch, and by the reconciliation.
+     */
+    private static void index(GardenDatabase database, List<GardenJournal.Change> changes) {
+        // Each result is summarised once here, from the bytes just written, rather than on every bind of its row
+        List<AnalysisResult> summaries = new ArrayList<>(changes.size());
+        for (GardenJournal.Change change : changes) {
+            summaries.add(summarize(change));
+        }
+        try {
+            for (String resultFilePath : database.applyJournalChanges(changes, summaries)) {
+                new File(resultFilePath).delete();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not index " + changes.size() + " garden changes", e);
+            return;
+        }
+        if (changeListeners.isEmpty()) {
+            return;
+        }
+        List<Change> announced = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            GardenJournal.Change change = changes.get(i);
+            announced.add(new Change(new GardenEntry(change.imagePath, GardenEntry.IN_JOURNAL, change.capturedAt,
+                    summaries.get(i)), change.deleted));
+        }
+        announced = Collections.unmodifiableList(announced);
+        for (ChangeListener listener : changeListeners) {
+            try {
+                listener.onGardenChanged(announced);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "A garden change listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return The list summary of the result stored by a change, or {@code null} for a deletion or a result that
+     *         cannot be read.
+     */
+    private static AnalysisResult summarize(GardenJournal.Change change) {
+        if (change.result == null) {
+            return null;
+        }
+        try {
+            return AnalysisResultCodec.readSummary(new ByteArrayInputStream(change.result)).toListSummary();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not summarise the analysis result of " + change.imagePath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Starts announcing the changes of the garden to a listener, see {@link ChangeListener}.
+     *
+     * @param listener The listener, to be removed with {@link #removeChangeListener(ChangeListener)}.
+     */
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Stops announcing the changes of the garden to a listener.
+     *
+     * @param listener A listener added before.
+     */
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Blocks until the preferences have been imported, if the import is running.
+     */
+    private static void awaitImport() {
+        if (!migrationStarted.get()) {
+            return;
+        }
+        try {
+            if (!importDone.await(MIGRATION_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Garden import is taking long, reading the garden as it is");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds an entry for an image whose analysis is still outstanding. The entry has the status
+     * {@link AnalysisResult.Status#PENDING} until {@link #updateMyGarden(String, String)} stores the real result.
+     *
+     * @param imagePath The absolute path of the image that is waiting for analysis.
+     */
+    public void addPendingEntry(String imagePath) {
+        updateMyGarden(imagePath, AnalysisResult.pending(0));
+    }
+
+    /**
+     * Records that no result could be obtained for an image.
+     *
+     * @param imagePath The absolute path of the image.
+     * @param reason    A user-readable description, shown instead of a diagnosis.
+     */
+    public void markFailed(String imagePath, String reason) {
+        updateMyGarden(imagePath, AnalysisResult.failed(reason, System.currentTimeMillis(), 0));
+    }
+
+    /**
+     * Updates the garden with the answer of the analysis server for an image. The answer is parsed by
+     * {@link AnalysisResultParser} and stored as with {@link #updateMyGarden(String, AnalysisResult)}.
+     *
+     * @param imagePath The absolute path of the image that was analyzed.
+     * @param analysisResult The body of the server's response.
+     */
+    public void updateMyGarden(String imagePath, String analysisResult) {
+        updateMyGarden(imagePath, AnalysisResultParser.parse(analysisResult, System.currentTimeMillis(), 0));
+    }
+
+    /**
+     * Updates the garden by saving the analysis result of an image and its path.
+     *
+     * The analysis result is encoded and appended to the journal, whose writer thread adds the entry of the image
+     * to the garden database, or points the existing entry at the journal and deletes the result file an earlier
+     * version wrote for it. Returns once the result is durable and indexed. Safe to call from any number of threads
+     * at once.
+     *
+     * @param imagePath The absolute path of the image that was analyzed, which identifies the entry in the garden.
+     * @param analysisResult The result of the image analysis. If it does not know when the image was taken, the
+     *                       modification time of the image is used, or the current time if the image has not been
+     *                       written yet.
+     */
+    public void updateMyGarden(String imagePath, AnalysisResult analysisResult) {
+        if (analysisResult.capturedAt == 0) {
+            long lastModified = new File(imagePath).lastModified();
+            analysisResult = analysisResult.withCapturedAt(lastModified > 0 ? lastModified : System.currentTimeMillis());
+        }
+        try {
+            journal(context).put(imagePath, analysisResult.capturedAt, encode(analysisResult));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not store the analysis result of " + imagePath, e);
+        }
+    }
+
+    /**
+     * Removes an image from the garden. The image itself is left in place.
+     *
+     * @param imagePath The absolute path of the image.
+     */
+    public void deleteEntry(String imagePath) {
+        synchronized (WRITE_LOCK) {
+            try {
+                journal(context).delete(imagePath);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not delete the garden entry of " + imagePath, e);
+            }
+        }
+    }
+
+    /**
+     * Loads a page of the garden, newest first.
+     *
+     * @param after The last entry of the previous page, or {@code null} for the first page.
+     * @param limit The maximum number of entries.
+     * @return The entries following {@code after}; fewer than {@code limit} on the last page.
+     */
+    public List<GardenEntry> loadPage(GardenEntry after, int limit) {
+        awaitImport();
+        return database.page(after, limit);
+    }
+
+    /**
+     * @return The number of entries in the garden.
+     */
+    public int getEntryCount() {
+        awaitImport();
+        return database.count();
+    }
+
+    /**
+     * @param imagePath The absolute path of an image.
+     * @return The entry of the image, or {@code null} if it is not part of the garden.
+     */
+    public GardenEntry getEntry(String imagePath) {
+        awaitImport();
+        return database.get(imagePath);
+    }
+
+    /**
+     * @param imagePath The absolute path of an image.
+     * @return Whether the image is part of the garden, with a result or pending.
+     */
+    public boolean hasEntry(String imagePath) {
+        return getEntry(imagePath) != null;
+    }
+
+    /**
+     * @param imagePath The absolute path of an image.
+     * @return Whether the image is part of the garden and still waits for its analysis.
+     */
+    public boolean isPending(String imagePath) {
+        // Answered from the summary in the database
+        AnalysisResult summary = loadSummary(imagePath);
+        return summary != null && summary.status == AnalysisResult.Status.PENDING;
+    }
+
+    /**
+     * Loads what the garden list shows of an entry: its status, headline diagnosis, confidence and timestamps.
+     *
+     * @param imagePath The absolute path of the analysed image.
+     * @return The {@link AnalysisResult#toListSummary() list summary}, or {@code null} if the image is not part of
+     *         the garden or its result cannot be read.
+     */
+    public AnalysisResult loadSummary(String imagePath) {
+        GardenEntry entry = getEntry(imagePath);
+        return entry != null ? loadSummary(entry) : null;
+    }
+
+    /**
+     * Loads the summary of an entry of a page, without looking the entry up again. The summary is normally part of
+     * the entry already; only for an entry indexed before the database kept summaries is the result read, and its
+     * summary stored in the database for the next time.
+     *
+     * @param entry An entry returned by {@link #loadPage(GardenEntry, int)}.
+     * @return The summary, or {@code null} if the result cannot be read.
+     */
+    public AnalysisResult loadSummary(GardenEntry entry) {
+        if (entry.summary != null) {
+            return entry.summary;
+        }
+        AnalysisResult result = load(entry, true);
+        if (result == null) {
+            return null;
+        }
+        AnalysisResult summary = result.toListSummary();
+        database.putSummary(entry.imagePath, summary);
+        return summary;
+    }
+
+    /**
+     * Loads the whole result of an entry, including recommendations and details.
+     *
+     * @param imagePath The absolute path of the analysed image.
+     * @return The result, or {@code null} if the image is not part of the garden or its result cannot be read.
+     */
+    public AnalysisResult loadResult(String imagePath) {
+        GardenEntry entry = getEntry(imagePath);
+        return entry != null ? load(entry, false) : null;
+    }
+
+    private AnalysisResult load(GardenEntry entry, boolean summaryOnly) {
+        File resultFile = new File(entry.resultFilePath);
+        try {
+            if (entry.isInJournal()) {
+                byte[] encoded = journal(context).read(entry.imagePath);
+                if (encoded == null) {
+                    // Deleted since the entry was read
+                    return null;
+                }
+                InputStream in = new ByteArrayInputStream(encoded);
+                return summaryOnly ? AnalysisResultCodec.readSummary(in) : AnalysisResultCodec.read(in);
+            }
+            if (LegacyResultConverter.isLegacy(entry.resultFilePath)) {
+                return LegacyResultConverter.convertFile(resultFile, entry.capturedAt);
+            }
+            return summaryOnly ? AnalysisResultCodec.readSummaryFile(resultFile) : AnalysisResultCodec.readFile(resultFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the analysis result of " + entry.imagePath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Imports the entries of the "MyGardenPrefs" preferences into the database and clears the preferences.
+     * Entries that are already in the database keep their newer result.
+     *
+     * @return The number of imported entries.
+     */
+    int importPreferences() {
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> imagePaths = preferences.getStringSet(PREFS_KEY_IMAGE_PATHS, null);
+        if (imagePaths == null) {
+            return 0;
+        }
+
+        List<GardenEntry> entries = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            String resultFilePath = preferences.getString(imagePath, "");
+            if (resultFilePath.isEmpty()) {
+                continue;
+            }
+            long capturedAt = new File(imagePath).lastModified();
+            if (capturedAt == 0) {
+                capturedAt = new File(resultFilePath).lastModified();
+            }
+            entries.add(new GardenEntry(imagePath, resultFilePath, capturedAt));
+        }
+        int imported;
+        synchronized (WRITE_LOCK) {
+            imported = database.putAllIfAbsent(entries);
+        }
+        // The preferences hold nothing but the garden, see AppSettings
+        if (!preferences.edit().clear().commit()) {
+            Log.w(TAG, "Could not clear the garden preferences, they will be imported again");
+        }
+        Log.i(TAG, "Imported " + imported + " of " + imagePaths.size() + " garden entries from the preferences");
+        return imported;
+    }
+
+    /**
+     * Brings the database in line with the journal after the app died between a sync of the journal and the
+     * transaction indexing it: results in the journal whose entry is missing or still points at a result file are
+     * indexed, and entries pointing at the journal without a result there are removed.
+     *
+     * @return The number of changes that were indexed.
+     * @throws IOException If the journal cannot be opened.
+     */
+    int reconcileWithJournal() throws IOException {
+        GardenJournal journal = journal(context);
+        synchronized (WRITE_LOCK) {
+            List<GardenJournal.Change> changes = new ArrayList<>();
+            for (GardenJournal.Record record : journal.records()) {
+                GardenEntry entry = database.get(record.imagePath);
+                if (entry == null || !entry.isInJournal()) {
+                    changes.add(new GardenJournal.Change(record.imagePath, record.capturedAt, false,
+                            journal.read(record.imagePath)));
+                }
+            }
+            for (GardenEntry entry : database.withResultPath(GardenEntry.IN_JOURNAL)) {
+                if (journal.get(entry.imagePath) == null) {
+                    changes.add(new GardenJournal.Change(entry.imagePath, 0, true, null));
+                }
+            }
+            if (!changes.isEmpty()) {
+                index(database, changes);
+                Log.i(TAG, "Indexed " + changes.size() + " changes to match the journal");
+            }
+            return changes.size();
+        }
+    }
+
+    /**
+     * Moves the results of the files written by earlier versions into the journal and deletes the files. Text
+     * results are converted on the way. Entries that are updated in the meantime keep their new result. Runs once
+     * per start of the app, in the background, and is cheap once nothing is left to move.
+     *
+     * @return The number of moved results.
+     */
+    int moveResultFilesIntoJournal() {
+        List<GardenEntry> entries = new ArrayList<>(
+                database.withResultExtension(LegacyResultConverter.LEGACY_EXTENSION));
+        entries.addAll(database.withResultExtension(AnalysisResultCodec.FILE_EXTENSION));
+        int moved = 0;
+        for (GardenEntry entry : entries) {
+            AnalysisResult result = load(entry, false);
+            if (result == null) {
+                continue;
+            }
+            synchronized (WRITE_LOCK) {
+                try {
+                    if (database.get(entry.imagePath) == null) {
+                        // Deleted while the file was read
+                        continue;
+                    }
+                    // The writer indexes the moved result and deletes the file
+                    GardenJournal journal = journal(context);
+                    if (!journal.putIfAbsent(entry.imagePath, entry.capturedAt, encode(result))) {
+                        // A result stored in the meantime is newer than the file, which is left over
+                        index(database, Collections.singletonList(new GardenJournal.Change(entry.imagePath,
+                                entry.capturedAt, false, journal.read(entry.imagePath))));
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not move " + entry.resultFilePath + " into the journal", e);
+                    continue;
+                }
+            }
+            moved++;
+        }
+        if (moved > 0) {
+            Log.i(TAG, "Moved " + moved + " result files into the journal");
+        }
+        return moved;
+    }
+
+    /**
+     * Stores the summaries of the entries that were indexed before the database kept them, batch by batch. Entries
+     * whose result cannot be read are skipped; the garden list reads their summary when it shows them. Runs once
+     * per start of the app, in the background, and is a single query once every entry has its summary.
+     *
+     * @return The number of summaries stored.
+     */
+    int indexMissingSummaries() {
+        int stored = 0;
+        String after = null;
+        List<GardenEntry> batch;
+        do {
+            batch = database.withoutSummary(after, SUMMARY_BATCH_SIZE);
+            for (GardenEntry entry : batch) {
+                AnalysisResult result = load(entry, true);
+                if (result != null && database.putSummary(entry.imagePath, result.toListSummary())) {
+                    stored++;
+                }
+                after = entry.imagePath;
+            }
+        } while (batch.size() == SUMMARY_BATCH_SIZE);
+        if (stored > 0) {
+            Log.i(TAG, "Stored the summaries of " + stored + " garden entries");
+        }
+        return stored;
+    }
+
+    private static byte[] encode(AnalysisResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnalysisResultCodec.write(result, out);
+        return out.toByteArray();
+    }
+}
@@ -1,5 +1,5 @@
 package com.example.plant_aid.myGardenHelper;
 
 public interface OnItemClickListener {
-    void onItemClick(int position);
+    void onItemClick(GardenEntry entry);
 }
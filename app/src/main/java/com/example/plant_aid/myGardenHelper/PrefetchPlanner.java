@@ -0,0 +1,127 @@
+package com.example.plant_aid.myGardenHelper;
+
+/**
+ * Decides which rows of the garden list to prefetch as the user scrolls, see {@link GardenPrefetcher}.
+ *
+ * <p>The rows ahead of the visible ones, in the direction of the scroll, are prefetched. How many depends on the
+ * measured scroll velocity: enough rows to cover {@link #LOOKAHEAD_MILLIS} of scrolling at the current speed, between
+ * {@link #MIN_ROWS} and {@link #MAX_ROWS}. The velocity is smoothed over the scroll events, so a single jerky event
+ * does not swing the window. Every row is planned once per direction; when the direction changes, the velocity and
+ * the planned rows are forgotten and the plan reports it, so the rows planned for the old direction can be
+ * cancelled.</p>
+ *
+ * <p>Pure bookkeeping, without any Android dependency, so it can be tested on the JVM.</p>
+ */
+final class PrefetchPlanner {
+
+    /** The rows prefetched even at the slowest scroll, enough for a small drag. */
+    static final int MIN_ROWS = 3;
+
+    /** The most rows prefetched at once, so that a fling does not queue up work for rows it passes in a blur. */
+    static final int MAX_ROWS = 30;
+
+    /** How far ahead of the scroll the prefetched rows reach, in time. */
+    static final long LOOKAHEAD_MILLIS = 1000;
+
+    /** The weight of a new velocity sample in the smoothed velocity. */
+    private static final double SMOOTHING = 0.3;
+
+    /** A pause between scroll events beyond which the velocity is measured afresh. */
+    private static final long MAX_SAMPLE_GAP_MILLIS = 200;
+
+    /**
+     * The rows to prefetch after one scroll event.
+     */
+    static final class Plan {
+        static final Plan NONE = new Plan(0, 0, 0, false);
+
+        /** The first row to prefetch, the one closest to the visible rows. */
+        final int first;
+        /** The number of rows to prefetch, going on from {@link #first} in the direction of the scroll. */
+        final int count;
+        /** 1 when scrolling towards the end of the list, -1 towards its start. */
+        final int direction;
+        /** Whether the direction changed with this event, making the earlier plans obsolete. */
+        final boolean directionChanged;
+
+        Plan(int first, int count, int direction, boolean directionChanged) {
+            this.first = first;
+            this.count = count;
+            this.direction = direction;
+            this.directionChanged = directionChanged;
+        }
+
+        /**
+         * @param i An index between 0 and {@link #count}.
+         * @return The position of the {@code i}-th row to prefetch.
+         */
+        int positionAt(int i) {
+            return first + i * direction;
+        }
+    }
+
+    private int direction;
+    private long lastEventAt = -1;
+    private double pixelsPerMilli;
+    /** The row beyond the last one planned in the current direction. */
+    private int frontier;
+
+    /**
+     * Plans the prefetch for one scroll event.
+     *
+     * @param dy           The distance scrolled, positive towards the end of the list.
+     * @param now          The time of the event, in milliseconds of a monotonic clock.
+     * @param firstVisible The position of the first visible row.
+     * @param lastVisible  The position of the last visible row.
+     * @param rowHeight    The height of a row in pixels, 0 if unknown.
+     * @param itemCount    The number of rows in the list.
+     * @return The rows to prefetch, none if the list did not move or every row ahead was planned before.
+     */
+    Plan onScrolled(int dy, long now, int firstVisible, int lastVisible, int rowHeight, int itemCount) {
+        if (dy == 0 || firstVisible < 0 || lastVisible < 0) {
+            return Plan.NONE;
+        }
+        int newDirection = dy > 0 ? 1 : -1;
+        boolean directionChanged = direction != 0 && newDirection != direction;
+        if (newDirection != direction) {
+            direction = newDirection;
+            pixelsPerMilli = 0;
+            frontier = direction > 0 ? lastVisible + 1 : firstVisible - 1;
+        } else if (lastEventAt >= 0 && now > lastEventAt) {
+            double sample = (double) Math.abs(dy) / (now - lastEventAt);
+            boolean fresh = pixelsPerMilli == 0 || now - lastEventAt > MAX_SAMPLE_GAP_MILLIS;
+            pixelsPerMilli = fresh ? sample : pixelsPerMilli + SMOOTHING * (sample - pixelsPerMilli);
+        }
+        lastEventAt = now;
+
+        int rows = getRowsAhead(rowHeight);
+        int first;
+        int end;
+        if (direction > 0) {
+            first = Math.max(lastVisible + 1, frontier);
+            end = Math.min(itemCount, lastVisible + 1 + rows);
+            frontier = Math.max(frontier, end);
+        } else {
+            first = Math.min(firstVisible - 1, frontier);
+            end = Math.max(-1, firstVisible - 1 - rows);
+            frontier = Math.min(frontier, end);
+        }
+        int count = Math.max(0, (end - first) * direction);
+        if (count == 0 && !directionChanged) {
+            return Plan.NONE;
+        }
+        return new Plan(first, count, direction, directionChanged);
+    }
+
+    /**
+     * @param rowHeight The height of a row in pixels, 0 if unknown.
+     * @return The number of rows ahead of the visible ones that the current velocity calls for.
+     */
+    int getRowsAhead(int rowHeight) {
+        if (rowHeight <= 0) {
+            return MIN_ROWS;
+        }
+        long rows = (long) Math.ceil(pixelsPerMilli * LOOKAHEAD_MILLIS / rowHeight);
+        return (int) Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows));
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.plant_aid.myGardenHelper;
+
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Loads the summaries of garden entries for the garden list on a background thread, and keeps the most recently
+ * used ones in memory, keyed by image path.
+ *
+ * <p>A row asks for the summary of its entry when it is bound. A cached summary is handed over at once, before
+ * {@link #load} returns, so the row never shows the placeholder; otherwise the summary is loaded in the background
+ * and delivered through the callback executor, normally the main thread. A row that is recycled or bound to another
+ * entry cancels its {@link Request}: a load that has not started yet is skipped, and a finished one is not
+ * delivered, so a fling does not queue up work for rows that have left the screen and a late summary never lands
+ * in the wrong row.</p>
+ *
+ * <p>The cache holds at most the given number of summaries and evicts the least recently used one when it is full.
+ * Hits and misses are counted, see {@link #getHitRate()}. Rows that are about to be shown can be
+ * {@link #prefetch prefetched} into the cache; prefetches are not counted, so the hit rate tells how often a row
+ * found its summary ready.</p>
+ */
+public final class SummaryLoader {
+
+    /**
+     * Receives a summary on the callback executor.
+     */
+    public interface Callback {
+        /**
+         * @param summary The summary, or {@code null} if the result of the entry cannot be read.
+         */
+        void onSummaryLoaded(AnalysisResult summary);
+    }
+
+    /**
+     * A load for one row, created and cancelled on the callback executor's thread.
+     */
+    public static final class Request {
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        /**
+         * Skips the load if it has not started yet, and drops its summary otherwise.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final Function<GardenEntry, AnalysisResult> source;
+    private final Executor callbackExecutor;
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "garden-summary-loader"));
+    private final int maxEntries;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, AnalysisResult> cache;
+
+    private long hits;
+    private long misses;
+    /** Counts {@link #invalidate} calls, so a load that overlapped one does not cache what it read. */
+    private long invalidations;
+    private volatile boolean shutDown;
+
+    /**
+     * Creates a loader with an empty cache.
+     *
+     * @param source           Loads the summary of an entry, or returns {@code null} if it cannot be read. Called on
+     *                         the loader's background thread.
+     * @param maxEntries       The number of summaries kept before the least recently used one is evicted.
+     * @param callbackExecutor Delivers loaded summaries, normally to the main thread.
+     */
+    public SummaryLoader(Function<GardenEntry, AnalysisResult> source, int maxEntries, Executor callbackExecutor) {
+        this.source = source;
+        this.callbackExecutor = callbackExecutor;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<String, AnalysisResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AnalysisResult> eldest) {
+                return size() > SummaryLoader.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Hands the summary of an entry to the callback: at once if it is cached, otherwise once it has been loaded.
+     *
+     * @param entry    The entry of the row.
+     * @param callback Receives the summary, on the calling thread for a cached summary and on the callback
+     *                 executor otherwise.
+     * @return The request, to be cancelled when the row no longer shows the entry, or {@code null} if the summary
+     *         was cached and has already been handed over.
+     */
+    public Request load(GardenEntry entry, Callback callback) {
+        AnalysisResult cached;
+        synchronized (this) {
+            cached = cache.get(entry.imagePath);
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (cached != null) {
+            callback.onSummaryLoaded(cached);
+            return null;
+        }
+
+        return submit(entry, callback);
+    }
+
+    /**
+     * Loads a summary on the background thread and caches it.
+     *
+     * @param callback Receives the summary on the callback executor, or {@code null} to only cache it.
+     */
+    private Request submit(GardenEntry entry, Callback callback) {
+        Request request = new Request();
+        if (shutDown) {
+            request.cancelled = true;
+            return request;
+        }
+        request.future = loadExecutor.submit(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            long invalidationsBefore;
+            AnalysisResult summary;
+            synchronized (this) {
+                // Not counted: a bind counted its lookup already, and a prefetch is not counted at all
+                summary = cache.get(entry.imagePath);
+                invalidationsBefore = invalidations;
+            }
+            if (summary == null) {
+                summary = source.apply(entry);
+                synchronized (this) {
+                    if (summary != null && invalidations == invalidationsBefore) {
+                        cache.put(entry.imagePath, summary);
+                    }
+                }
+            }
+            if (callback == null) {
+                return;
+            }
+            AnalysisResult loaded = summary;
+            callbackExecutor.execute(() -> {
+                if (!request.cancelled && !shutDown) {
+                    callback.onSummaryLoaded(loaded);
+                }
+            });
+        });
+        return request;
+    }
+
+    /**
+     * Loads the summary of an entry into the cache ahead of its row being bound, unless it is cached already.
+     *
+     * @param entry The entry of a row that is about to be shown.
+     * @return The request, to be cancelled if the row is no longer expected to be shown, or {@code null} if the
+     *         summary is cached already.
+     */
+    public Request prefetch(GardenEntry entry) {
+        synchronized (this) {
+            // Not a use of the summary, so it neither counts nor moves up in the LRU order
+            if (cache.containsKey(entry.imagePath)) {
+                return null;
+            }
+        }
+        return submit(entry, null);
+    }
+
+    /**
+     * Drops the cached summary of an entry whose result has changed.
+     *
+     * @param imagePath The absolute path of the image.
+     */
+    public synchronized void invalidate(String imagePath) {
+        cache.remove(imagePath);
+        invalidations++;
+    }
+
+    /**
+     * @return The number of cached summaries.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return The number of loads answered from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return The number of loads that had to read the summary.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return The share of loads answered from the cache, between 0 and 1, or 0 before the first load.
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Stops loading and delivering summaries, once the list is gone.
+     */
+    public void shutdown() {
+        shutDown = true;
+        loadExecutor.shutdownNow();
+    }
+}
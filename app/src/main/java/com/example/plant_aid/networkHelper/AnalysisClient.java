@@ -0,0 +1,194 @@
+package com.example.plant_aid.networkHelper;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.plant_aid.AppSettings;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP client for communicating with the analysis backend.
+ *
+ * <p>A single {@link OkHttpClient} is created for the lifetime of the process, so all uploads share one
+ * connection pool and one dispatcher. Connections to the backend are kept alive between captures and
+ * {@link #prewarm()} can be used to open a connection ahead of the first upload, so that the upload does
+ * not have to pay for the TCP (and TLS) handshake.</p>
+ *
+ * <p>The endpoint is read from {@link AppSettings#getAnalysisUrl()} for every request, so changing the
+ * setting takes effect without restarting the application.</p>
+ */
+public final class AnalysisClient {
+
+    private static final String TAG = "AnalysisClient";
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static volatile AnalysisClient instance;
+
+    private final AppSettings appSettings;
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final OkHttpClient httpClient;
+    private final UploadBatcher uploadBatcher;
+
+    private AnalysisClient(Context context) {
+        appSettings = new AppSettings(context);
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        dispatcher = new Dispatcher();
+        httpClient = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(30, TimeUnit.SECONDS) // Set connection timeout
+                .readTimeout(30, TimeUnit.SECONDS) // Set read timeout
+                .eventListenerFactory(BandwidthEstimator.getInstance().eventListenerFactory())
+                .build();
+        uploadBatcher = new UploadBatcher(httpClient, this::getAnalysisUrl,
+                appSettings.getBatchWindowMillis(), appSettings.getBatchMaxSize());
+    }
+
+    /**
+     * Returns the process-wide client, creating it on first use.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     * @return The shared client.
+     */
+    public static AnalysisClient getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnalysisClient.class) {
+                if (instance == null) {
+                    instance = new AnalysisClient(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return The configured URL of the analysis endpoint.
+     */
+    public HttpUrl getAnalysisUrl() {
+        return HttpUrl.get(appSettings.getAnalysisUrl());
+    }
+
+    /**
+     * Creates a call which posts the given body to the analysis endpoint.
+     *
+     * @param requestBody The multipart body carrying the image(s) to analyse.
+     * @return A call that has not been executed yet.
+     */
+    public Call newAnalysisCall(RequestBody requestBody) {
+        Request request = new Request.Builder()
+                .url(getAnalysisUrl())
+                .post(requestBody)
+                .build();
+        return httpClient.newCall(request);
+    }
+
+    /**
+     * Creates a call which uploads a single image to the analysis endpoint as the multipart field {@code image}.
+     *
+     * @param payload The processed image to analyse, streamed from memory or from its file.
+     * @return A call that has not been executed yet.
+     */
+    public Call newImageAnalysisCall(UploadPayload payload) {
+        RequestBody requestBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("image", payload.getFileName(), payload.toRequestBody())
+                .build();
+        return newAnalysisCall(requestBody);
+    }
+
+    /**
+     * @return The process-wide batcher which coalesces uploads when {@link AppSettings#isBatchUploads()} is set.
+     */
+    public UploadBatcher getUploadBatcher() {
+        return uploadBatcher;
+    }
+
+    /**
+     * Opens a connection to the analysis backend in the background, unless an idle one is already pooled.
+     *
+     * <p>A {@code HEAD} request is sent to the root of the backend's origin; its response is discarded, but
+     * the connection it used stays in the pool and is reused by the next upload.</p>
+     */
+    public void prewarm() {
+        if (connectionPool.idleConnectionCount() > 0) {
+            return;
+        }
+
+        HttpUrl originUrl;
+        try {
+            originUrl = getAnalysisUrl().newBuilder().encodedPath("/").query(null).build();
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid analysis URL: " + appSettings.getAnalysisUrl(), e);
+            return;
+        }
+
+        Request request = new Request.Builder().url(originUrl).head().build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.d(TAG, "Pre-warming the connection failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                logStats();
+            }
+        });
+    }
+
+    /**
+     * @return The number of open connections, idle or in use.
+     */
+    public int getConnectionCount() {
+        return connectionPool.connectionCount();
+    }
+
+    /**
+     * @return The number of open connections that are currently idle.
+     */
+    public int getIdleConnectionCount() {
+        return connectionPool.idleConnectionCount();
+    }
+
+    /**
+     * @return The number of calls that are currently executing.
+     */
+    public int getRunningCallsCount() {
+        return dispatcher.runningCallsCount();
+    }
+
+    /**
+     * @return The number of calls waiting for a free slot in the dispatcher.
+     */
+    public int getQueuedCallsCount() {
+        return dispatcher.queuedCallsCount();
+    }
+
+    /**
+     * Logs the current pool and dispatcher statistics.
+     */
+    public void logStats() {
+        Log.d(TAG, String.format(Locale.US, "connections=%d idle=%d running=%d queued=%d",
+                getConnectionCount(), getIdleConnectionCount(), getRunningCallsCount(), getQueuedCallsCount()));
+    }
+}
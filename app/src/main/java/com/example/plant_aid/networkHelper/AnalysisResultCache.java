@@ -0,0 +1,164 @@
+package com.example.plant_aid.networkHelper;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.plant_aid.AppSettings;
+import com.example.plant_aid.cameraHelper.ImageFingerprint;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide cache of analysis results, keyed by the fingerprints of the uploaded rendition.
+ *
+ * <p>Users often shoot the same leaf several times in a row. Before an upload is started, the cache is
+ * consulted with the content digest and the perceptual hash of the new rendition: a byte-identical rendition
+ * is found by its digest and, only if perceptual matching has been turned on, a near-identical one by a perceptual
+ * hash within the configured Hamming distance. On a hit, the stored result is reused and no request is sent.</p>
+ *
+ * <p>The cache holds at most {@link AppSettings#getResultCacheSize()} entries and evicts the least recently
+ * used one when it is full. Hits and misses are counted so that the hit rate can be checked in logcat.</p>
+ */
+public final class AnalysisResultCache {
+
+    private static final String TAG = "AnalysisResultCache";
+
+    private static volatile AnalysisResultCache instance;
+
+    private static final class Entry {
+        final long perceptualHash;
+        final String result;
+
+        Entry(long perceptualHash, String result) {
+            this.perceptualHash = perceptualHash;
+            this.result = result;
+        }
+    }
+
+    private final int maxEntries;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long exactHits;
+    private long perceptualHits;
+    private long misses;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries The number of results kept before the least recently used one is evicted.
+     */
+    AnalysisResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AnalysisResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the process-wide cache, creating it on first use.
+     *
+     * @param context Any context of the application, only used to read the cache size on first use.
+     * @return The shared cache.
+     */
+    public static AnalysisResultCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnalysisResultCache.class) {
+                if (instance == null) {
+                    instance = new AnalysisResultCache(new AppSettings(context).getResultCacheSize());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Looks up the result of a previously analysed rendition.
+     *
+     * @param contentDigest  The content digest of the new rendition.
+     * @param perceptualHash The perceptual hash of the new rendition.
+     * @param maxDistance    The largest Hamming distance at which two perceptual hashes are taken to show the
+     *                       same subject, or a negative value to only accept byte-identical renditions.
+     * @return The cached result, or {@code null} on a miss.
+     */
+    public synchronized String lookup(String contentDigest, long perceptualHash, int maxDistance) {
+        Entry exact = entries.get(contentDigest);
+        if (exact != null) {
+            exactHits++;
+            return exact.result;
+        }
+
+        if (maxDistance >= 0) {
+            String closestKey = null;
+            int closestDistance = Integer.MAX_VALUE;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                int distance = ImageFingerprint.hammingDistance(candidate.getValue().perceptualHash, perceptualHash);
+                if (distance <= maxDistance && distance < closestDistance) {
+                    closestKey = candidate.getKey();
+                    closestDistance = distance;
+                }
+            }
+            if (closestKey != null) {
+                perceptualHits++;
+                // Goes through get() to mark the entry as recently used
+                return entries.get(closestKey).result;
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores the result of an analysed rendition, evicting the least recently used entry if the cache is full.
+     *
+     * @param contentDigest  The content digest of the analysed rendition.
+     * @param perceptualHash The perceptual hash of the analysed rendition.
+     * @param result         The analysis result as returned by the server.
+     */
+    public synchronized void put(String contentDigest, long perceptualHash, String result) {
+        entries.put(contentDigest, new Entry(perceptualHash, result));
+    }
+
+    /**
+     * @return The number of cached results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of lookups answered by a byte-identical rendition.
+     */
+    public synchronized long getExactHitCount() {
+        return exactHits;
+    }
+
+    /**
+     * @return The number of lookups answered by a perceptually similar rendition.
+     */
+    public synchronized long getPerceptualHitCount() {
+        return perceptualHits;
+    }
+
+    /**
+     * @return The number of lookups that found no result.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Logs the current hit and miss counters.
+     */
+    public synchronized void logStats() {
+        Log.d(TAG, String.format(Locale.US, "entries=%d exactHits=%d perceptualHits=%d misses=%d",
+                entries.size(), exactHits, perceptualHits, misses));
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.plant_aid.networkHelper;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.plant_aid.AppSettings;
+import com.example.plant_aid.cameraHelper.ImagePreprocessor;
+import com.example.plant_aid.cameraHelper.ProcessedImage;
+import com.example.plant_aid.cameraHelper.UploadEncoder;
+import com.example.plant_aid.myGardenHelper.GardenRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Uploads processed images for analysis and stores the results in the garden.
+ *
+ * <p>Every upload goes through the {@link UploadOutbox}: the image is recorded as a job and shown as a
+ * pending garden entry before the request is sent, and the job is only removed once the real result has
+ * been stored with {@link GardenRepository#updateMyGarden(String, String)}. A failed upload stays in the
+ * outbox and is retried in the background by {@link UploadWorker}.</p>
+ *
+ * <p>The first attempt streams the rendition from memory. Only if it fails is the rendition written to the
+ * app's private outbox directory for the retries, and that file is deleted again once the job is done. A job
+ * whose rendition was never persisted, because the process died during the first attempt, is retried by
+ * deriving a new rendition from its garden image.</p>
+ *
+ * <p>If {@link AppSettings#isBatchUploads()} is set, new uploads are coalesced by the process-wide
+ * {@link UploadBatcher} and the result of each image is demultiplexed from the batch response.</p>
+ */
+public class AnalysisUploader {
+
+    private static final String TAG = "AnalysisUploader";
+
+    /** Result text stored for an image whose analysis could not be obtained after all retries. */
+    public static final String FAILED_RESULT = "The analysis could not be obtained from the server.";
+
+    /**
+     * Receives the outcome of an upload started with {@link #submit(String, UploadPayload, ResultListener)}.
+     * Methods are called on an OkHttp thread.
+     */
+    public interface ResultListener {
+        /**
+         * Called once the result has been stored in the garden.
+         *
+         * @param imagePath The absolute path of the analysed image.
+         * @param result    The analysis result as returned by the server.
+         */
+        void onAnalysisResult(String imagePath, String result);
+
+        /**
+         * Called when the upload failed and the job has been left in the outbox for a later retry.
+         *
+         * @param imagePath The absolute path of the image.
+         * @param reason    A short, user-readable description of the failure.
+         */
+        void onAnalysisDeferred(String imagePath, String reason);
+    }
+
+    private static final String OUTBOX_DIRECTORY = "outbox";
+
+    private final Context context;
+    private final AnalysisClient analysisClient;
+    private final UploadOutbox outbox;
+    private final GardenRepository gardenRepository;
+    private final AppSettings appSettings;
+
+    /**
+     * Creates an uploader.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     */
+    public AnalysisUploader(Context context) {
+        this.context = context.getApplicationContext();
+        this.analysisClient = AnalysisClient.getInstance(context);
+        this.outbox = UploadOutbox.getInstance(context);
+        this.gardenRepository = new GardenRepository(context);
+        this.appSettings = new AppSettings(context);
+    }
+
+    /**
+     * Records the image as pending and starts uploading it right away. An image that already shows a result, such as
+     * an on-device estimate, keeps it until the server's result replaces it.
+     *
+     * @param imagePath The absolute path of the garden image the result belongs to.
+     * @param payload   The upload rendition of the image.
+     * @param listener  Receives the outcome of this first attempt.
+     */
+    public void submit(String imagePath, UploadPayload payload, ResultListener listener) {
+        if (!gardenRepository.hasEntry(imagePath)) {
+            gardenRepository.addPendingEntry(imagePath);
+        }
+        File persisted = payload.getFile();
+        long jobId = outbox.enqueue(imagePath, persisted != null ? persisted.getAbsolutePath() : null);
+
+        // Safety net: if the process dies during the upload, the drainer picks the job up once its lease expires
+        scheduleNextDrain();
+
+        UploadBatcher.ResultCallback callback = new UploadBatcher.ResultCallback() {
+            @Override
+            public void onResult(String result) {
+                Log.d(TAG, "Analysis Result: " + result);
+                handleSuccess(jobId, imagePath, payload.getFile(), result);
+                listener.onAnalysisResult(imagePath, result);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                Log.w(TAG, "Analysis of " + imagePath + " failed: " + e.getMessage());
+                persistForRetry(jobId, payload);
+                handleFailure(jobId, imagePath, payload.getFile());
+                scheduleNextDrain();
+                listener.onAnalysisDeferred(imagePath, "Failed to send image for analysis, it will be retried.");
+            }
+        };
+
+        if (appSettings.isBatchUploads()) {
+            analysisClient.getUploadBatcher().add(payload, callback);
+            return;
+        }
+
+        Call call = analysisClient.newImageAnalysisCall(payload);
+        Log.d(TAG, "Sending image to server: " + call.request().url());
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                callback.onFailure(e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                String result;
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        throw new IOException("HTTP " + r.code());
+                    }
+                    result = Objects.requireNonNull(r.body()).string();
+                } catch (IOException e) {
+                    callback.onFailure(e);
+                    return;
+                }
+                callback.onResult(result);
+            }
+        });
+    }
+
+    /**
+     * Uploads a job claimed from the outbox and blocks until the result is stored or the attempt failed.
+     * Does not schedule further drains; that is left to the caller.
+     *
+     * @param job The job to run.
+     * @return {@code true} if the result has been stored in the garden.
+     */
+    boolean runJob(UploadOutbox.Job job) {
+        UploadPayload payload = payloadOf(job);
+        if (payload == null) {
+            Log.w(TAG, "Dropping job " + job.id + ", image no longer exists: " + job.imagePath);
+            outbox.complete(job.id);
+            return false;
+        }
+
+        try (Response response = analysisClient.newImageAnalysisCall(payload).execute()) {
+            if (response.isSuccessful()) {
+                handleSuccess(job.id, job.imagePath, payload.getFile(), Objects.requireNonNull(response.body()).string());
+                return true;
+            }
+            Log.w(TAG, "Retry of job " + job.id + " failed with HTTP " + response.code());
+        } catch (IOException e) {
+            Log.w(TAG, "Retry of job " + job.id + " failed: " + e.getMessage());
+        }
+        persistForRetry(job.id, payload);
+        handleFailure(job.id, job.imagePath, payload.getFile());
+        return false;
+    }
+
+    /**
+     * Finds the upload rendition of a job: the persisted file if there is one, otherwise a new rendition derived
+     * from the garden image.
+     *
+     * @return The payload, or {@code null} if neither the rendition nor the garden image exists.
+     */
+    private UploadPayload payloadOf(UploadOutbox.Job job) {
+        if (job.uploadPath != null && new File(job.uploadPath).exists()) {
+            return UploadPayload.ofFile(new File(job.uploadPath));
+        }
+        if (!new File(job.imagePath).exists()) {
+            return null;
+        }
+        // The capture already passed the quality gate, and had its renditions made, when it was taken
+        ProcessedImage processedImage = ImagePreprocessor.preprocess(job.imagePath,
+                UploadEncoder.forCurrentConditions(appSettings), null, false, null);
+        if (processedImage == null) {
+            return null;
+        }
+        return UploadPayload.ofBytes("processed_" + job.id + processedImage.encoded.fileExtension,
+                processedImage.encoded.mimeType, processedImage.encoded.buffer, processedImage.encoded.length);
+    }
+
+    /**
+     * Writes an in-memory rendition to the outbox directory so that the job can be retried after the process is gone.
+     * If writing fails, the job is left without a rendition and a new one is derived for the retry.
+     */
+    private void persistForRetry(long jobId, UploadPayload payload) {
+        if (payload.getFile() != null) {
+            return;
+        }
+        try {
+            File persisted = payload.persistTo(new File(context.getFilesDir(), OUTBOX_DIRECTORY));
+            outbox.setUploadPath(jobId, persisted.getAbsolutePath());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not persist the rendition of job " + jobId, e);
+        }
+    }
+
+    /**
+     * Schedules the background drainer for the moment the next outbox job becomes due, unless a drain is already
+     * due no later, see {@link UploadWorker#schedule(Context, long)}. Does not wait for WorkManager.
+     */
+    public void scheduleNextDrain() {
+        long nextAttemptAt = outbox.nextAttemptAt();
+        if (nextAttemptAt >= 0) {
+            UploadWorker.schedule(context, Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+        }
+    }
+
+    private void handleSuccess(long jobId, String imagePath, File uploadFile, String result) {
+        gardenRepository.updateMyGarden(imagePath, result);
+        outbox.complete(jobId);
+        deleteUploadFile(imagePath, uploadFile);
+    }
+
+    private void handleFailure(long jobId, String imagePath, File uploadFile) {
+        if (!outbox.recordFailure(jobId)) {
+            Log.w(TAG, "Giving up on job " + jobId + " after " + UploadOutbox.MAX_ATTEMPTS + " attempts");
+            // An on-device estimate is still better than no result at all
+            if (gardenRepository.isPending(imagePath)) {
+                gardenRepository.markFailed(imagePath, FAILED_RESULT);
+            }
+            deleteUploadFile(imagePath, uploadFile);
+        }
+    }
+
+    /**
+     * Deletes the rendition of a finished job, unless it is the garden image itself.
+     */
+    private static void deleteUploadFile(String imagePath, File uploadFile) {
+        if (uploadFile != null && !uploadFile.getAbsolutePath().equals(imagePath) && !uploadFile.delete()) {
+            Log.w(TAG, "Could not delete " + uploadFile);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.plant_aid.networkHelper;
+
+import androidx.annotation.NonNull;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Response;
+
+/**
+ * Estimates the current upload bandwidth from the timings of recent uploads.
+ *
+ * <p>The estimate is an exponentially weighted moving average of per-upload throughput samples, so it follows
+ * changing link conditions within a few uploads. What a sample measures depends on what the server reports:</p>
+ *
+ * <ul>
+ *     <li>If the response carries a {@code Server-Timing} header, a sample is the body size divided by the time
+ *     from the start of the body until the response headers arrived, less the longest duration the server reports.
+ *     That is the time the body took to cross the link plus one round trip, so the sample errs on the low
+ *     side.</li>
+ *     <li>Otherwise, the server's processing time cannot be told apart from the transfer, and only the time it took
+ *     to write the body is known. Most of a body of a few hundred kilobytes merely fills the kernel's socket send
+ *     buffer in that time, which overstates a slow link many times over. Such bodies are therefore only sampled
+ *     if they are much larger than a send buffer, see {@link #MIN_WRITE_SAMPLE_BYTES}.</li>
+ * </ul>
+ */
+public final class BandwidthEstimator {
+
+    private static final BandwidthEstimator INSTANCE = new BandwidthEstimator();
+
+    /** Bodies smaller than this take about one round trip whatever the link, and say little about it. */
+    private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+
+    /**
+     * Bodies smaller than this are not sampled by their write time alone: socket send buffers grow to a megabyte or
+     * more, and a body that fits into one is written at memory speed.
+     */
+    static final long MIN_WRITE_SAMPLE_BYTES = 4 * 1024 * 1024;
+
+    /** A duration of a {@code Server-Timing} metric, such as {@code analysis;dur=812.5}. */
+    private static final Pattern SERVER_TIMING_DURATION = Pattern.compile("(?i)\\bdur=\"?([0-9]+(?:\\.[0-9]+)?)");
+
+    /** Weight of the newest sample in the moving average. */
+    private static final double SMOOTHING = 0.3;
+
+    private double bytesPerSecond = -1;
+
+    private BandwidthEstimator() {
+    }
+
+    /**
+     * @return The process-wide estimator.
+     */
+    public static BandwidthEstimator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a measured upload to the estimate.
+     *
+     * @param bytes       The number of bytes uploaded.
+     * @param elapsedNanos The time it took to upload them.
+     */
+    public synchronized void record(long bytes, long elapsedNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || elapsedNanos <= 0) {
+            return;
+        }
+        double sample = bytes * 1e9 / elapsedNanos;
+        bytesPerSecond = bytesPerSecond < 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * bytesPerSecond;
+    }
+
+    /**
+     * @return The estimated upload bandwidth in bytes per second, or {@code -1} if nothing has been measured yet.
+     */
+    public synchronized double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Works out the time an upload spent on the link, see the class comment.
+     *
+     * @param bodyBytes           The size of the request body.
+     * @param bodyNanos           The time from the start of the body until it was written.
+     * @param untilHeadersNanos   The time from the start of the body until the response headers arrived.
+     * @param serverTimingHeader  The {@code Server-Timing} header of the response, or {@code null}.
+     * @return The time to sample the body with, or -1 if the upload gives no meaningful sample.
+     */
+    static long transferNanos(long bodyBytes, long bodyNanos, long untilHeadersNanos, String serverTimingHeader) {
+        double serverMillis = serverTimingMillis(serverTimingHeader);
+        if (serverMillis >= 0) {
+            long transfer = untilHeadersNanos - (long) (serverMillis * 1e6);
+            // A reported duration that leaves less time than writing the body took cannot be right
+            return transfer > bodyNanos / 2 ? transfer : -1;
+        }
+        return bodyBytes >= MIN_WRITE_SAMPLE_BYTES ? bodyNanos : -1;
+    }
+
+    /**
+     * @param header A {@code Server-Timing} header, or {@code null}.
+     * @return The longest duration it reports in milliseconds, which covers the others when they are nested, or -1
+     *         if it reports none.
+     */
+    static double serverTimingMillis(String header) {
+        if (header == null) {
+            return -1;
+        }
+        double longest = -1;
+        Matcher matcher = SERVER_TIMING_DURATION.matcher(header);
+        while (matcher.find()) {
+            longest = Math.max(longest, Double.parseDouble(matcher.group(1)));
+        }
+        return longest;
+    }
+
+    /**
+     * Creates an OkHttp event listener factory which feeds the timing of every upload into this estimator.
+     *
+     * @return The factory to install on the analysis client.
+     */
+    public EventListener.Factory eventListenerFactory() {
+        return call -> new EventListener() {
+            private long bodyStartNanos;
+            private long bodyBytes = -1;
+            private long bodyNanos;
+            private long headersNanos;
+
+            @Override
+            public void requestBodyStart(@NonNull Call call) {
+                bodyStartNanos = System.nanoTime();
+            }
+
+            @Override
+            public void requestBodyEnd(@NonNull Call call, long byteCount) {
+                bodyBytes = byteCount;
+                bodyNanos = System.nanoTime() - bodyStartNanos;
+            }
+
+            @Override
+            public void responseHeadersStart(@NonNull Call call) {
+                headersNanos = System.nanoTime() - bodyStartNanos;
+            }
+
+            @Override
+            public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+                if (bodyBytes < 0) {
+                    return;
+                }
+                long transfer = transferNanos(bodyBytes, bodyNanos, headersNanos, response.header("Server-Timing"));
+                if (transfer > 0) {
+                    record(bodyBytes, transfer);
+                }
+            }
+        };
+    }
+}
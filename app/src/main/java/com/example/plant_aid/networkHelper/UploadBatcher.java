@@ -0,0 +1,222 @@
+package com.example.plant_aid.networkHelper;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Coalesces images queued for analysis into multipart requests carrying several {@code image} parts.
+ *
+ * <p>Images added with {@link #add(UploadPayload, ResultCallback)} are collected until either
+ * {@code maxBatchSize} images are waiting or {@code windowMillis} have passed since the first of them was
+ * added, whichever comes first. The collected images are then sent as one request, so a user walking a row
+ * of plants causes one round trip and one server-side model invocation per batch instead of per photo.</p>
+ *
+ * <p>The response of a batch with more than one image must be JSON: either an array holding one result per
+ * image in the order of the parts, or an object mapping each part's filename to its result. A batch of a
+ * single image is sent exactly like an unbatched upload and its response body is used as-is. If a batch
+ * response cannot be demultiplexed, every image of the batch fails and is left to the outbox to retry.</p>
+ */
+public class UploadBatcher {
+
+    /**
+     * Receives the result for one image of a batch. Called on an OkHttp thread.
+     */
+    public interface ResultCallback {
+        void onResult(String result);
+
+        void onFailure(IOException e);
+    }
+
+    private static final class PendingImage {
+        final UploadPayload payload;
+        final ResultCallback callback;
+
+        PendingImage(UploadPayload payload, ResultCallback callback) {
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+
+    private final Call.Factory callFactory;
+    private final Supplier<HttpUrl> urlSupplier;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private List<PendingImage> pendingImages = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Creates a batcher.
+     *
+     * @param callFactory  The HTTP client used to send the batches.
+     * @param urlSupplier  Supplies the URL of the analysis endpoint at the time a batch is sent.
+     * @param windowMillis The longest time an image waits for further images to join its batch.
+     * @param maxBatchSize The number of images at which a batch is sent without waiting for the window to close.
+     */
+    public UploadBatcher(Call.Factory callFactory, Supplier<HttpUrl> urlSupplier, long windowMillis, int maxBatchSize) {
+        this.callFactory = callFactory;
+        this.urlSupplier = urlSupplier;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UploadBatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues an image for the next batch.
+     *
+     * @param payload  The processed image to analyse.
+     * @param callback Receives the result demultiplexed for this image.
+     */
+    public void add(UploadPayload payload, ResultCallback callback) {
+        boolean flushNow;
+        synchronized (this) {
+            pendingImages.add(new PendingImage(payload, callback));
+            flushNow = pendingImages.size() >= maxBatchSize;
+            if (!flushNow && scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends all queued images right away, without waiting for the window to close.
+     */
+    public void flush() {
+        List<PendingImage> batch;
+        synchronized (this) {
+            batch = pendingImages;
+            pendingImages = new ArrayList<>();
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @return The number of images waiting for their batch to be sent.
+     */
+    public synchronized int getPendingCount() {
+        return pendingImages.size();
+    }
+
+    private void send(List<PendingImage> batch) {
+        MultipartBody.Builder bodyBuilder = new MultipartBody.Builder().setType(MultipartBody.FORM);
+        List<String> filenames = new ArrayList<>();
+        for (PendingImage image : batch) {
+            filenames.add(image.payload.getFileName());
+            bodyBuilder.addFormDataPart("image", image.payload.getFileName(), image.payload.toRequestBody());
+        }
+
+        Request request = new Request.Builder()
+                .url(urlSupplier.get())
+                .post(bodyBuilder.build())
+                .build();
+        callFactory.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                failAll(batch, e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                List<String> results;
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful() || body == null) {
+                        throw new IOException("Batch request failed with HTTP " + response.code());
+                    }
+                    String content = body.string();
+                    results = batch.size() == 1 ? Collections.singletonList(content)
+                            : demultiplex(content, filenames);
+                } catch (IOException e) {
+                    failAll(batch, e);
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).callback.onResult(results.get(i));
+                }
+            }
+        });
+    }
+
+    private static void failAll(List<PendingImage> batch, IOException e) {
+        for (PendingImage image : batch) {
+            image.callback.onFailure(e);
+        }
+    }
+
+    /**
+     * Splits the response of a batch request into the results of its images.
+     *
+     * @param responseBody The JSON response of the server.
+     * @param filenames    The filenames of the image parts, in the order they were sent.
+     * @return One result per image, in the order of {@code filenames}. JSON strings are unquoted, any other
+     *         JSON value is returned in its JSON form.
+     * @throws IOException If the response does not contain a result for every image.
+     */
+    static List<String> demultiplex(String responseBody, List<String> filenames) throws IOException {
+        List<String> results = new ArrayList<>();
+        try {
+            Object parsed = new JSONTokener(responseBody).nextValue();
+            if (parsed instanceof JSONArray) {
+                JSONArray array = (JSONArray) parsed;
+                if (array.length() != filenames.size()) {
+                    throw new IOException("Expected " + filenames.size() + " results but got " + array.length());
+                }
+                for (int i = 0; i < array.length(); i++) {
+                    results.add(asResultString(array.get(i)));
+                }
+            } else if (parsed instanceof JSONObject) {
+                JSONObject object = (JSONObject) parsed;
+                for (String filename : filenames) {
+                    if (!object.has(filename)) {
+                        throw new IOException("No result for " + filename);
+                    }
+                    results.add(asResultString(object.get(filename)));
+                }
+            } else {
+                throw new IOException("Batch response is neither a JSON array nor an object");
+            }
+        } catch (JSONException e) {
+            throw new IOException("Batch response is not valid JSON", e);
+        }
+        return results;
+    }
+
+    private static String asResultString(Object value) {
+        return value instanceof String ? (String) value : String.valueOf(value);
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.plant_aid.networkHelper;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent queue of images that still have to be analysed by the backend.
+ *
+ * <p>Every processed image is recorded here before its upload starts and removed once its result has been
+ * stored in the garden. Because the queue lives in a SQLite database, pending jobs survive both failed
+ * uploads and the death of the process. Each job tracks how often it has been attempted and when it may
+ * be attempted next; failed attempts are retried with exponential backoff.</p>
+ *
+ * <p>A job that is being uploaded is <em>leased</em>: its next attempt time is pushed {@link #LEASE_MILLIS}
+ * into the future, so no other drainer picks it up concurrently. If the process dies mid-upload, the lease
+ * simply expires and the job becomes due again.</p>
+ *
+ * <p>A job names the garden image it belongs to and, separately, the file holding the upload rendition.
+ * Fresh captures are uploaded straight from memory, so the upload path stays empty unless the first attempt
+ * fails and the rendition is persisted for the retry, see {@link #setUploadPath(long, String)}.</p>
+ */
+public class UploadOutbox extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "upload_outbox.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_JOBS = "jobs";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_IMAGE_PATH = "image_path";
+    private static final String COLUMN_UPLOAD_PATH = "upload_path";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String COLUMN_CREATED_AT = "created_at";
+
+    /** How long a job is reserved for the upload that claimed it. */
+    public static final long LEASE_MILLIS = 2 * 60 * 1000L;
+
+    /** Number of failed attempts after which a job is given up. */
+    public static final int MAX_ATTEMPTS = 12;
+
+    private static final long BASE_BACKOFF_MILLIS = 15 * 1000L;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+
+    private static volatile UploadOutbox instance;
+
+    /**
+     * A single pending analysis.
+     */
+    public static class Job {
+        public final long id;
+        public final String imagePath;
+        /** The file holding the upload rendition, {@code null} if it has not been persisted. */
+        public final String uploadPath;
+        public final int attempts;
+        public final long nextAttemptAt;
+
+        Job(long id, String imagePath, String uploadPath, int attempts, long nextAttemptAt) {
+            this.id = id;
+            this.imagePath = imagePath;
+            this.uploadPath = uploadPath;
+            this.attempts = attempts;
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    private UploadOutbox(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Returns the process-wide outbox, creating it on first use.
+     *
+     * @param context Any context of the application, only its application context is retained.
+     * @return The shared outbox.
+     */
+    public static UploadOutbox getInstance(Context context) {
+        if (instance == null) {
+            synchronized (UploadOutbox.class) {
+                if (instance == null) {
+                    instance = new UploadOutbox(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_JOBS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_IMAGE_PATH + " TEXT NOT NULL, "
+                + COLUMN_UPLOAD_PATH + " TEXT, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL, "
+                + COLUMN_CREATED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_jobs_next_attempt ON " + TABLE_JOBS + " (" + COLUMN_NEXT_ATTEMPT_AT + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Jobs of version 1 uploaded the file at image_path itself
+            db.execSQL("ALTER TABLE " + TABLE_JOBS + " ADD COLUMN " + COLUMN_UPLOAD_PATH + " TEXT");
+            db.execSQL("UPDATE " + TABLE_JOBS + " SET " + COLUMN_UPLOAD_PATH + " = " + COLUMN_IMAGE_PATH);
+        }
+    }
+
+    /**
+     * Records a new job. The job is leased to the caller, who is expected to attempt the upload right away.
+     *
+     * @param imagePath  The absolute path of the garden image the result belongs to.
+     * @param uploadPath The absolute path of the persisted upload rendition, or {@code null} if it is only held in memory.
+     * @return The id of the new job.
+     */
+    public long enqueue(String imagePath, String uploadPath) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_IMAGE_PATH, imagePath);
+        values.put(COLUMN_UPLOAD_PATH, uploadPath);
+        values.put(COLUMN_ATTEMPTS, 0);
+        values.put(COLUMN_NEXT_ATTEMPT_AT, now + LEASE_MILLIS);
+        values.put(COLUMN_CREATED_AT, now);
+        return getWritableDatabase().insert(TABLE_JOBS, null, values);
+    }
+
+    /**
+     * Claims up to {@code limit} jobs which are due, oldest first, and leases them to the caller.
+     *
+     * @param limit The maximum number of jobs to claim.
+     * @return The claimed jobs, possibly empty.
+     */
+    public synchronized List<Job> claimDueJobs(int limit) {
+        long now = System.currentTimeMillis();
+        List<Job> jobs = new ArrayList<>();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (Cursor cursor = db.query(TABLE_JOBS,
+                new String[]{COLUMN_ID, COLUMN_IMAGE_PATH, COLUMN_UPLOAD_PATH, COLUMN_ATTEMPTS, COLUMN_NEXT_ATTEMPT_AT},
+                COLUMN_NEXT_ATTEMPT_AT + " <= ?", new String[]{String.valueOf(now)},
+                null, null, COLUMN_NEXT_ATTEMPT_AT + " ASC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                jobs.add(new Job(cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3), cursor.getLong(4)));
+            }
+            for (Job job : jobs) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_NEXT_ATTEMPT_AT, now + LEASE_MILLIS);
+                db.update(TABLE_JOBS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(job.id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return jobs;
+    }
+
+    /**
+     * Records where the upload rendition of a job has been persisted.
+     *
+     * @param jobId      The id of the job.
+     * @param uploadPath The absolute path of the persisted upload rendition.
+     */
+    public void setUploadPath(long jobId, String uploadPath) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_UPLOAD_PATH, uploadPath);
+        getWritableDatabase().update(TABLE_JOBS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(jobId)});
+    }
+
+    /**
+     * Removes a job whose result has been stored.
+     *
+     * @param jobId The id of the finished job.
+     */
+    public void complete(long jobId) {
+        getWritableDatabase().delete(TABLE_JOBS, COLUMN_ID + " = ?", new String[]{String.valueOf(jobId)});
+    }
+
+    /**
+     * Records a failed attempt and schedules the next one with exponential backoff.
+     *
+     * @param jobId The id of the job that failed.
+     * @return {@code true} if the job will be retried, {@code false} if it has reached {@link #MAX_ATTEMPTS}
+     *         and has been removed.
+     */
+    public synchronized boolean recordFailure(long jobId) {
+        SQLiteDatabase db = getWritableDatabase();
+        int attempts;
+        try (Cursor cursor = db.query(TABLE_JOBS, new String[]{COLUMN_ATTEMPTS},
+                COLUMN_ID + " = ?", new String[]{String.valueOf(jobId)}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            attempts = cursor.getInt(0) + 1;
+        }
+
+        if (attempts >= MAX_ATTEMPTS) {
+            complete(jobId);
+            return false;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ATTEMPTS, attempts);
+        values.put(COLUMN_NEXT_ATTEMPT_AT, System.currentTimeMillis() + backoffMillis(attempts));
+        db.update(TABLE_JOBS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(jobId)});
+        return true;
+    }
+
+    /**
+     * @return The earliest time at which a job becomes due, or {@code -1} if the outbox is empty.
+     */
+    public long nextAttemptAt() {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MIN(" + COLUMN_NEXT_ATTEMPT_AT + "), COUNT(*) FROM " + TABLE_JOBS, null)) {
+            if (cursor.moveToFirst() && cursor.getInt(1) > 0) {
+                return cursor.getLong(0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the delay before the next attempt of a job: 15 seconds after the first failure, doubling with
+     * every further failure, capped at one hour.
+     *
+     * @param attempts The number of failed attempts so far, at least 1.
+     * @return The delay in milliseconds.
+     */
+    static long backoffMillis(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(BASE_BACKOFF_MILLIS << exponent, MAX_BACKOFF_MILLIS);
+    }
+}
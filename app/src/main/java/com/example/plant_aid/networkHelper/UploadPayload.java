@@ -0,0 +1,141 @@
+package com.example.plant_aid.networkHelper;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * An encoded image on its way to the analysis backend, held either in memory or in a file.
+ *
+ * <p>A payload created with {@link #ofBytes(String, String, byte[], int)} wraps the encoder's output buffer
+ * without copying it, and its {@link #toRequestBody() request body} writes that buffer straight into the
+ * socket, so a fresh capture is uploaded without being written to and read back from flash. Only when the
+ * image has to outlive the process, e.g. because its upload failed and is left to the outbox, is it written
+ * out with {@link #persistTo(File)}. Once persisted, the in-memory buffer is still preferred for uploading.</p>
+ */
+public final class UploadPayload {
+
+    private final String fileName;
+    private final MediaType mediaType;
+    private final byte[] buffer;
+    private final int length;
+    private volatile File file;
+
+    private UploadPayload(String fileName, MediaType mediaType, byte[] buffer, int length, File file) {
+        this.fileName = fileName;
+        this.mediaType = mediaType;
+        this.buffer = buffer;
+        this.length = length;
+        this.file = file;
+    }
+
+    /**
+     * Wraps an encoded image held in memory. The buffer must not be modified afterwards.
+     *
+     * @param fileName The file name sent with the multipart part, also used when the payload is persisted.
+     * @param mimeType The media type of the encoded image.
+     * @param buffer   The buffer holding the encoded image.
+     * @param length   The number of valid bytes at the start of the buffer.
+     * @return The in-memory payload.
+     */
+    public static UploadPayload ofBytes(String fileName, String mimeType, byte[] buffer, int length) {
+        return new UploadPayload(fileName, MediaType.parse(mimeType), buffer, length, null);
+    }
+
+    /**
+     * Wraps an encoded image stored in a file.
+     *
+     * @param file The processed image. Its extension determines the media type, WebP or JPEG.
+     * @return The file-backed payload.
+     */
+    public static UploadPayload ofFile(File file) {
+        MediaType mediaType = MediaType.parse(file.getName().endsWith(".webp") ? "image/webp" : "image/jpeg");
+        return new UploadPayload(file.getName(), mediaType, null, 0, file);
+    }
+
+    /**
+     * @return The file name sent with the multipart part.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return The file holding the payload, or {@code null} if it has only been held in memory so far.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Creates a request body for the payload, streaming from memory if the payload is held in memory.
+     *
+     * @return A body which can be written any number of times, as OkHttp does on retries.
+     */
+    public RequestBody toRequestBody() {
+        if (buffer == null) {
+            return RequestBody.create(file, mediaType);
+        }
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                sink.write(buffer, 0, length);
+            }
+        };
+    }
+
+    /**
+     * Opens the encoded image for reading, from memory if the payload is held in memory.
+     *
+     * @return A new stream positioned at the start of the image, to be closed by the caller.
+     * @throws IOException If the file could not be opened.
+     */
+    public InputStream openStream() throws IOException {
+        if (buffer == null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    /**
+     * Writes an in-memory payload to {@code directory}, named after {@link #getFileName()}. A payload that is
+     * already held in a file is not written again.
+     *
+     * @param directory The directory to write to. Created if it does not exist.
+     * @return The file holding the payload.
+     * @throws IOException If the file could not be written.
+     */
+    public synchronized File persistTo(File directory) throws IOException {
+        if (file != null) {
+            return file;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File target = new File(directory, fileName);
+        try (FileOutputStream fos = new FileOutputStream(target)) {
+            fos.write(buffer, 0, length);
+        }
+        file = target;
+        return target;
+    }
+}
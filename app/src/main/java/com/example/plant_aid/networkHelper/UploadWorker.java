@@ -0,0 +1,168 @@
+package com.example.plant_aid.networkHelper;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background drainer of the {@link UploadOutbox}.
+ *
+ * <p>The worker is scheduled through {@link WorkManager} as unique work, so it survives process death and
+ * only runs while a network connection is available. Each run claims the jobs that are due and uploads
+ * at most {@link #MAX_PARALLEL_UPLOADS} of them at a time, until no due job is left. If jobs are still waiting
+ * for their backoff to expire, the run schedules its successor for the moment the first of them becomes due, so
+ * the drains follow the outbox's own backoff rather than a retry curve of WorkManager.</p>
+ *
+ * <p>{@link #schedule(Context, long)} is called on every new upload and every failure, as a safety net. It never
+ * disturbs a drain that is running, which would stop it mid-batch and leave its claimed jobs waiting out their
+ * lease, but queues a single follow-up behind it; a drain that has not started yet is only replaced if the new
+ * one is due earlier. Telling these cases apart needs a look at the scheduled work, so the decision is made on a
+ * thread of its own and the callers, upload callbacks and the capture pipeline, never wait for it.</p>
+ */
+public class UploadWorker extends Worker {
+
+    private static final String TAG = "UploadWorker";
+
+    private static final String WORK_NAME = "analysisOutboxDrain";
+
+    /** Maximum number of outbox jobs uploaded at the same time. */
+    static final int MAX_PARALLEL_UPLOADS = 2;
+
+    /** Makes the scheduling decisions one at a time, each seeing the work the previous one enqueued. */
+    private static final ExecutorService SCHEDULER = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "outbox-drain-scheduler"));
+
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Schedules a drain of the outbox unless one is due no later. Returns at once; the drain is enqueued on a
+     * background thread.
+     *
+     * @param context     Any context of the application.
+     * @param delayMillis The delay before the drain starts. It additionally waits for network connectivity.
+     */
+    public static void schedule(Context context, long delayMillis) {
+        Context applicationContext = context.getApplicationContext();
+        long dueAt = System.currentTimeMillis() + delayMillis;
+        SCHEDULER.execute(() -> enqueueDrain(WorkManager.getInstance(applicationContext), dueAt));
+    }
+
+    /**
+     * Enqueues a drain due at {@code dueAt}, choosing the policy from the drains already scheduled. Runs on
+     * {@link #SCHEDULER}, where it may wait for WorkManager.
+     */
+    private static void enqueueDrain(WorkManager workManager, long dueAt) {
+        ExistingWorkPolicy policy;
+        List<WorkInfo> drains = unfinishedDrains(workManager);
+        WorkInfo pending = null;
+        boolean running = false;
+        for (WorkInfo info : drains) {
+            if (info.getState() == WorkInfo.State.RUNNING) {
+                running = true;
+            } else {
+                pending = info;
+            }
+        }
+        if (pending == null) {
+            // A running drain may already have passed the new job by, so it gets a follow-up
+            policy = running ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.KEEP;
+        } else if (pending.getState() == WorkInfo.State.ENQUEUED && dueAt < pending.getNextScheduleTimeMillis()) {
+            // Nothing is running ahead of an enqueued drain, so it can be replaced by an earlier one
+            policy = ExistingWorkPolicy.REPLACE;
+        } else {
+            return;
+        }
+
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(Math.max(0, dueAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            // Wait until the drain is recorded, so the next decision sees it
+            workManager.enqueueUniqueWork(WORK_NAME, policy, request).getResult().get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not schedule a drain of the outbox", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The drains that are scheduled or running, empty if there are none or they cannot be told.
+     */
+    private static List<WorkInfo> unfinishedDrains(WorkManager workManager) {
+        List<WorkInfo> drains = new ArrayList<>();
+        try {
+            for (WorkInfo info : workManager.getWorkInfosForUniqueWork(WORK_NAME).get()) {
+                if (!info.getState().isFinished()) {
+                    drains.add(info);
+                }
+            }
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not look up the scheduled drains", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return drains;
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        UploadOutbox outbox = UploadOutbox.getInstance(getApplicationContext());
+        AnalysisUploader uploader = new AnalysisUploader(getApplicationContext());
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS);
+
+        int uploaded = 0;
+        try {
+            List<UploadOutbox.Job> jobs;
+            while (!isStopped() && !(jobs = outbox.claimDueJobs(MAX_PARALLEL_UPLOADS)).isEmpty()) {
+                List<Callable<Boolean>> tasks = new ArrayList<>();
+                for (UploadOutbox.Job job : jobs) {
+                    tasks.add(() -> uploader.runJob(job));
+                }
+                for (Future<Boolean> future : uploadExecutor.invokeAll(tasks)) {
+                    if (future.get()) {
+                        uploaded++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Draining the outbox was interrupted", e);
+        } finally {
+            uploadExecutor.shutdown();
+        }
+
+        Log.d(TAG, "Drained " + uploaded + " job(s) from the outbox");
+        // Jobs waiting for their backoff, or claimed by an upload of the app that may never finish, are left to a
+        // follow-up drain due when the first of them is. A stopped drain is rescheduled by WorkManager itself.
+        long nextAttemptAt = outbox.nextAttemptAt();
+        if (nextAttemptAt >= 0 && !isStopped()) {
+            schedule(getApplicationContext(), Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+        }
+        return Result.success();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.plant_aid.analysisHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.plant_aid.analysisHelper.AnalysisPolicy.Mode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the planning of {@link AnalysisPolicy} and how {@link AnalysisCoordinator} runs fake analyzers.
+ */
+public class AnalysisCoordinatorTest {
+
+    private static final String IMAGE = "/garden/leaf.jpg";
+    private static final long ANALYZED_AT = 1_700_000_000_000L;
+
+    private final FakeAnalyzer.FakeClock clock = new FakeAnalyzer.FakeClock();
+    private final Map<String, AnalysisResult> garden = new HashMap<>();
+    private final List<String> events = new ArrayList<>();
+
+    private final AnalysisCoordinator.Listener listener = new AnalysisCoordinator.Listener() {
+        @Override
+        public void onResult(String imagePath, String result, AnalysisCoordinator.Source source, boolean refinement) {
+            events.add(source + (refinement ? " refined: " : ": ") + result);
+        }
+
+        @Override
+        public void onDeferred(String imagePath, String reason) {
+            events.add("deferred: " + reason);
+        }
+    };
+
+    private AnalysisCoordinator coordinator(FakeAnalyzer local, FakeAnalyzer remote, boolean online) {
+        return new AnalysisCoordinator(local, remote, garden::put, () -> online, () -> clock.millis,
+                () -> ANALYZED_AT);
+    }
+
+    @Test
+    public void remoteModeOnlineOnlyUploads() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false);
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, false);
+
+        coordinator(local, remote, true).analyze(new AnalysisPolicy(Mode.REMOTE), IMAGE, null, listener);
+
+        assertTrue(local.getAnalysedPaths().isEmpty());
+        assertEquals(1, remote.getAnalysedPaths().size());
+        assertEquals(1, events.size());
+        assertEquals("REMOTE: remote result", events.get(0));
+        // The remote analyzer stores its own results
+        assertTrue(garden.isEmpty());
+    }
+
+    @Test
+    public void remoteModeOfflineShowsTheEstimateUntilTheUploadRefinesIt() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false);
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, true);
+
+        coordinator(local, remote, false).analyze(new AnalysisPolicy(Mode.REMOTE), IMAGE, null, listener);
+
+        // The estimate is stored before the upload has even completed
+        assertEquals(AnalysisResult.Status.ESTIMATE, garden.get(IMAGE).status);
+        assertEquals("local result", garden.get(IMAGE).diagnosis);
+        assertEquals(ANALYZED_AT, garden.get(IMAGE).analyzedAt);
+        assertEquals(1, remote.getAnalysedPaths().size());
+
+        remote.completePending();
+        assertEquals(2, events.size());
+        assertEquals("LOCAL: local result", events.get(0));
+        assertEquals("REMOTE refined: remote result", events.get(1));
+    }
+
+    @Test
+    public void localModeNeverUploads() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false).answering("healthy");
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, false);
+
+        coordinator(local, remote, true).analyze(new AnalysisPolicy(Mode.LOCAL), IMAGE, null, listener);
+
+        assertTrue(remote.getAnalysedPaths().isEmpty());
+        assertEquals(AnalysisResult.Status.FINAL, garden.get(IMAGE).status);
+        assertEquals("healthy", garden.get(IMAGE).diagnosis);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void failedEstimateFallsBackToTheUpload() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false).failingWith("undecodable");
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, false);
+
+        coordinator(local, remote, true).analyze(new AnalysisPolicy(Mode.LOCAL_THEN_REMOTE), IMAGE, null, listener);
+
+        assertEquals(1, events.size());
+        assertEquals("REMOTE: remote result", events.get(0));
+        assertTrue(garden.isEmpty());
+    }
+
+    @Test
+    public void failedEstimateWithoutUploadIsDeferred() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false).failingWith("undecodable");
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, false);
+
+        coordinator(local, remote, true).analyze(new AnalysisPolicy(Mode.LOCAL), IMAGE, null, listener);
+
+        assertEquals(1, events.size());
+        assertEquals("deferred: undecodable", events.get(0));
+    }
+
+    @Test
+    public void latencyIsComparedPerAnalyzer() {
+        FakeAnalyzer local = new FakeAnalyzer("local", clock, 5, false);
+        FakeAnalyzer remote = new FakeAnalyzer("remote", clock, 800, false);
+        FakeAnalyzer offlineRemote = new FakeAnalyzer("remote", clock, 0, false).failingWith("offline");
+        AnalysisCoordinator coordinator = coordinator(local, remote, true);
+
+        coordinator.analyze(new AnalysisPolicy(Mode.LOCAL_THEN_REMOTE), IMAGE, null, listener);
+        coordinator.analyze(new AnalysisPolicy(Mode.LOCAL_THEN_REMOTE), IMAGE, null, listener);
+        AnalysisCoordinator offline = coordinator(local, offlineRemote, false);
+        offline.analyze(new AnalysisPolicy(Mode.REMOTE), IMAGE, null, listener);
+
+        assertEquals(5, coordinator.getLocalLatency().getMeanMillis());
+        assertEquals(800, coordinator.getRemoteLatency().getMeanMillis());
+        assertEquals(2, coordinator.getRemoteLatency().getCount());
+        assertEquals("local n=2 mean=5ms min=5ms max=5ms failed=0 | remote n=2 mean=800ms min=800ms max=800ms failed=0",
+                coordinator.getLatencySummary());
+        assertEquals(1, offline.getRemoteLatency().getFailureCount());
+        assertEquals(-1, offline.getRemoteLatency().getMeanMillis());
+    }
+
+    @Test
+    public void policyPlansTheAnalyzers() {
+        assertTrue(new AnalysisPolicy(Mode.REMOTE).plan(true).runRemote);
+        assertTrue(!new AnalysisPolicy(Mode.REMOTE).plan(true).runLocal);
+        assertTrue(new AnalysisPolicy(Mode.REMOTE).plan(false).runLocal);
+        assertTrue(new AnalysisPolicy(Mode.REMOTE).plan(false).runRemote);
+        assertTrue(!new AnalysisPolicy(Mode.LOCAL).plan(true).runRemote);
+        assertTrue(new AnalysisPolicy(Mode.LOCAL_THEN_REMOTE).plan(true).runLocal);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.plant_aid.analysisHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Tests the binary encoding of {@link AnalysisResult}s by {@link AnalysisResultCodec}.
+ */
+public class AnalysisResultCodecTest {
+
+    private static final AnalysisResult RESULT = new AnalysisResult(AnalysisResult.Status.FINAL, "Powdery mildew",
+            0.87f, Arrays.asList("Remove affected leaves", "Improve air circulation"),
+            "White spots on the upper side of the leaves.", 1_700_000_100_000L, 1_700_000_000_000L);
+
+    @Test
+    public void resultSurvivesTheRoundTrip() throws IOException {
+        AnalysisResult read = AnalysisResultCodec.read(new ByteArrayInputStream(encode(RESULT)));
+
+        assertEquals(RESULT.status, read.status);
+        assertEquals(RESULT.diagnosis, read.diagnosis);
+        assertEquals(RESULT.confidence, read.confidence, 0f);
+        assertEquals(RESULT.recommendations, read.recommendations);
+        assertEquals(RESULT.details, read.details);
+        assertEquals(RESULT.analyzedAt, read.analyzedAt);
+        assertEquals(RESULT.capturedAt, read.capturedAt);
+        assertFalse(read.isSummary());
+    }
+
+    @Test
+    public void missingFieldsSurviveTheRoundTrip() throws IOException {
+        AnalysisResult pending = AnalysisResult.pending(42);
+
+        AnalysisResult read = AnalysisResultCodec.read(new ByteArrayInputStream(encode(pending)));
+
+        assertEquals(AnalysisResult.Status.PENDING, read.status);
+        assertFalse(read.hasConfidence());
+        assertTrue(read.recommendations.isEmpty());
+        assertNull(read.details);
+        assertEquals(42, read.capturedAt);
+    }
+
+    @Test
+    public void summaryReadsOnlyTheHeader() throws IOException {
+        StringBuilder longDetails = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longDetails.append("A long explanation of the diagnosis. ");
+        }
+        AnalysisResult result = new AnalysisResult(AnalysisResult.Status.FINAL, "Chlorosis", 0.6f, null,
+                longDetails.toString(), 1, 2);
+        byte[] encoded = encode(result);
+        CountingStream in = new CountingStream(encoded);
+
+        AnalysisResult summary = AnalysisResultCodec.readSummary(in);
+
+        assertTrue(summary.isSummary());
+        assertEquals("Chlorosis", summary.diagnosis);
+        assertEquals(0.6f, summary.confidence, 0f);
+        assertNull(summary.details);
+        assertTrue("read " + in.count + " of " + encoded.length + " bytes", in.count < 64);
+    }
+
+    @Test
+    public void reusedResultStaysMarked() throws IOException {
+        AnalysisResult read = AnalysisResultCodec.read(
+                new ByteArrayInputStream(encode(RESULT.withStatus(AnalysisResult.Status.REUSED))));
+
+        assertEquals(AnalysisResult.Status.REUSED, read.status);
+        assertTrue(read.toSummaryText().endsWith("[reused]"));
+        assertTrue(read.toDisplayText().endsWith(AnalysisResult.REUSED_NOTE));
+    }
+
+    @Test
+    public void listSummaryKeepsAShortHeadline() throws IOException {
+        StringBuilder longDiagnosis = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longDiagnosis.append("Leaf spot ");
+        }
+        AnalysisResult result = new AnalysisResult(AnalysisResult.Status.ESTIMATE, longDiagnosis.toString(), 0.4f,
+                null, "Details", 1, 2);
+
+        AnalysisResult listSummary = AnalysisResultCodec.readSummary(new ByteArrayInputStream(encode(result)))
+                .toListSummary();
+
+        assertTrue(listSummary.isSummary());
+        assertEquals(AnalysisResult.MAX_HEADLINE_LENGTH, listSummary.diagnosis.length());
+        assertTrue(listSummary.diagnosis.endsWith("\u2026"));
+        assertEquals(AnalysisResult.Status.ESTIMATE, listSummary.status);
+        assertEquals(0.4f, listSummary.confidence, 0f);
+        assertEquals(1, listSummary.analyzedAt);
+        // A short diagnosis is kept as it is
+        assertEquals("Powdery mildew", RESULT.toListSummary().diagnosis);
+    }
+
+    @Test
+    public void unknownTrailingFieldsOfALaterVersionAreSkipped() throws IOException {
+        byte[] encoded = encode(RESULT);
+        // Simulate a version 2 that appends a field to the header
+        int headerLength = readInt(encoded, 4);
+        ByteArrayOutputStream later = new ByteArrayOutputStream();
+        later.write(encoded, 0, 3);
+        later.write(2);
+        writeInt(later, headerLength + 4);
+        later.write(encoded, 8, headerLength);
+        writeInt(later, 0xCAFE);
+        later.write(encoded, 8 + headerLength, encoded.length - 8 - headerLength);
+
+        AnalysisResult read = AnalysisResultCodec.read(new ByteArrayInputStream(later.toByteArray()));
+
+        assertEquals(RESULT.diagnosis, read.diagnosis);
+        assertEquals(RESULT.recommendations, read.recommendations);
+        assertEquals(RESULT.details, read.details);
+    }
+
+    @Test
+    public void textIsRejected() {
+        try {
+            AnalysisResultCodec.read(new ByteArrayInputStream("Healthy leaf".getBytes()));
+            fail();
+        } catch (IOException expected) {
+            // Not an encoded result
+        }
+    }
+
+    @Test
+    public void truncatedResultIsRejected() throws IOException {
+        byte[] encoded = encode(RESULT);
+        try {
+            AnalysisResultCodec.read(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 5)));
+            fail();
+        } catch (IOException expected) {
+            // Ends within the detail section
+        }
+    }
+
+    private static byte[] encode(AnalysisResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnalysisResultCodec.write(result, out);
+        return out.toByteArray();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /** Counts the bytes that are read from it. */
+    private static final class CountingStream extends InputStream {
+        private final ByteArrayInputStream in;
+        int count;
+
+        CountingStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            int read = in.read();
+            if (read != -1) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.plant_aid.analysisHelper;
+
+import com.example.plant_aid.networkHelper.UploadPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analyzer for tests: answers every analysis with a fixed result or failure, either right away or when the test
+ * calls {@link #completePending()}, and advances a shared fake clock by its latency.
+ */
+public class FakeAnalyzer implements PlantAnalyzer {
+
+    /** A clock that only moves when a fake analyzer works. */
+    static final class FakeClock {
+        long millis;
+    }
+
+    private final String name;
+    private final FakeClock clock;
+    private final long latencyMillis;
+    private final boolean deferred;
+    private String result;
+    private String failure;
+    private final List<Runnable> pending = new ArrayList<>();
+    private final List<String> analysedPaths = new ArrayList<>();
+
+    FakeAnalyzer(String name, FakeClock clock, long latencyMillis, boolean deferred) {
+        this.name = name;
+        this.clock = clock;
+        this.latencyMillis = latencyMillis;
+        this.deferred = deferred;
+        this.result = name + " result";
+    }
+
+    FakeAnalyzer failingWith(String reason) {
+        this.failure = reason;
+        return this;
+    }
+
+    FakeAnalyzer answering(String result) {
+        this.result = result;
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void analyze(String imagePath, UploadPayload payload, Callback callback) {
+        analysedPaths.add(imagePath);
+        Runnable completion = () -> {
+            clock.millis += latencyMillis;
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onResult(result);
+            }
+        };
+        if (deferred) {
+            pending.add(completion);
+        } else {
+            completion.run();
+        }
+    }
+
+    /**
+     * Completes all analyses that are waiting, in the order they were started.
+     */
+    void completePending() {
+        List<Runnable> completions = new ArrayList<>(pending);
+        pending.clear();
+        for (Runnable completion : completions) {
+            completion.run();
+        }
+    }
+
+    List<String> getAnalysedPaths() {
+        return analysedPaths;
+    }
+}
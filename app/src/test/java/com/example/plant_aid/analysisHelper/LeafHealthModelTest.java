@@ -0,0 +1,78 @@
+package com.example.plant_aid.analysisHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.plant_aid.analysisHelper.LeafHealthModel.Condition;
+import com.example.plant_aid.analysisHelper.LeafHealthModel.Diagnosis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests {@link LeafHealthModel} on synthetic images made of leaf-coloured patches.
+ */
+public class LeafHealthModelTest {
+
+    private static final int SIZE = 64;
+    private static final int GREEN = 0xFF3A8A2E;
+    private static final int YELLOW = 0xFFD8C43A;
+    private static final int BROWN = 0xFF7A4A1E;
+    private static final int WHITE = 0xFFEDEDE8;
+    private static final int GREY_BACKGROUND = 0xFF808080;
+
+    @Test
+    public void greenLeafIsHealthy() {
+        Diagnosis diagnosis = classify(mix(GREEN, 1.0, YELLOW, 0));
+
+        assertEquals(Condition.HEALTHY, diagnosis.condition);
+        assertTrue(diagnosis.confidence > 0.5);
+        assertEquals(1.0, diagnosis.greenShare, 0.001);
+    }
+
+    @Test
+    public void largelyYellowLeafIsChlorotic() {
+        assertEquals(Condition.CHLOROSIS, classify(mix(GREEN, 0.6, YELLOW, 0.4)).condition);
+    }
+
+    @Test
+    public void brownPatchesAreNecrotic() {
+        assertEquals(Condition.NECROSIS, classify(mix(GREEN, 0.6, BROWN, 0.4)).condition);
+    }
+
+    @Test
+    public void whitishCoatingIsPowderyMildew() {
+        assertEquals(Condition.POWDERY_MILDEW, classify(mix(GREEN, 0.55, WHITE, 0.45)).condition);
+    }
+
+    @Test
+    public void imageWithoutLeavesIsRecognised() {
+        Diagnosis diagnosis = classify(mix(GREY_BACKGROUND, 0.95, GREEN, 0.05));
+
+        assertEquals(Condition.NO_PLANT, diagnosis.condition);
+        assertTrue(diagnosis.describe().contains("No plant"));
+    }
+
+    @Test
+    public void backgroundDoesNotDiluteTheLeaf() {
+        Diagnosis diagnosis = classify(mix(GREY_BACKGROUND, 0.5, GREEN, 0.5));
+
+        assertEquals(Condition.HEALTHY, diagnosis.condition);
+        assertEquals(1.0, diagnosis.greenShare, 0.001);
+    }
+
+    private static Diagnosis classify(int[] argb) {
+        return LeafHealthModel.classify(argb, SIZE, SIZE);
+    }
+
+    /** An image whose first rows have one colour and the remaining rows the other. */
+    private static int[] mix(int first, double firstShare, int second, double secondShare) {
+        int[] argb = new int[SIZE * SIZE];
+        int split = (int) Math.round(firstShare * argb.length);
+        Arrays.fill(argb, 0, split, first);
+        Arrays.fill(argb, split, argb.length, second);
+        assertEquals(1.0, firstShare + secondShare, 0.001);
+        return argb;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.plant_aid.analysisHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.plant_aid.networkHelper.AnalysisUploader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests how {@link LegacyResultConverter} reads the text results of earlier versions.
+ */
+public class LegacyResultConverterTest {
+
+    private static final long STORED_AT = 1_700_000_100_000L;
+    private static final long CAPTURED_AT = 1_700_000_000_000L;
+
+    @Test
+    public void pendingTextBecomesPending() {
+        AnalysisResult result = convert(AnalysisResult.PENDING_TEXT + "\n");
+
+        assertEquals(AnalysisResult.Status.PENDING, result.status);
+        assertEquals(CAPTURED_AT, result.capturedAt);
+    }
+
+    @Test
+    public void failureTextBecomesFailed() {
+        AnalysisResult result = convert(AnalysisUploader.FAILED_RESULT);
+
+        assertEquals(AnalysisResult.Status.FAILED, result.status);
+        assertEquals(AnalysisUploader.FAILED_RESULT, result.diagnosis);
+    }
+
+    @Test
+    public void estimateLosesItsNote() {
+        AnalysisResult result = convert("On-device estimate: Chlorosis (72% confidence).\n"
+                + "Green tissue 60%, yellowed 40%, brown 0%, whitish coating 0%.\n\n" + AnalysisResult.PROVISIONAL_NOTE);
+
+        assertEquals(AnalysisResult.Status.ESTIMATE, result.status);
+        assertEquals("On-device estimate: Chlorosis.", result.diagnosis);
+        assertEquals(0.72f, result.confidence, 0.0001f);
+        assertEquals("Green tissue 60%, yellowed 40%, brown 0%, whitish coating 0%.", result.details);
+        assertTrue(result.toDisplayText().endsWith(AnalysisResult.PROVISIONAL_NOTE));
+    }
+
+    @Test
+    public void serverTextIsSplitIntoFields() {
+        AnalysisResult result = convert("Diagnosis: Early blight\n"
+                + "Confidence: 91%\n"
+                + "Brown concentric rings on the older leaves.\n"
+                + "- Remove affected leaves\n"
+                + "2. Water at the base of the plant\n");
+
+        assertEquals(AnalysisResult.Status.FINAL, result.status);
+        assertEquals("Early blight", result.diagnosis);
+        assertEquals(0.91f, result.confidence, 0.0001f);
+        assertEquals(Arrays.asList("Remove affected leaves", "Water at the base of the plant"), result.recommendations);
+        assertEquals("Brown concentric rings on the older leaves.", result.details);
+        assertEquals(STORED_AT, result.analyzedAt);
+        assertEquals(CAPTURED_AT, result.capturedAt);
+    }
+
+    @Test
+    public void singleLineKeepsItsText() {
+        AnalysisResult result = convert("Healthy leaf");
+
+        assertEquals("Healthy leaf", result.diagnosis);
+        assertFalse(result.hasConfidence());
+        assertNull(result.details);
+        assertEquals("Healthy leaf", result.toDisplayText());
+    }
+
+    @Test
+    public void fractionalConfidenceIsNotAPercentage() {
+        assertEquals(0.5f, convert("Rust\nconfidence 0.5").confidence, 0.0001f);
+    }
+
+    private static AnalysisResult convert(String text) {
+        return LegacyResultConverter.convert(text, STORED_AT, CAPTURED_AT);
+    }
+}
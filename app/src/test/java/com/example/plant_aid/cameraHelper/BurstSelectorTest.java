@@ -0,0 +1,102 @@
+package com.example.plant_aid.cameraHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the frame selection of {@link BurstSelector}.
+ */
+public class BurstSelectorTest {
+
+    /** Collects the outcomes of a burst. */
+    private static final class Outcome implements BurstSelector.Listener<String> {
+        final List<String> selected = new ArrayList<>();
+        int noFrameCount;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onSelected(String best, double score) {
+            selected.add(best);
+            done.countDown();
+        }
+
+        @Override
+        public synchronized void onNoFrame() {
+            noFrameCount++;
+            done.countDown();
+        }
+    }
+
+    private static double scoreOf(String frame) {
+        return frame.startsWith("broken") ? Double.NaN : Double.parseDouble(frame.substring(frame.indexOf('=') + 1));
+    }
+
+    @Test
+    public void selectsTheSharpestFrameOnceAllAreScored() {
+        Outcome outcome = new Outcome();
+        BurstSelector<String> selector = new BurstSelector<>(3, Runnable::run, BurstSelectorTest::scoreOf, outcome);
+
+        selector.add("a=12.5");
+        selector.add("b=80");
+        assertTrue(outcome.selected.isEmpty());
+        selector.add("c=40");
+
+        assertEquals(1, outcome.selected.size());
+        assertEquals("b=80", outcome.selected.get(0));
+    }
+
+    @Test
+    public void failedAndUnscorableFramesAreIgnored() {
+        Outcome outcome = new Outcome();
+        BurstSelector<String> selector = new BurstSelector<>(3, Runnable::run, BurstSelectorTest::scoreOf, outcome);
+
+        selector.skip();
+        selector.add("broken");
+        selector.add("c=3");
+
+        assertEquals("c=3", outcome.selected.get(0));
+        assertEquals(0, outcome.noFrameCount);
+    }
+
+    @Test
+    public void reportsABurstWithoutUsableFrames() {
+        Outcome outcome = new Outcome();
+        BurstSelector<String> selector = new BurstSelector<>(2, Runnable::run, BurstSelectorTest::scoreOf, outcome);
+
+        selector.skip();
+        selector.add("broken");
+
+        assertTrue(outcome.selected.isEmpty());
+        assertEquals(1, outcome.noFrameCount);
+    }
+
+    @Test
+    public void parallelScoringReportsExactlyOnce() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Outcome outcome = new Outcome();
+            int frames = 64;
+            BurstSelector<String> selector = new BurstSelector<>(frames, pool, BurstSelectorTest::scoreOf, outcome);
+            for (int i = 0; i < frames; i++) {
+                selector.add("f" + i + "=" + ((i * 37) % frames));
+            }
+
+            assertTrue(outcome.done.await(5, TimeUnit.SECONDS));
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(1, outcome.selected.size());
+            assertEquals(frames - 1, scoreOf(outcome.selected.get(0)), 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.plant_aid.cameraHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests how a {@link CapturePipeline} admits captures and what becomes of them when its owner goes away.
+ */
+public class CapturePipelineTest {
+
+    @Test
+    public void closingLetsAdmittedCapturesReachTheNetworkStage() throws InterruptedException {
+        CapturePipeline pipeline = new CapturePipeline(2, saturated -> { });
+        CountDownLatch processingMayRun = new CountDownLatch(1);
+        CountDownLatch drained = new CountDownLatch(1);
+        AtomicInteger uploaded = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            CapturePipeline.Ticket ticket = pipeline.tryAdmit();
+            assertNotNull(ticket);
+            ticket.process(() -> {
+                await(processingMayRun);
+                ticket.upload(uploaded::incrementAndGet);
+            });
+        }
+        pipeline.close(drained::countDown);
+
+        // New captures are refused while the admitted ones are still being processed
+        assertNull(pipeline.tryAdmit());
+        assertTrue(pipeline.isSaturated());
+        assertEquals(1, drained.getCount());
+
+        processingMayRun.countDown();
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+        assertEquals(3, uploaded.get());
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    @Test
+    public void closingAnEmptyPipelineDrainsAtOnce() {
+        CapturePipeline pipeline = new CapturePipeline(1, saturated -> { });
+        AtomicInteger drained = new AtomicInteger();
+
+        pipeline.close(drained::incrementAndGet);
+        pipeline.close(drained::incrementAndGet);
+
+        assertEquals(1, drained.get());
+        assertNull(pipeline.tryAdmit());
+    }
+
+    @Test
+    public void cancellingAbandonsQueuedWork() throws InterruptedException {
+        CapturePipeline pipeline = new CapturePipeline(1, saturated -> { });
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+
+        pipeline.tryAdmit().process(() -> {
+            running.countDown();
+            // Interrupted by the cancellation
+            await(new CountDownLatch(1));
+        });
+        pipeline.tryAdmit().process(processed::incrementAndGet);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        pipeline.cancel();
+
+        Thread.sleep(100);
+        assertEquals(0, processed.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
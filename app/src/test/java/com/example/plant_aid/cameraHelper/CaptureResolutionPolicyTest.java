@@ -0,0 +1,72 @@
+package com.example.plant_aid.cameraHelper;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.plant_aid.cameraHelper.CaptureResolutionPolicy.Mode;
+import com.example.plant_aid.cameraHelper.CaptureResolutionPolicy.Resolution;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the size ranking of {@link CaptureResolutionPolicy} against synthetic camera capability tables.
+ */
+public class CaptureResolutionPolicyTest {
+
+    /** A typical 12 MP phone camera. */
+    private static final List<Resolution> FLAGSHIP = Arrays.asList(
+            new Resolution(4000, 3000), new Resolution(4000, 2250), new Resolution(3000, 3000),
+            new Resolution(1920, 1440), new Resolution(1920, 1080), new Resolution(1440, 1080),
+            new Resolution(1280, 960), new Resolution(1280, 720), new Resolution(1024, 768),
+            new Resolution(800, 600), new Resolution(640, 480), new Resolution(320, 240));
+
+    /** A low-end camera without any 4:3 size that covers the upload rendition. */
+    private static final List<Resolution> LOW_END = Arrays.asList(
+            new Resolution(1280, 720), new Resolution(640, 480), new Resolution(320, 240));
+
+    private static final Resolution UPLOAD = new Resolution(800, 600);
+    private static final Resolution PORTRAIT_DISPLAY = new Resolution(1080, 1440);
+
+    @Test
+    public void fastAnalysisCapturesTheSmallestCoveringSize() {
+        CaptureResolutionPolicy policy = new CaptureResolutionPolicy(Mode.FAST_ANALYSIS, UPLOAD, PORTRAIT_DISPLAY);
+
+        List<Resolution> ranked = policy.rankCaptureSizes(FLAGSHIP);
+
+        assertEquals(new Resolution(800, 600), ranked.get(0));
+        assertEquals(new Resolution(1024, 768), ranked.get(1));
+        assertEquals(FLAGSHIP.size(), ranked.size());
+    }
+
+    @Test
+    public void keepOriginalsCapturesTheLargestSizeOfTheAspectRatio() {
+        CaptureResolutionPolicy policy = new CaptureResolutionPolicy(Mode.KEEP_ORIGINALS, UPLOAD, PORTRAIT_DISPLAY);
+
+        assertEquals(new Resolution(4000, 3000), policy.rankCaptureSizes(FLAGSHIP).get(0));
+    }
+
+    @Test
+    public void previewCoversThePortraitDisplay() {
+        CaptureResolutionPolicy policy = new CaptureResolutionPolicy(Mode.FAST_ANALYSIS, UPLOAD, PORTRAIT_DISPLAY);
+
+        assertEquals(new Resolution(1440, 1080), policy.rankPreviewSizes(FLAGSHIP).get(0));
+    }
+
+    @Test
+    public void fallsBackToTheLargestSizeOfTheAspectRatioIfNoneCovers() {
+        CaptureResolutionPolicy policy = new CaptureResolutionPolicy(Mode.FAST_ANALYSIS, UPLOAD, PORTRAIT_DISPLAY);
+
+        List<Resolution> ranked = policy.rankCaptureSizes(LOW_END);
+
+        assertEquals(Arrays.asList(new Resolution(640, 480), new Resolution(320, 240), new Resolution(1280, 720)), ranked);
+    }
+
+    @Test
+    public void portraitSizesAreComparedInLandscape() {
+        CaptureResolutionPolicy policy = new CaptureResolutionPolicy(Mode.FAST_ANALYSIS, new Resolution(600, 800), PORTRAIT_DISPLAY);
+
+        assertEquals(new Resolution(800, 600), policy.rankCaptureSizes(FLAGSHIP).get(0));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.plant_aid.cameraHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.plant_aid.cameraHelper.QualityGate.Assessment;
+import com.example.plant_aid.cameraHelper.QualityGate.Thresholds;
+import com.example.plant_aid.cameraHelper.QualityGate.Verdict;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the sharpness and exposure measurements of {@link QualityGate} on synthetic grey images.
+ */
+public class QualityGateTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    @Test
+    public void sharpTextureIsAccepted() {
+        Assessment assessment = new QualityGate().assess(argbOf(texture(60, 200)), WIDTH, HEIGHT, Thresholds.DEFAULT);
+
+        assertEquals(Verdict.ACCEPTED, assessment.verdict);
+    }
+
+    @Test
+    public void blurredTextureIsRejectedAsBlurry() {
+        int[] sharp = texture(60, 200);
+        int[] blurred = boxBlur(boxBlur(sharp, 3), 3);
+        QualityGate gate = new QualityGate();
+
+        double sharpness = gate.assess(argbOf(sharp), WIDTH, HEIGHT, Thresholds.DEFAULT).sharpness;
+        Assessment assessment = gate.assess(argbOf(blurred), WIDTH, HEIGHT, Thresholds.DEFAULT);
+
+        assertEquals(Verdict.BLURRY, assessment.verdict);
+        assertTrue(assessment.sharpness * 10 < sharpness);
+    }
+
+    @Test
+    public void darkImageIsUnderexposedRatherThanBlurry() {
+        Assessment assessment = new QualityGate().assess(argbOf(texture(0, 20)), WIDTH, HEIGHT, Thresholds.DEFAULT);
+
+        assertEquals(Verdict.UNDEREXPOSED, assessment.verdict);
+        assertTrue(assessment.shadowClippedFraction > 0.4);
+    }
+
+    @Test
+    public void clippedHighlightsAreOverexposed() {
+        // Well exposed on average, but half of the frame is burnt out
+        int[] luma = texture(60, 200);
+        for (int i = 0; i < luma.length / 2; i++) {
+            luma[i] = 255;
+        }
+
+        Assessment assessment = new QualityGate().assess(argbOf(luma), WIDTH, HEIGHT, Thresholds.DEFAULT);
+
+        assertEquals(Verdict.OVEREXPOSED, assessment.verdict);
+        assertEquals(0.5, assessment.highlightClippedFraction, 0.01);
+    }
+
+    @Test
+    public void uniformPlaneHasNoSharpness() {
+        int[] luma = new int[WIDTH * HEIGHT];
+        Arrays.fill(luma, 128);
+
+        assertEquals(0, QualityGate.laplacianVariance(luma, WIDTH, HEIGHT), 0);
+    }
+
+    @Test
+    public void reusedBuffersDoNotLeakIntoSmallerFrames() {
+        QualityGate reused = new QualityGate();
+        reused.assess(argbOf(texture(0, 255)), WIDTH, HEIGHT, Thresholds.DEFAULT);
+
+        int[] small = argbOf(texture(60, 200));
+        Assessment afterLarge = reused.assess(small, 64, 48, Thresholds.DEFAULT);
+        Assessment fresh = new QualityGate().assess(small, 64, 48, Thresholds.DEFAULT);
+
+        assertEquals(fresh.sharpness, afterLarge.sharpness, 0);
+        assertEquals(fresh.meanLuma, afterLarge.meanLuma, 0);
+    }
+
+    /** A fine random texture with luminance values from {@code min} to {@code max}. */
+    private static int[] texture(int min, int max) {
+        Random random = new Random(42);
+        int[] luma = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = min + random.nextInt(max - min + 1);
+        }
+        return luma;
+    }
+
+    /** A box blur with the given radius, clamped at the borders. */
+    private static int[] boxBlur(int[] luma, int radius) {
+        int[] blurred = new int[luma.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sx = Math.min(WIDTH - 1, Math.max(0, x + dx));
+                        int sy = Math.min(HEIGHT - 1, Math.max(0, y + dy));
+                        sum += luma[sy * WIDTH + sx];
+                        count++;
+                    }
+                }
+                blurred[y * WIDTH + x] = sum / count;
+            }
+        }
+        return blurred;
+    }
+
+    private static int[] argbOf(int[] luma) {
+        int[] argb = new int[luma.length];
+        for (int i = 0; i < luma.length; i++) {
+            argb[i] = 0xFF000000 | (luma[i] << 16) | (luma[i] << 8) | luma[i];
+        }
+        return argb;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.plant_aid.myGardenHelper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the order and the stable IDs that the garden list relies on when it applies changes.
+ */
+public class GardenEntryTest {
+
+    @Test
+    public void newestFirstMatchesThePageOrder() {
+        GardenEntry older = new GardenEntry("/garden/b.jpg", GardenEntry.IN_JOURNAL, 1000);
+        GardenEntry newer = new GardenEntry("/garden/a.jpg", GardenEntry.IN_JOURNAL, 2000);
+        GardenEntry sameTimeLowerPath = new GardenEntry("/garden/a.jpg", GardenEntry.IN_JOURNAL, 1000);
+
+        List<GardenEntry> entries = new ArrayList<>(Arrays.asList(sameTimeLowerPath, older, newer));
+        entries.sort(GardenEntry.NEWEST_FIRST);
+
+        // Newest first, then by descending path like the keyset query
+        assertEquals(Arrays.asList(newer, older, sameTimeLowerPath), entries);
+    }
+
+    @Test
+    public void stableIdDependsOnlyOnThePath() {
+        GardenEntry pending = new GardenEntry("/garden/a.jpg", GardenEntry.IN_JOURNAL, 1000);
+        GardenEntry analysed = new GardenEntry("/garden/a.jpg", "/files/analysis_a.bin", 2000);
+        assertEquals(pending.getStableId(), analysed.getStableId());
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            ids.add(new GardenEntry("/garden/2024-05-01-12-00-00-" + i + ".jpg", GardenEntry.IN_JOURNAL, i)
+                    .getStableId());
+        }
+        assertEquals(50_000, ids.size());
+    }
+}
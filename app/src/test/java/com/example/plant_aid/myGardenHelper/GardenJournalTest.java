@@ -0,0 +1,473 @@
+package com.example.plant_aid.myGardenHelper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests {@link GardenJournal}: group commit, replay, compaction, and recovery from a process that died at any
+ * byte of a write or at any step of a compaction.
+ */
+public class GardenJournalTest {
+
+    /** Large enough that no test compacts unless it means to. */
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+
+    private static final GardenJournal.Indexer NO_INDEXER = changes -> { };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mutationsSurviveReopening() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            journal.put("/garden/a.jpg", 1, result("first"));
+            journal.put("/garden/b.jpg", 2, result("second"));
+            journal.put("/garden/a.jpg", 1, result("updated"));
+            journal.delete("/garden/b.jpg");
+            assertFalse(journal.putIfAbsent("/garden/a.jpg", 1, result("ignored")));
+            assertTrue(journal.putIfAbsent("/garden/c.jpg", 3, result("third")));
+        }
+
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            assertEquals(5, journal.getRecoveryStats().replayedRecords);
+            assertArrayEquals(result("updated"), journal.read("/garden/a.jpg"));
+            assertNull(journal.get("/garden/b.jpg"));
+            assertEquals(3, journal.get("/garden/c.jpg").capturedAt);
+            assertEquals(2, journal.records().size());
+            assertEquals(0, journal.getRecoveryStats().discardedBytes);
+        }
+    }
+
+    @Test
+    public void concurrentWritesShareSyncs() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        int threads = 8;
+        int writesPerThread = 50;
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < writesPerThread; i++) {
+                        journal.put("/garden/" + thread + "_" + i + ".jpg", i, result("r" + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(threads * writesPerThread, journal.records().size());
+            assertTrue("syncs: " + journal.getSyncCount(), journal.getSyncCount() < threads * writesPerThread);
+        }
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            assertEquals(threads * writesPerThread, journal.records().size());
+        }
+    }
+
+    /**
+     * Adds thousands of entries from many threads at once, while compactions run, and checks that every entry is
+     * durable and indexed, and that the indexer sees a single, ordered stream of changes.
+     */
+    @Test
+    public void concurrentAddsAreNeverLost() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        int threads = 16;
+        int addsPerThread = 250;
+        // Not thread-safe on purpose, only the writer thread may index
+        Map<String, Long> indexed = new HashMap<>();
+        Set<Thread> indexingThreads = ConcurrentHashMap.newKeySet();
+        GardenJournal.Indexer indexer = changes -> {
+            indexingThreads.add(Thread.currentThread());
+            for (GardenJournal.Change change : changes) {
+                if (change.deleted) {
+                    indexed.remove(change.imagePath);
+                } else {
+                    indexed.put(change.imagePath, change.capturedAt);
+                }
+            }
+        };
+
+        try (GardenJournal journal = GardenJournal.open(directory, 64 * 1024, indexer)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < addsPerThread; i++) {
+                        journal.put("/garden/" + thread + "_" + i + ".jpg", i, result(thread + "_" + i));
+                        // Every thread also keeps replacing the same entry
+                        journal.put("/garden/shared.jpg", thread * addsPerThread + i, result("shared"));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            journal.awaitCompaction();
+
+            assertEquals(1, indexingThreads.size());
+            assertEquals(threads * addsPerThread + 1, journal.records().size());
+            assertEquals(threads * addsPerThread + 1, indexed.size());
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < addsPerThread; i++) {
+                    String imagePath = "/garden/" + t + "_" + i + ".jpg";
+                    assertEquals(Long.valueOf(i), indexed.get(imagePath));
+                    assertArrayEquals(result(t + "_" + i), journal.read(imagePath));
+                }
+            }
+            // The index ends with the same update as the journal
+            assertEquals(Long.valueOf(journal.get("/garden/shared.jpg").capturedAt), indexed.get("/garden/shared.jpg"));
+        }
+
+        try (GardenJournal journal = GardenJournal.open(directory, 64 * 1024, NO_INDEXER)) {
+            assertEquals(threads * addsPerThread + 1, journal.records().size());
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < addsPerThread; i++) {
+                    assertArrayEquals(result(t + "_" + i), journal.read("/garden/" + t + "_" + i + ".jpg"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes results from many threads at once, so that most of them share a batch, and reads every one back through
+     * the live index, before a reopen would rebuild it from the log.
+     */
+    @Test
+    public void resultsOfABatchReadBackBeforeReopening() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        int threads = 8;
+        int writesPerThread = 50;
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < writesPerThread; i++) {
+                        journal.put("/garden/" + thread + "_" + i + ".jpg", i, result(thread + "_" + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertTrue("syncs: " + journal.getSyncCount(), journal.getSyncCount() < threads * writesPerThread);
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < writesPerThread; i++) {
+                    assertArrayEquals(result(t + "_" + i), journal.read("/garden/" + t + "_" + i + ".jpg"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a sequence of mutations, then simulates a process that died after every single byte of the log and
+     * checks that the journal recovers exactly the mutations that had been completely written, and keeps working.
+     */
+    @Test
+    public void crashAtAnyByteRecoversTheCompletedMutations() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        List<Long> boundaries = new ArrayList<>();
+        List<Map<String, String>> states = new ArrayList<>();
+        Map<String, String> expected = new HashMap<>();
+        boundaries.add(0L);
+        states.add(new HashMap<>(expected));
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            File log = onlyLog(directory);
+            for (int i = 0; i < 12; i++) {
+                String imagePath = "/garden/" + (i % 4) + ".jpg";
+                if (i % 5 == 4) {
+                    journal.delete(imagePath);
+                    expected.remove(imagePath);
+                } else {
+                    journal.put(imagePath, i, result("result " + i));
+                    expected.put(imagePath, "result " + i);
+                }
+                boundaries.add(log.length());
+                states.add(new HashMap<>(expected));
+            }
+        }
+        File log = onlyLog(directory);
+        byte[] complete = readAll(log);
+
+        for (int cut = 0; cut <= complete.length; cut++) {
+            File crashed = temporaryFolder.newFolder();
+            writeAll(new File(crashed, log.getName()), complete, cut);
+
+            int completed = 0;
+            while (completed + 1 < boundaries.size() && boundaries.get(completed + 1) <= cut) {
+                completed++;
+            }
+            try (GardenJournal journal = GardenJournal.open(crashed, NO_COMPACTION, NO_INDEXER)) {
+                assertEquals("cut at " + cut, states.get(completed), contents(journal));
+                assertEquals(cut - boundaries.get(completed), journal.getRecoveryStats().discardedBytes);
+                journal.put("/garden/after.jpg", 99, result("after the crash"));
+            }
+            try (GardenJournal journal = GardenJournal.open(crashed, NO_COMPACTION, NO_INDEXER)) {
+                Map<String, String> afterCrash = new HashMap<>(states.get(completed));
+                afterCrash.put("/garden/after.jpg", "after the crash");
+                assertEquals("cut at " + cut, afterCrash, contents(journal));
+            }
+        }
+    }
+
+    @Test
+    public void damagedRecordEndsTheLog() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        long intactLength;
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            journal.put("/garden/a.jpg", 1, result("intact"));
+            intactLength = onlyLog(directory).length();
+            journal.put("/garden/b.jpg", 2, result("damaged"));
+        }
+        try (RandomAccessFile log = new RandomAccessFile(onlyLog(directory), "rw")) {
+            long position = log.length() - 3;
+            log.seek(position);
+            int value = log.read();
+            log.seek(position);
+            log.write(value ^ 0x01);
+        }
+
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            assertNotNull(journal.get("/garden/a.jpg"));
+            assertNull(journal.get("/garden/b.jpg"));
+            assertEquals(onlyLog(directory).length() - intactLength, journal.getRecoveryStats().discardedBytes);
+        }
+    }
+
+    @Test
+    public void compactionReplacesTheLogsWithASnapshot() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        Map<String, String> expected = new HashMap<>();
+        try (GardenJournal journal = GardenJournal.open(directory, 2048, NO_INDEXER)) {
+            for (int i = 0; i < 200; i++) {
+                String imagePath = "/garden/" + (i % 10) + ".jpg";
+                journal.put(imagePath, i, result("result " + i));
+                expected.put(imagePath, "result " + i);
+                journal.awaitCompaction();
+            }
+            assertEquals(expected, contents(journal));
+        }
+
+        assertEquals(1, countFiles(directory, "snapshot."));
+        long logBytes = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith("log.")) {
+                logBytes += file.length();
+            }
+        }
+        assertTrue("log bytes: " + logBytes, logBytes < 4096);
+        try (GardenJournal journal = GardenJournal.open(directory, 2048, NO_INDEXER)) {
+            assertEquals(expected, contents(journal));
+        }
+    }
+
+    @Test
+    public void crashDuringCompactionKeepsTheState() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        Map<String, String> expected = new HashMap<>();
+        File backup = temporaryFolder.newFolder();
+        try (GardenJournal journal = GardenJournal.open(directory, 1024, NO_INDEXER)) {
+            for (int i = 0; i < 120; i++) {
+                String imagePath = "/garden/" + (i % 6) + ".jpg";
+                journal.put(imagePath, i, result("result " + i));
+                expected.put(imagePath, "result " + i);
+                // Keep every file, as if the compaction had died before deleting the files its snapshot supersedes
+                for (File file : directory.listFiles()) {
+                    if (file.getName().startsWith("log.") || file.getName().startsWith("snapshot.")) {
+                        copyUnlessDeleted(file, new File(backup, file.getName()));
+                    }
+                }
+            }
+            journal.awaitCompaction();
+        }
+        assertEquals(1, countFiles(directory, "snapshot."));
+
+        // Died after renaming the snapshot, before deleting the previous snapshot and the covered logs
+        for (File file : backup.listFiles()) {
+            File superseded = new File(directory, file.getName());
+            if (!superseded.exists()) {
+                writeAll(superseded, readAll(file), (int) file.length());
+            }
+        }
+        assertTrue(countFiles(directory, "snapshot.") > 1);
+        // Died while writing the next snapshot
+        File temporary = new File(directory, "snapshot.1000.tmp");
+        writeAll(temporary, "half a snapsh".getBytes(StandardCharsets.UTF_8), 13);
+
+        try (GardenJournal journal = GardenJournal.open(directory, 1024, NO_INDEXER)) {
+            assertEquals(expected, contents(journal));
+        }
+        assertFalse(temporary.exists());
+        assertEquals(1, countFiles(directory, "snapshot."));
+    }
+
+    @Test
+    public void readsFollowResultsMovedByCompaction() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        try (GardenJournal journal = GardenJournal.open(directory, 512, NO_INDEXER)) {
+            journal.put("/garden/kept.jpg", 1, result("kept"));
+            AtomicBoolean writing = new AtomicBoolean(true);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> reads = executor.submit(() -> {
+                while (writing.get()) {
+                    assertArrayEquals(result("kept"), journal.read("/garden/kept.jpg"));
+                }
+                return null;
+            });
+            for (int i = 0; i < 500; i++) {
+                journal.put("/garden/" + (i % 5) + ".jpg", i, result("result " + i));
+            }
+            writing.set(false);
+            reads.get();
+            executor.shutdown();
+            journal.awaitCompaction();
+
+            assertArrayEquals(result("kept"), journal.read("/garden/kept.jpg"));
+            assertArrayEquals(result("result 499"), journal.read("/garden/4.jpg"));
+            assertNull(journal.read("/garden/missing.jpg"));
+        }
+    }
+
+    @Test
+    public void interruptedReaderDoesNotBreakOtherReads() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (GardenJournal journal = GardenJournal.open(directory, NO_COMPACTION, NO_INDEXER)) {
+            journal.put("/garden/a.jpg", 1, result("first"));
+            assertArrayEquals(result("first"), journal.read("/garden/a.jpg"));
+
+            Thread.currentThread().interrupt();
+            try {
+                journal.read("/garden/a.jpg");
+            } catch (ClosedChannelException expected) {
+                // Interrupting a reader closes the channel it reads from
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertArrayEquals(result("first"), journal.read("/garden/a.jpg"));
+        }
+    }
+
+    private static byte[] result(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> contents(GardenJournal journal) {
+        Map<String, String> contents = new HashMap<>();
+        for (GardenJournal.Record record : journal.records()) {
+            try {
+                contents.put(record.imagePath, new String(journal.read(record.imagePath), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return contents;
+    }
+
+    private static int countFiles(File directory, String prefix) {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static File onlyLog(File directory) {
+        File found = null;
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith("log.") && file.length() > 0) {
+                assertNull("more than one log", found);
+                found = file;
+            }
+        }
+        if (found == null) {
+            for (File file : directory.listFiles()) {
+                if (file.getName().startsWith("log.")) {
+                    found = file;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+        }
+        return bytes;
+    }
+
+    /** Copies a file that the compactor may delete at any moment; a file deleted meanwhile keeps its last copy. */
+    private static void copyUnlessDeleted(File from, File to) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = readAll(from);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        writeAll(to, bytes, bytes.length);
+    }
+
+    private static void writeAll(File file, byte[] bytes, int length) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes, 0, length);
+        }
+    }
+}
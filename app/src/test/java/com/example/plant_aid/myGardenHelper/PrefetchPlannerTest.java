@@ -0,0 +1,96 @@
+package com.example.plant_aid.myGardenHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests how {@link PrefetchPlanner} sizes and places the prefetched rows.
+ */
+public class PrefetchPlannerTest {
+
+    private static final int ROW_HEIGHT = 300;
+    private static final int ITEM_COUNT = 5000;
+
+    @Test
+    public void slowScrollPrefetchesTheMinimumAhead() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        PrefetchPlanner.Plan plan = planner.onScrolled(10, 0, 0, 7, ROW_HEIGHT, ITEM_COUNT);
+
+        assertEquals(8, plan.first);
+        assertEquals(PrefetchPlanner.MIN_ROWS, plan.count);
+        assertEquals(1, plan.direction);
+        assertFalse(plan.directionChanged);
+    }
+
+    @Test
+    public void fastScrollPrefetchesMoreRowsUpToTheLimit() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        // 3 px/ms: 3000 px or 10 rows within the lookahead
+        scroll(planner, 0, 48, 16, 20);
+        assertEquals(10, planner.getRowsAhead(ROW_HEIGHT));
+
+        // A fling far beyond what can be shown
+        scroll(planner, 1000, 2000, 16, 20);
+        assertEquals(PrefetchPlanner.MAX_ROWS, planner.getRowsAhead(ROW_HEIGHT));
+    }
+
+    @Test
+    public void everyRowIsPlannedOncePerDirection() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        PrefetchPlanner.Plan first = planner.onScrolled(10, 0, 0, 7, ROW_HEIGHT, ITEM_COUNT);
+        PrefetchPlanner.Plan again = planner.onScrolled(10, 100, 0, 7, ROW_HEIGHT, ITEM_COUNT);
+        PrefetchPlanner.Plan next = planner.onScrolled(10, 200, 1, 8, ROW_HEIGHT, ITEM_COUNT);
+
+        assertEquals(8, first.first);
+        assertSame(PrefetchPlanner.Plan.NONE, again);
+        // Only the row that moved into the window
+        assertEquals(11, next.first);
+        assertEquals(1, next.count);
+    }
+
+    @Test
+    public void reversingRestartsTheWindowBehindTheVisibleRows() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        scroll(planner, 0, 48, 16, 20);
+        PrefetchPlanner.Plan plan = planner.onScrolled(-10, 1000, 100, 107, ROW_HEIGHT, ITEM_COUNT);
+
+        assertTrue(plan.directionChanged);
+        assertEquals(-1, plan.direction);
+        assertEquals(99, plan.first);
+        assertEquals(97, plan.positionAt(2));
+        // The speed of the other direction is not carried over
+        assertEquals(PrefetchPlanner.MIN_ROWS, plan.count);
+    }
+
+    @Test
+    public void windowStopsAtTheEndsOfTheList() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        PrefetchPlanner.Plan down = planner.onScrolled(10, 0, 32, 38, ROW_HEIGHT, 40);
+        assertEquals(39, down.first);
+        assertEquals(1, down.count);
+
+        PrefetchPlanner.Plan up = planner.onScrolled(-10, 100, 1, 8, ROW_HEIGHT, 40);
+        assertEquals(0, up.first);
+        assertEquals(1, up.count);
+    }
+
+    @Test
+    public void layoutPassesWithoutMovementPlanNothing() {
+        PrefetchPlanner planner = new PrefetchPlanner();
+        assertSame(PrefetchPlanner.Plan.NONE, planner.onScrolled(0, 0, 0, 7, ROW_HEIGHT, ITEM_COUNT));
+        assertSame(PrefetchPlanner.Plan.NONE, planner.onScrolled(10, 0, -1, -1, ROW_HEIGHT, 0));
+    }
+
+    /**
+     * Scrolls steadily downwards, one event per frame, with the visible rows following along.
+     */
+    private static void scroll(PrefetchPlanner planner, long start, int dyPerEvent, long millisPerEvent, int events) {
+        for (int i = 0; i < events; i++) {
+            planner.onScrolled(dyPerEvent, start + i * millisPerEvent, i, i + 7, ROW_HEIGHT, ITEM_COUNT);
+        }
+    }
+}
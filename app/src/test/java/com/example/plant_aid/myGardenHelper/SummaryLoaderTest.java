@@ -0,0 +1,164 @@
+package com.example.plant_aid.myGardenHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.plant_aid.analysisHelper.AnalysisResult;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the caching, cancellation and counters of {@link SummaryLoader}.
+ */
+public class SummaryLoaderTest {
+
+    /** Stands in for the main thread: delivered summaries wait here until the test runs them. */
+    private final BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+    private final List<String> loadedPaths = Collections.synchronizedList(new ArrayList<>());
+    private SummaryLoader loader;
+
+    @After
+    public void tearDown() {
+        if (loader != null) {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void secondLoadIsAnsweredFromTheCache() throws InterruptedException {
+        loader = new SummaryLoader(this::summaryOf, 4, mainThread::add);
+        AtomicReference<AnalysisResult> delivered = new AtomicReference<>();
+
+        assertNotNull(loader.load(entry("a"), delivered::set));
+        runNextOnMainThread();
+        assertEquals("a", delivered.get().diagnosis);
+
+        delivered.set(null);
+        assertNull(loader.load(entry("a"), delivered::set));
+        // Handed over before load() returned
+        assertEquals("a", delivered.get().diagnosis);
+
+        assertEquals(Collections.singletonList("a"), loadedPaths);
+        assertEquals(1, loader.getHitCount());
+        assertEquals(1, loader.getMissCount());
+        assertEquals(0.5, loader.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void leastRecentlyUsedSummaryIsEvicted() throws InterruptedException {
+        loader = new SummaryLoader(this::summaryOf, 2, mainThread::add);
+        for (String path : new String[]{"a", "b"}) {
+            loader.load(entry(path), summary -> { });
+            runNextOnMainThread();
+        }
+        loader.load(entry("a"), summary -> { });
+        loader.load(entry("c"), summary -> { });
+        runNextOnMainThread();
+
+        assertEquals(2, loader.size());
+        assertNull(loader.load(entry("a"), summary -> { }));
+        assertNotNull(loader.load(entry("b"), summary -> { }));
+    }
+
+    @Test
+    public void cancelledRequestIsNeitherLoadedNorDelivered() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        loader = new SummaryLoader(entry -> {
+            if (entry.imagePath.equals("slow")) {
+                blocked.countDown();
+                await(release);
+            }
+            return summaryOf(entry);
+        }, 4, mainThread::add);
+        List<String> delivered = new ArrayList<>();
+
+        // The row is recycled while its load runs, and bound again while the next load is still queued
+        SummaryLoader.Request running = loader.load(entry("slow"), summary -> delivered.add(summary.diagnosis));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        SummaryLoader.Request queued = loader.load(entry("queued"), summary -> delivered.add(summary.diagnosis));
+        running.cancel();
+        queued.cancel();
+        loader.load(entry("shown"), summary -> delivered.add(summary.diagnosis));
+        release.countDown();
+
+        runNextOnMainThread();
+        runNextOnMainThread();
+        assertEquals(Collections.singletonList("shown"), delivered);
+        assertEquals(2, loadedPaths.size());
+        assertTrue(!loadedPaths.contains("queued"));
+        assertTrue(mainThread.isEmpty());
+    }
+
+    @Test
+    public void invalidatedSummaryIsLoadedAgain() throws InterruptedException {
+        loader = new SummaryLoader(this::summaryOf, 4, mainThread::add);
+        loader.load(entry("a"), summary -> { });
+        runNextOnMainThread();
+
+        loader.invalidate("a");
+        assertNotNull(loader.load(entry("a"), summary -> { }));
+        runNextOnMainThread();
+        assertEquals(2, loadedPaths.size());
+    }
+
+    @Test
+    public void prefetchedSummaryIsAHitWithoutCountingThePrefetch() throws InterruptedException {
+        loader = new SummaryLoader(this::summaryOf, 4, mainThread::add);
+        SummaryLoader.Request prefetch = loader.prefetch(entry("a"));
+        assertNotNull(prefetch);
+        awaitLoaded(1);
+        assertNull(loader.prefetch(entry("a")));
+        assertEquals(0, loader.getHitCount() + loader.getMissCount());
+
+        AtomicReference<AnalysisResult> delivered = new AtomicReference<>();
+        assertNull(loader.load(entry("a"), delivered::set));
+        assertEquals("a", delivered.get().diagnosis);
+        assertEquals(1.0, loader.getHitRate(), 1e-9);
+        // Nothing is delivered for a prefetch
+        assertTrue(mainThread.isEmpty());
+    }
+
+    private void awaitLoaded(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, loader.size());
+    }
+
+    private AnalysisResult summaryOf(GardenEntry entry) {
+        loadedPaths.add(entry.imagePath);
+        return new AnalysisResult(AnalysisResult.Status.FINAL, entry.imagePath, 0.9f, null, null, 1, 1);
+    }
+
+    private void runNextOnMainThread() throws InterruptedException {
+        Runnable delivery = mainThread.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing delivered", delivery);
+        delivery.run();
+    }
+
+    private static GardenEntry entry(String imagePath) {
+        return new GardenEntry(imagePath, GardenEntry.IN_JOURNAL, 0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.plant_aid.networkHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests the lookup, eviction and counters of {@link AnalysisResultCache}.
+ */
+public class AnalysisResultCacheTest {
+
+    private static final long HASH = 0x0F0F_F0F0_1234_5678L;
+
+    @Test
+    public void byteIdenticalRenditionIsAnExactHit() {
+        AnalysisResultCache cache = new AnalysisResultCache(4);
+        cache.put("digest", HASH, "rust");
+
+        assertEquals("rust", cache.lookup("digest", ~HASH, -1));
+        assertEquals(1, cache.getExactHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void similarRenditionIsAPerceptualHitWithinTheThreshold() {
+        AnalysisResultCache cache = new AnalysisResultCache(4);
+        cache.put("first", HASH, "rust");
+        cache.put("second", HASH ^ 0xFF, "mildew");
+
+        // Three bits away from the first entry, five from the second
+        assertEquals("rust", cache.lookup("third", HASH ^ 0b111, 5));
+        assertNull(cache.lookup("third", HASH ^ 0b1111, 3));
+        assertNull(cache.lookup("third", HASH ^ 0b111, -1));
+
+        assertEquals(1, cache.getPerceptualHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        AnalysisResultCache cache = new AnalysisResultCache(2);
+        cache.put("a", 1L, "result a");
+        cache.put("b", 2L, "result b");
+        cache.lookup("a", 1L, -1);
+        cache.put("c", 4L, "result c");
+
+        assertEquals(2, cache.size());
+        assertEquals("result a", cache.lookup("a", 1L, -1));
+        assertNull(cache.lookup("b", 2L, -1));
+        assertEquals("result c", cache.lookup("c", 4L, -1));
+    }
+}
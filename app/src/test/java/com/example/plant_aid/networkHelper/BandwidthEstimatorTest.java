@@ -0,0 +1,45 @@
+package com.example.plant_aid.networkHelper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests which part of an upload's timing {@link BandwidthEstimator} takes for the time spent on the link.
+ */
+public class BandwidthEstimatorTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void reportedServerTimeIsSubtracted() {
+        // 200 KB written into the socket buffer in 20 ms, response headers 2.5 s later, 1.8 s of it analysis
+        long transfer = BandwidthEstimator.transferNanos(200 * 1024, 20 * MILLIS, 2520 * MILLIS,
+                "analysis;dur=1800, decode;dur=40.5");
+        assertEquals(720 * MILLIS, transfer);
+    }
+
+    @Test
+    public void writeTimeOfASmallBodyIsNotSampled() {
+        assertEquals(-1, BandwidthEstimator.transferNanos(200 * 1024, 20 * MILLIS, 2520 * MILLIS, null));
+        assertEquals(-1, BandwidthEstimator.transferNanos(200 * 1024, 20 * MILLIS, 2520 * MILLIS, "cache;desc=miss"));
+    }
+
+    @Test
+    public void writeTimeOfABodyBeyondTheSendBufferIsSampled() {
+        long bytes = BandwidthEstimator.MIN_WRITE_SAMPLE_BYTES;
+        assertEquals(9000 * MILLIS, BandwidthEstimator.transferNanos(bytes, 9000 * MILLIS, 9500 * MILLIS, null));
+    }
+
+    @Test
+    public void serverTimeBeyondTheExchangeIsDiscarded() {
+        assertEquals(-1, BandwidthEstimator.transferNanos(200 * 1024, 400 * MILLIS, 500 * MILLIS, "total;dur=450"));
+    }
+
+    @Test
+    public void serverTimingDurationsAreParsed() {
+        assertEquals(-1, BandwidthEstimator.serverTimingMillis(null), 0);
+        assertEquals(812.5, BandwidthEstimator.serverTimingMillis("db;dur=53, app;dur=812.5;desc=\"Analysis\""), 0);
+        assertEquals(12, BandwidthEstimator.serverTimingMillis("total;DUR=\"12\""), 0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.plant_aid.networkHelper;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in for the analysis backend, used to test single and batched uploads without the real server.
+ *
+ * <p>Every request is answered with a fake result per {@code image} part: a plain text body for a single
+ * image, a JSON array for several. The model is simulated as a shared resource with a fixed cost per
+ * invocation plus a cost per image, so the throughput of single and batched uploads can be compared.</p>
+ *
+ * <p>It can also be started on its own with {@link #main(String[])} and used by the app on a device by
+ * pointing the analysis URL at the host running it.</p>
+ */
+public class StandInAnalysisServer {
+
+    static final long MODEL_INVOCATION_MILLIS = 40;
+    static final long PER_IMAGE_MILLIS = 5;
+
+    private static final Pattern IMAGE_PART = Pattern.compile("name=\"image\"; filename=\"([^\"]+)\"");
+
+    private final MockWebServer server = new MockWebServer();
+    private final Object model = new Object();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger imageCount = new AtomicInteger();
+
+    public StandInAnalysisServer() {
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) throws InterruptedException {
+                List<String> filenames = new ArrayList<>();
+                Matcher matcher = IMAGE_PART.matcher(request.getBody().readUtf8());
+                while (matcher.find()) {
+                    filenames.add(matcher.group(1));
+                }
+                if (filenames.isEmpty()) {
+                    return new MockResponse().setResponseCode(400).setBody("No image part");
+                }
+                requestCount.incrementAndGet();
+                imageCount.addAndGet(filenames.size());
+
+                // One model invocation per request, serialized like on a single inference device
+                synchronized (model) {
+                    Thread.sleep(MODEL_INVOCATION_MILLIS + PER_IMAGE_MILLIS * filenames.size());
+                }
+
+                if (filenames.size() == 1) {
+                    return new MockResponse().setBody(resultFor(filenames.get(0)));
+                }
+                JSONArray results = new JSONArray();
+                for (String filename : filenames) {
+                    results.put(resultFor(filename));
+                }
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(results.toString());
+            }
+        });
+    }
+
+    static String resultFor(String filename) {
+        return "Healthy leaf (" + filename + ")";
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void start(int port) throws IOException {
+        server.start(port);
+    }
+
+    public HttpUrl url() {
+        return server.url("/analysePlantImage");
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getImageCount() {
+        return imageCount.get();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Runs the stand-in server on port 3000, the port of the real backend, until the process is killed.
+     */
+    public static void main(String[] args) throws Exception {
+        StandInAnalysisServer standIn = new StandInAnalysisServer();
+        standIn.start(3000);
+        System.out.println("Stand-in analysis server listening on " + standIn.url());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.plant_aid.networkHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Tests {@link UploadBatcher} against the {@link StandInAnalysisServer}.
+ */
+public class UploadBatcherTest {
+
+    private static final int IMAGES = 30;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StandInAnalysisServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInAnalysisServer();
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void batchedResultsAreDemultiplexedToTheirImages() throws Exception {
+        UploadBatcher batcher = new UploadBatcher(client, server::url, 200, 8);
+        Map<String, String> results = uploadAll(batcher, createImages(IMAGES));
+
+        assertEquals(IMAGES, results.size());
+        for (Map.Entry<String, String> entry : results.entrySet()) {
+            assertEquals(StandInAnalysisServer.resultFor(entry.getKey()), entry.getValue());
+        }
+        // 30 images in batches of at most 8
+        assertEquals(4, server.getRequestCount());
+        assertEquals(IMAGES, server.getImageCount());
+    }
+
+    @Test
+    public void batchedUploadsHaveHigherThroughputThanSingleUploads() throws Exception {
+        List<File> images = createImages(IMAGES);
+
+        long singleStart = System.nanoTime();
+        uploadAll(new UploadBatcher(client, server::url, 0, 1), images);
+        long singleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - singleStart);
+        int singleRequests = server.getRequestCount();
+
+        long batchedStart = System.nanoTime();
+        uploadAll(new UploadBatcher(client, server::url, 200, 8), images);
+        long batchedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchedStart);
+        int batchedRequests = server.getRequestCount() - singleRequests;
+
+        System.out.printf("%d images: single %d requests in %d ms (%.1f img/s), batched %d requests in %d ms (%.1f img/s)%n",
+                IMAGES, singleRequests, singleMillis, IMAGES * 1000f / singleMillis,
+                batchedRequests, batchedMillis, IMAGES * 1000f / batchedMillis);
+        assertEquals(IMAGES, singleRequests);
+        assertEquals(4, batchedRequests);
+        assertTrue(batchedMillis < singleMillis);
+    }
+
+    @Test
+    public void demultiplexesObjectKeyedByFilename() throws IOException {
+        List<String> results = UploadBatcher.demultiplex("{\"b.jpg\":\"rust\",\"a.jpg\":{\"diagnosis\":\"healthy\"}}",
+                Arrays.asList("a.jpg", "b.jpg"));
+
+        assertEquals(Arrays.asList("{\"diagnosis\":\"healthy\"}", "rust"), results);
+    }
+
+    @Test
+    public void rejectsResponseWithMissingResults() {
+        try {
+            UploadBatcher.demultiplex("[\"only one\"]", Arrays.asList("a.jpg", "b.jpg"));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // The whole batch is left to the outbox to retry
+        }
+    }
+
+    private Map<String, String> uploadAll(UploadBatcher batcher, List<File> images) throws InterruptedException {
+        Map<String, String> results = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(images.size());
+        for (File image : images) {
+            batcher.add(UploadPayload.ofFile(image), new UploadBatcher.ResultCallback() {
+                @Override
+                public void onResult(String result) {
+                    results.put(image.getName(), result);
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    done.countDown();
+                }
+            });
+        }
+        batcher.flush();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private List<File> createImages(int count) throws IOException {
+        List<File> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File image = temporaryFolder.newFile("processed_IMG_" + i + ".jpg");
+            try (FileOutputStream fos = new FileOutputStream(image)) {
+                fos.write(("fake jpeg " + i).getBytes());
+            }
+            images.add(image);
+        }
+        return images;
+    }
+}